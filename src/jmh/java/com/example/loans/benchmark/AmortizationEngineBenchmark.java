@@ -0,0 +1,73 @@
+package com.example.loans.benchmark;
+
+import com.example.loans.enums.AmortizationType;
+import com.example.loans.enums.NumberOfInstallments;
+import com.example.loans.service.AmortizationEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the amortization engine with the BigDecimal schedule calculation createLoan used before it.
+ * Only installment counts that divide the loan amount exactly are used, the BigDecimal path throws otherwise.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AmortizationEngineBenchmark {
+
+    @Param({"SIX", "TWELVE", "TWENTY_FOUR"})
+    private NumberOfInstallments numberOfInstallments;
+
+    private final BigDecimal amount = new BigDecimal(10000);
+    private final BigDecimal interestRate = new BigDecimal("0.5");
+
+    private AmortizationEngine amortizationEngine;
+
+    @Setup
+    public void setUp() {
+        amortizationEngine = new AmortizationEngine(AmortizationType.FLAT);
+    }
+
+    @Benchmark
+    public void bigDecimalFlat(Blackhole blackhole) {
+        BigDecimal loanAmount = amount.multiply(BigDecimal.ONE.add(interestRate));
+        int n = numberOfInstallments.getNumberOfInstallments();
+        for (int i = 0; i < n; i++) {
+            blackhole.consume(loanAmount.divide(new BigDecimal(n)));
+        }
+    }
+
+    @Benchmark
+    public long[] engineFlat() {
+        return amortizationEngine.schedule(AmortizationType.FLAT,
+            AmortizationEngine.toCents(amount), AmortizationEngine.toRatePpm(interestRate), numberOfInstallments);
+    }
+
+    @Benchmark
+    public long[] engineAnnuity() {
+        return amortizationEngine.schedule(AmortizationType.ANNUITY,
+            AmortizationEngine.toCents(amount), AmortizationEngine.toRatePpm(interestRate), numberOfInstallments);
+    }
+
+    @Benchmark
+    public long[] engineDecliningBalance() {
+        return amortizationEngine.schedule(AmortizationType.DECLINING_BALANCE,
+            AmortizationEngine.toCents(amount), AmortizationEngine.toRatePpm(interestRate), numberOfInstallments);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.loans.benchmark;
+
+import com.example.loans.security.CachingPasswordEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of authenticating one HTTP Basic request, with bcrypt alone and with the verified credential cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthenticationBenchmark {
+
+    @Param({"bcrypt", "cached"})
+    private String passwordEncoder;
+
+    private DaoAuthenticationProvider authenticationProvider;
+
+    @Setup
+    public void setUp() {
+        PasswordEncoder bcrypt = PasswordEncoderFactories.createDelegatingPasswordEncoder();
+        PasswordEncoder encoder = "cached".equals(passwordEncoder)
+            ? new CachingPasswordEncoder(bcrypt, 1000, Duration.ofMinutes(5)) : bcrypt;
+        authenticationProvider = new DaoAuthenticationProvider();
+        authenticationProvider.setPasswordEncoder(encoder);
+        authenticationProvider.setUserDetailsService(new InMemoryUserDetailsManager(User.withUsername("user")
+            .password(encoder.encode("password"))
+            .roles("USER")
+            .build()));
+    }
+
+    @Benchmark
+    public Authentication authenticate() {
+        return authenticationProvider.authenticate(
+            UsernamePasswordAuthenticationToken.unauthenticated("user", "password"));
+    }
+}
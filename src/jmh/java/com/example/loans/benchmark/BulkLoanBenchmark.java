@@ -0,0 +1,62 @@
+package com.example.loans.benchmark;
+
+import com.example.loans.service.BulkLoanService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Duration of a bulk origination of a portfolio of loans for random customers on an H2 file database,
+ * loans per second is loans / duration. Every invocation adds the loans to the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BulkLoanBenchmark {
+
+    private static final int[] NUMBER_OF_INSTALLMENTS = {6, 9, 12, 24};
+
+    @Param({"50000"})
+    private int loans;
+
+    private BulkLoanService bulkLoanService;
+    private byte[] portfolio;
+
+    @Setup
+    public void setUp(SeededFileDatabase database) {
+        bulkLoanService = database.getBean(BulkLoanService.class);
+        StringBuilder ndjson = new StringBuilder();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < loans; i++) {
+            ndjson.append("{\"customerId\":").append(database.randomCustomerId())
+                .append(",\"amount\":").append(random.nextInt(1000, 50000))
+                .append(",\"interestRate\":0.").append(random.nextInt(1, 6))
+                .append(",\"numberOfInstallments\":").append(NUMBER_OF_INSTALLMENTS[random.nextInt(4)])
+                .append("}\n");
+        }
+        portfolio = ndjson.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void createLoans() throws IOException {
+        bulkLoanService.createLoans(new ByteArrayInputStream(portfolio), OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.loans.benchmark;
+
+import com.example.loans.entity.Customer;
+import com.example.loans.repository.CustomerRepository;
+import com.example.loans.service.CreditLimitService;
+import com.example.loans.service.CustomerCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Customer lookups through the repository and through CustomerCache, alone and after a credit limit
+ * reservation. Run it with -p profiles=default,l2cache to compare with the Hibernate second level cache,
+ * which serves the repository lookups in the l2cache profile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CustomerLookupBenchmark {
+
+    private static final BigDecimal RESERVED_AMOUNT = BigDecimal.ONE;
+
+    private CustomerRepository customerRepository;
+    private CustomerCache customerCache;
+    private CreditLimitService creditLimitService;
+
+    @Setup
+    public void setUp(SeededDatabase database) {
+        customerRepository = database.getBean(CustomerRepository.class);
+        customerCache = database.getBean(CustomerCache.class);
+        creditLimitService = database.getBean(CreditLimitService.class);
+    }
+
+    @Benchmark
+    public Optional<Customer> repositoryFindById(SeededDatabase database) {
+        return customerRepository.findById(database.randomCustomerId());
+    }
+
+    @Benchmark
+    public Optional<Customer> customerCacheFindById(SeededDatabase database) {
+        return customerCache.findById(database.randomCustomerId());
+    }
+
+    @Benchmark
+    public Optional<Customer> reserveThenRepositoryFindById(SeededDatabase database) {
+        creditLimitService.reserve(database.randomCustomerId(), RESERVED_AMOUNT);
+        return customerRepository.findById(database.randomCustomerId());
+    }
+
+    @Benchmark
+    public Optional<Customer> reserveThenCustomerCacheFindById(SeededDatabase database) {
+        creditLimitService.reserve(database.randomCustomerId(), RESERVED_AMOUNT);
+        return customerCache.findById(database.randomCustomerId());
+    }
+}
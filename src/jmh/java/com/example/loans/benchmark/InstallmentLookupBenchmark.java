@@ -0,0 +1,79 @@
+package com.example.loans.benchmark;
+
+import com.example.loans.dto.LoanDTO;
+import com.example.loans.dto.LoanInstallmentDTO;
+import com.example.loans.entity.Loan;
+import com.example.loans.entity.LoanInstallment;
+import com.example.loans.repository.LoanInstallmentRepository;
+import com.example.loans.repository.LoanRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the loan and installment lookups with and without the lookup indexes, loading entities or DTOs.
+ * For the 10M installment data set run it with
+ * -Djmh.args="InstallmentLookupBenchmark -p customers=83334 -p loansPerCustomer=10 -p installmentsPerLoan=12"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class InstallmentLookupBenchmark {
+
+    @Param({"true", "false"})
+    private boolean indexes;
+
+    private LoanRepository loanRepository;
+    private LoanInstallmentRepository loanInstallmentRepository;
+
+    @Setup
+    public void setUp(SeededDatabase database) {
+        if (!indexes) {
+            JdbcTemplate jdbcTemplate = database.getBean(JdbcTemplate.class);
+            jdbcTemplate.execute("DROP INDEX IF EXISTS idx_loans_customer_id");
+            jdbcTemplate.execute("DROP INDEX IF EXISTS idx_loan_installments_loan_paid_due");
+        }
+        loanRepository = database.getBean(LoanRepository.class);
+        loanInstallmentRepository = database.getBean(LoanInstallmentRepository.class);
+    }
+
+    @Benchmark
+    public List<Loan> findLoansByCustomerId(SeededDatabase database) {
+        return loanRepository.findLoansByCustomerId(database.randomCustomerId());
+    }
+
+    @Benchmark
+    public List<LoanDTO> findLoanDTOsByCustomerId(SeededDatabase database) {
+        return loanRepository.findLoanDTOsByCustomerId(database.randomCustomerId());
+    }
+
+    @Benchmark
+    public List<LoanInstallment> findInstallmentsByLoanId(SeededDatabase database) {
+        return loanInstallmentRepository.findInstallmentsByLoanId(database.randomLoanId());
+    }
+
+    @Benchmark
+    public List<LoanInstallmentDTO> findInstallmentDTOsByLoanId(SeededDatabase database) {
+        return loanInstallmentRepository.findInstallmentDTOsByLoanId(database.randomLoanId());
+    }
+
+    @Benchmark
+    public List<LoanInstallment> findUnpaidInstallmentsByLoanId(SeededDatabase database) {
+        return loanInstallmentRepository.findUnpaidInstallmentsByLoanId(database.randomLoanId());
+    }
+}
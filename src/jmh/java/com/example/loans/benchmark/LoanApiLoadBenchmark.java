@@ -0,0 +1,76 @@
+package com.example.loans.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the REST layer with more concurrent clients than tomcat has request threads, on the tomcat
+ * thread pool and on virtual threads. Sample time mode reports the latency percentiles next to the mean,
+ * throughput is the thread count divided by the mean. Compare the two modes with e.g.
+ * -Djmh.args="LoanApiLoadBenchmark -t 400"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Threads(256)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class LoanApiLoadBenchmark {
+
+    private static final String AUTHORIZATION =
+        "Basic " + Base64.getEncoder().encodeToString("user:password".getBytes(StandardCharsets.UTF_8));
+
+    private HttpClient httpClient;
+
+    @Setup
+    public void setUp() {
+        httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    }
+
+    @Benchmark
+    public int listInstallmentsPage(SeededServer server) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder(server.uri("/loanApplication/listInstallmentsByLoanId/"
+            + server.randomLoanId() + "/page?size=12")).GET(), server);
+    }
+
+    @Benchmark
+    public int payLoan(SeededServer server) throws IOException, InterruptedException {
+        String payment = "{\"loanId\":" + server.randomLoanId() + ",\"paymentAmount\":1000}";
+        return send(HttpRequest.newBuilder(server.uri("/loanApplication/payLoan"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(payment)), server);
+    }
+
+    private int send(HttpRequest.Builder request, SeededServer server) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = httpClient.send(request
+            .header("Authorization", AUTHORIZATION)
+            .timeout(Duration.ofSeconds(30))
+            .build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() >= 500) {
+            throw new IllegalStateException("HTTP " + response.statusCode() + " from " + server.uri("/"));
+        }
+        return response.statusCode();
+    }
+}
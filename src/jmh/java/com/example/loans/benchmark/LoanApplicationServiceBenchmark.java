@@ -0,0 +1,88 @@
+package com.example.loans.benchmark;
+
+import com.example.loans.dto.LoanCreationDTO;
+import com.example.loans.dto.LoanDTO;
+import com.example.loans.dto.LoanInstallmentDTO;
+import com.example.loans.dto.LoanPaymentDTO;
+import com.example.loans.dto.LoanPaymentResultDTO;
+import com.example.loans.exception.LoanRejectedException;
+import com.example.loans.response.CreateLoanResponse;
+import com.example.loans.service.LoanApplicationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the LoanApplicationService entry points against a seeded H2 database,
+ * run through BenchmarkRunner so the gc profiler reports allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LoanApplicationServiceBenchmark {
+
+    private LoanApplicationService loanApplicationService;
+
+    @Setup
+    public void setUp(SeededDatabase database) {
+        loanApplicationService = database.getBean(LoanApplicationService.class);
+    }
+
+    @Benchmark
+    public ResponseEntity<CreateLoanResponse> createLoan(SeededDatabase database) {
+        LoanCreationDTO loanCreationDTO = new LoanCreationDTO();
+        loanCreationDTO.setCustomerId(database.randomCustomerId());
+        loanCreationDTO.setAmount(new BigDecimal(10000));
+        loanCreationDTO.setInterestRate(new BigDecimal("0.2"));
+        loanCreationDTO.setNumberOfInstallments(database.installmentsPerLoan);
+        return loanApplicationService.createLoan(loanCreationDTO);
+    }
+
+    @Benchmark
+    public LoanRejectedException createLoanRejected(SeededDatabase database) {
+        LoanCreationDTO loanCreationDTO = new LoanCreationDTO();
+        loanCreationDTO.setCustomerId(database.randomCustomerId());
+        loanCreationDTO.setAmount(new BigDecimal(10000));
+        loanCreationDTO.setInterestRate(new BigDecimal("0.9"));
+        loanCreationDTO.setNumberOfInstallments(database.installmentsPerLoan);
+        try {
+            loanApplicationService.createLoan(loanCreationDTO);
+            throw new IllegalStateException("Loan request with interest rate 0.9 was not rejected");
+        } catch (LoanRejectedException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public ResponseEntity<LoanPaymentResultDTO> payLoan(SeededDatabase database) {
+        LoanPaymentDTO loanPaymentDTO = new LoanPaymentDTO();
+        loanPaymentDTO.setLoanId(database.randomLoanId());
+        loanPaymentDTO.setPaymentAmount(new BigDecimal(1000));
+        return loanApplicationService.payLoan(loanPaymentDTO);
+    }
+
+    @Benchmark
+    public ResponseEntity<List<LoanDTO>> getLoansByCustomerId(SeededDatabase database) {
+        return loanApplicationService.getLoansByCustomerId(database.randomCustomerId());
+    }
+
+    @Benchmark
+    public ResponseEntity<List<LoanInstallmentDTO>> getInstallmentsByLoanId(SeededDatabase database) {
+        return loanApplicationService.getInstallmentsByLoanId(database.randomLoanId());
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.loans.benchmark;
+
+import com.example.loans.dto.LoanQuoteDTO;
+import com.example.loans.enums.AmortizationType;
+import com.example.loans.service.AmortizationEngine;
+import com.example.loans.service.LoanQuoteService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Quotes of 24 installments for a set of distinct amounts, calculated on every call when the cache size is 0
+ * and memoized otherwise. Run it with threads to see the cache under contention: -Djmh.args="LoanQuoteBenchmark -t 8"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoanQuoteBenchmark {
+
+    @Param({"0", "100000"})
+    private long cacheSize;
+
+    @Param({"1000"})
+    private int distinctAmounts;
+
+    @Param({"FLAT", "ANNUITY"})
+    private AmortizationType type;
+
+    private final BigDecimal interestRate = new BigDecimal("0.2");
+
+    private LoanQuoteService loanQuoteService;
+    private BigDecimal[] amounts;
+
+    @Setup
+    public void setUp() {
+        loanQuoteService = new LoanQuoteService(new AmortizationEngine(type), cacheSize);
+        amounts = new BigDecimal[distinctAmounts];
+        for (int i = 0; i < distinctAmounts; i++) {
+            amounts[i] = new BigDecimal(1000 + i * 100);
+        }
+    }
+
+    @Benchmark
+    public ResponseEntity<LoanQuoteDTO> quote() {
+        BigDecimal amount = amounts[ThreadLocalRandom.current().nextInt(amounts.length)];
+        return loanQuoteService.quote(amount, interestRate, 24);
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.loans.benchmark;
+
+import com.example.loans.repository.CustomerExposureRepository;
+import com.example.loans.repository.JobCheckpointRepository;
+import com.example.loans.service.OverdueInstallmentScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Duration of a full overdue scan. Due dates are moved 6 months back, so half of the installments are
+ * overdue. For the 12M installment data set run it with
+ * -Djmh.args="OverdueScanBenchmark -p customers=100000 -p loansPerCustomer=10 -p installmentsPerLoan=12"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class OverdueScanBenchmark {
+
+    @Param({"1", "4"})
+    private int parallelism;
+
+    @Param({"5000"})
+    private int chunkLoans;
+
+    private JdbcTemplate jdbcTemplate;
+    private JobCheckpointRepository jobCheckpointRepository;
+    private OverdueInstallmentScanner scanner;
+
+    @Setup
+    public void setUp(SeededDatabase database) {
+        jdbcTemplate = database.getBean(JdbcTemplate.class);
+        jobCheckpointRepository = database.getBean(JobCheckpointRepository.class);
+        jdbcTemplate.update("UPDATE loan_installments SET due_date = DATEADD(MONTH, -6, due_date)");
+        scanner = new OverdueInstallmentScanner(jdbcTemplate, jobCheckpointRepository,
+            database.getBean(CustomerExposureRepository.class), database.getBean(PlatformTransactionManager.class),
+            parallelism, chunkLoans, new BigDecimal("0.001"));
+    }
+
+    @Setup(Level.Iteration)
+    public void resetOverdue() {
+        jobCheckpointRepository.deleteAll();
+        jdbcTemplate.update("UPDATE loan_installments SET is_overdue = FALSE, late_fee = 0 WHERE is_overdue = TRUE");
+    }
+
+    @Benchmark
+    public long scan() {
+        return scanner.scan(LocalDate.now());
+    }
+}
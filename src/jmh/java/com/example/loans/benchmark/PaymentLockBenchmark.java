@@ -0,0 +1,94 @@
+package com.example.loans.benchmark;
+
+import com.example.loans.dto.LoanPaymentResultDTO;
+import com.example.loans.service.BulkPaymentService;
+import com.example.loans.service.LoanPaymentEngine;
+import com.example.loans.service.LoanPaymentLocks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Payments of random, mostly distinct loans from several threads, with and without the per-loan lock,
+ * and the cost of taking the lock alone. The duringBulk group runs single payments while one thread keeps
+ * paying bulk chunks of random loans, single payments should not slow down more than the database does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class PaymentLockBenchmark {
+
+    private static final BigDecimal PAYMENT_AMOUNT = new BigDecimal(1000);
+
+    private static final int BULK_PAYMENTS = 500;
+
+    private LoanPaymentEngine loanPaymentEngine;
+    private LoanPaymentLocks loanPaymentLocks;
+    private BulkPaymentService bulkPaymentService;
+    private byte[] bulkPayments;
+
+    @Setup
+    public void setUp(SeededDatabase database) {
+        loanPaymentEngine = database.getBean(LoanPaymentEngine.class);
+        loanPaymentLocks = database.getBean(LoanPaymentLocks.class);
+        bulkPaymentService = database.getBean(BulkPaymentService.class);
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < BULK_PAYMENTS; i++) {
+            ndjson.append("{\"loanId\":").append(database.randomLoanId())
+                .append(",\"paymentAmount\":").append(PAYMENT_AMOUNT).append("}\n");
+        }
+        bulkPayments = ndjson.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public LoanPaymentResultDTO payWithoutLock(SeededDatabase database) {
+        return loanPaymentEngine.pay(database.randomLoanId(), PAYMENT_AMOUNT);
+    }
+
+    @Benchmark
+    public LoanPaymentResultDTO payWithLoanLock(SeededDatabase database) {
+        long loanId = database.randomLoanId();
+        return loanPaymentLocks.withLoanLock(loanId, () -> loanPaymentEngine.pay(loanId, PAYMENT_AMOUNT));
+    }
+
+    @Benchmark
+    public long loanLockOnly(SeededDatabase database) {
+        long loanId = database.randomLoanId();
+        return loanPaymentLocks.withLoanLock(loanId, () -> loanId);
+    }
+
+    @Benchmark
+    @Group("duringBulk")
+    @GroupThreads(7)
+    public LoanPaymentResultDTO payDuringBulk(SeededDatabase database) {
+        return payWithLoanLock(database);
+    }
+
+    @Benchmark
+    @Group("duringBulk")
+    @GroupThreads(1)
+    public void bulkPayments() throws IOException {
+        bulkPaymentService.payLoans(new ByteArrayInputStream(bulkPayments), OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.loans.benchmark;
+
+import com.example.loans.dto.PortfolioSnapshotDTO;
+import com.example.loans.service.PortfolioAnalyticsService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Duration of a full portfolio aggregation, on one thread and on a fork join pool. For the 12M installment
+ * data set run it with
+ * -Djmh.args="PortfolioAnalyticsBenchmark -p customers=100000 -p loansPerCustomer=10 -p installmentsPerLoan=12"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PortfolioAnalyticsBenchmark {
+
+    @Param({"1", "4"})
+    private int parallelism;
+
+    @Param({"100000"})
+    private long partitionRows;
+
+    private PortfolioAnalyticsService service;
+
+    @Setup
+    public void setUp(SeededDatabase database) {
+        service = new PortfolioAnalyticsService(database.getBean(DataSource.class), parallelism, partitionRows,
+            1000, Duration.ZERO);
+    }
+
+    @Benchmark
+    public PortfolioSnapshotDTO aggregate() {
+        return service.snapshot(true);
+    }
+}
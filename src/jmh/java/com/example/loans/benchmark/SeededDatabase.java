@@ -0,0 +1,110 @@
+package com.example.loans.benchmark;
+
+import com.example.loans.LoanApplication;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Application context on an in-memory H2 database seeded with customers, loans and unpaid installments.
+ * Sizes can be changed from the command line, e.g. -p customers=10000 -p loansPerCustomer=5,
+ * and Spring profiles can be activated with e.g. -p profiles=l2cache.
+ */
+@State(Scope.Benchmark)
+public class SeededDatabase {
+
+    @Param({"1000"})
+    public int customers;
+
+    @Param({"10"})
+    public int loansPerCustomer;
+
+    @Param({"12"})
+    public int installmentsPerLoan;
+
+    @Param({"default"})
+    public String profiles;
+
+    public ConfigurableApplicationContext context;
+
+    private JdbcTemplate jdbcTemplate;
+    private long loans;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        context = new SpringApplicationBuilder(LoanApplication.class)
+            .web(webApplicationType())
+            .run(arguments().toArray(String[]::new));
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        seed();
+    }
+
+    protected WebApplicationType webApplicationType() {
+        return WebApplicationType.NONE;
+    }
+
+    protected List<String> arguments() {
+        List<String> arguments = new ArrayList<>();
+        arguments.add("--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE");
+        arguments.add("--spring.jpa.show-sql=false");
+        arguments.add("--spring.h2.console.enabled=false");
+        arguments.add("--logging.level.root=WARN");
+        arguments.add("--spring.profiles.active=" + profiles);
+        return arguments;
+    }
+
+    @Setup(Level.Iteration)
+    public void resetPayments() {
+        jdbcTemplate.update("UPDATE loan_installments SET is_paid = FALSE, paid_amount = 0, payment_date = NULL"
+            + " WHERE is_paid = TRUE");
+        jdbcTemplate.update("UPDATE loans SET is_paid = FALSE WHERE is_paid = TRUE");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public long randomCustomerId() {
+        return ThreadLocalRandom.current().nextLong(customers) + 1;
+    }
+
+    public long randomLoanId() {
+        return ThreadLocalRandom.current().nextLong(loans) + 1;
+    }
+
+    private void seed() {
+        loans = (long) customers * loansPerCustomer;
+        long installments = loans * installmentsPerLoan;
+        LocalDate firstDueDate = LocalDate.now().with(TemporalAdjusters.firstDayOfNextMonth());
+
+        jdbcTemplate.update("INSERT INTO customers (id, name, sur_name, credit_limit, used_credit_limit)"
+            + " SELECT X, 'Customer' || X, 'Benchmark', 1000000000, 0 FROM SYSTEM_RANGE(1, ?)", customers);
+        jdbcTemplate.update("INSERT INTO loans (id, customer_id, loan_amount, number_of_installment, create_date, is_paid)"
+            + " SELECT X, (X - 1) / ? + 1, ? * 1000, ?, CURRENT_TIMESTAMP, FALSE FROM SYSTEM_RANGE(1, ?)",
+            loansPerCustomer, installmentsPerLoan, installmentsPerLoan, loans);
+        jdbcTemplate.update("INSERT INTO loan_installments (id, loan_id, amount, paid_amount, due_date, payment_date, is_paid)"
+            + " SELECT X, (X - 1) / ? + 1, 1000, 0, DATEADD(MONTH, MOD(X - 1, ?), CAST(? AS DATE)), NULL, FALSE FROM SYSTEM_RANGE(1, ?)",
+            installmentsPerLoan, installmentsPerLoan, firstDueDate, installments);
+        jdbcTemplate.execute("ALTER SEQUENCE loans_seq RESTART WITH " + (loans + 1000));
+        jdbcTemplate.execute("ALTER SEQUENCE loan_installments_seq RESTART WITH " + (installments + 1000));
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.loans.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * SeededDatabase on an H2 file database in a new temporary directory, so writes go to disk.
+ */
+@State(Scope.Benchmark)
+public class SeededFileDatabase extends SeededDatabase {
+
+    @Override
+    protected List<String> arguments() {
+        Path directory;
+        try {
+            directory = Files.createTempDirectory("loans-benchmark");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<String> arguments = super.arguments();
+        arguments.removeIf(argument -> argument.startsWith("--spring.datasource.url="));
+        arguments.add("--spring.datasource.url=jdbc:h2:file:" + directory.resolve("loans") + ";DB_CLOSE_ON_EXIT=FALSE");
+        return arguments;
+    }
+}
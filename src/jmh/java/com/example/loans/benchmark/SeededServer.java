@@ -0,0 +1,39 @@
+package com.example.loans.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.boot.WebApplicationType;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * SeededDatabase served over HTTP on a random port, on the tomcat thread pool or on virtual threads.
+ */
+@State(Scope.Benchmark)
+public class SeededServer extends SeededDatabase {
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    @Override
+    protected WebApplicationType webApplicationType() {
+        return WebApplicationType.SERVLET;
+    }
+
+    @Override
+    protected List<String> arguments() {
+        List<String> arguments = super.arguments();
+        arguments.add("--server.port=0");
+        arguments.add("--spring.threads.virtual.enabled=" + virtualThreads);
+        // the load test measures the service, not the admission control shedding it
+        arguments.add("--loan.admission.max-concurrent=0");
+        arguments.add("--loan.admission.loan.rate=0");
+        return arguments;
+    }
+
+    public URI uri(String path) {
+        return URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port") + path);
+    }
+}
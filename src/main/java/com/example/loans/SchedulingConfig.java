@@ -0,0 +1,15 @@
+package com.example.loans;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Runs the @Scheduled jobs. It is kept off the application class so test slices, which load that class but
+ * not this one, call the jobs themselves instead of racing with the scheduler.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "loan.scheduling.enabled", havingValue = "true", matchIfMissing = true)
+public class SchedulingConfig {
+}
@@ -0,0 +1,58 @@
+package com.example.loans.controller;
+
+import com.example.loans.service.LoanAdmissionControl;
+import com.example.loans.util.StripedTokenBuckets;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and changes the limits of {@link LoanAdmissionControl} while running, only the ADMIN role may call it:
+ * POST /actuator/admission/customer {"rate": 5, "burst": 10}, POST /actuator/admission/concurrency {"maxConcurrent": 200}
+ */
+@Component
+@Endpoint(id = "admission")
+public class AdmissionControlEndpoint {
+
+    private static final String CONCURRENCY = "concurrency";
+    private static final List<String> LIMITS =
+        List.of(LoanAdmissionControl.PRINCIPAL, LoanAdmissionControl.CUSTOMER, LoanAdmissionControl.LOAN);
+
+    @Autowired
+    private LoanAdmissionControl loanAdmissionControl;
+
+    @ReadOperation
+    public Map<String, Object> limits() {
+        Map<String, Object> limits = new LinkedHashMap<>();
+        limits.put(CONCURRENCY, Map.of("maxConcurrent", loanAdmissionControl.getMaxConcurrent()));
+        for (String limit : LIMITS) {
+            StripedTokenBuckets buckets = loanAdmissionControl.getBuckets(limit);
+            limits.put(limit, Map.of("rate", buckets.getTokensPerSecond(), "burst", buckets.getBurst()));
+        }
+        return limits;
+    }
+
+    @WriteOperation
+    public void configure(@Selector String limit, @Nullable Double rate, @Nullable Integer burst,
+                          @Nullable Integer maxConcurrent) {
+        if (CONCURRENCY.equals(limit) && maxConcurrent != null) {
+            loanAdmissionControl.setMaxConcurrent(maxConcurrent);
+            return;
+        }
+        StripedTokenBuckets buckets = loanAdmissionControl.getBuckets(limit);
+        if (buckets == null || rate == null) {
+            throw new InvalidEndpointRequestException("Unknown limit or missing rate: " + limit,
+                "Limit must be concurrency with maxConcurrent, or one of " + LIMITS + " with rate");
+        }
+        buckets.setRate(rate, burst == null ? 1 : burst);
+    }
+}
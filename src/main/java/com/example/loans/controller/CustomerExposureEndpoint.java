@@ -0,0 +1,26 @@
+package com.example.loans.controller;
+
+import com.example.loans.service.CustomerExposureService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Rebuilds the exposures of {@link CustomerExposureService} on demand, only the ADMIN role may call it:
+ * POST /actuator/exposure. The rebuild runs until it is done, so the response comes when it is complete.
+ */
+@Component
+@Endpoint(id = "exposure")
+public class CustomerExposureEndpoint {
+
+    @Autowired
+    private CustomerExposureService customerExposureService;
+
+    @WriteOperation
+    public Map<String, Long> rebuild() {
+        return Map.of("rebuiltExposures", customerExposureService.rebuild());
+    }
+}
@@ -1,47 +1,180 @@
 package com.example.loans.controller;
 
+import com.example.loans.dto.CustomerExposureDTO;
+import com.example.loans.dto.KeysetPageDTO;
 import com.example.loans.dto.LoanCreationDTO;
+import com.example.loans.dto.LoanDTO;
+import com.example.loans.dto.LoanInstallmentDTO;
 import com.example.loans.dto.LoanPaymentDTO;
 import com.example.loans.dto.LoanPaymentResultDTO;
-import com.example.loans.entity.Loan;
-import com.example.loans.entity.LoanInstallment;
+import com.example.loans.dto.LoanQuoteDTO;
 import com.example.loans.response.CreateLoanResponse;
+import com.example.loans.service.BulkLoanService;
+import com.example.loans.service.BulkPaymentService;
+import com.example.loans.service.CustomerExposureService;
+import com.example.loans.service.LoanAdmissionControl;
 import com.example.loans.service.LoanApplicationService;
+import com.example.loans.service.LoanListingService;
+import com.example.loans.service.LoanQuoteService;
+import com.example.loans.service.OutboxEventStream;
+import com.example.loans.service.PaymentIdempotencyService;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.security.Principal;
+import java.time.YearMonth;
 import java.util.List;
 
 @RestController
 @RequestMapping("/loanApplication")
 public class LoanApplicationController {
 
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final String LAST_EVENT_ID = "Last-Event-ID";
+
     @Autowired
     private LoanApplicationService loanApplicationService;
 
+    @Autowired
+    private LoanAdmissionControl loanAdmissionControl;
+
+    @Autowired
+    private LoanQuoteService loanQuoteService;
+
+    @Autowired
+    private BulkLoanService bulkLoanService;
+
+    @Autowired
+    private BulkPaymentService bulkPaymentService;
+
+    @Autowired
+    private LoanListingService loanListingService;
+
+    @Autowired
+    private CustomerExposureService customerExposureService;
+
+    @Autowired
+    private PaymentIdempotencyService paymentIdempotencyService;
+
+    @Autowired
+    private OutboxEventStream outboxEventStream;
+
     @PostMapping("/createLoan")
-    public ResponseEntity<CreateLoanResponse> createLoan(@RequestBody LoanCreationDTO loanCreationDTO){
-        return loanApplicationService.createLoan(loanCreationDTO);
+    public ResponseEntity<CreateLoanResponse> createLoan(@RequestBody LoanCreationDTO loanCreationDTO,
+                                                         Principal principal){
+        loanAdmissionControl.admitLoan(principal == null ? null : principal.getName(), loanCreationDTO.getCustomerId());
+        try {
+            return loanApplicationService.createLoan(loanCreationDTO);
+        } finally {
+            loanAdmissionControl.release();
+        }
+    }
+
+    @GetMapping("/quote")
+    public ResponseEntity<LoanQuoteDTO> quote(@RequestParam(required = false) BigDecimal amount,
+                                              @RequestParam(required = false) BigDecimal interestRate,
+                                              @RequestParam(defaultValue = "0") int numberOfInstallments,
+                                              @RequestParam(required = false) YearMonth startMonth){
+        if (startMonth == null) {
+            return loanQuoteService.quote(amount, interestRate, numberOfInstallments);
+        }
+        return loanQuoteService.quote(amount, interestRate, numberOfInstallments, startMonth);
+    }
+
+    @PostMapping(value = "/createLoans/bulk", consumes = {NDJSON, MediaType.APPLICATION_JSON_VALUE}, produces = NDJSON)
+    public void createLoans(InputStream loans, HttpServletResponse response, Principal principal) throws IOException {
+        loanAdmissionControl.admitBulk(principal == null ? null : principal.getName());
+        try {
+            response.setContentType(NDJSON);
+            bulkLoanService.createLoans(loans, response.getOutputStream());
+        } finally {
+            loanAdmissionControl.release();
+        }
     }
 
     @GetMapping("/listLoansByCustomerId/{customerId}")
-    public ResponseEntity<List<Loan>> getLoansByCustomerId(@PathVariable Long customerId){
+    public ResponseEntity<List<LoanDTO>> getLoansByCustomerId(@PathVariable Long customerId){
         return loanApplicationService.getLoansByCustomerId(customerId);
     }
 
+    @GetMapping("/listLoansByCustomerId/{customerId}/page")
+    public ResponseEntity<KeysetPageDTO<LoanDTO>> getLoansByCustomerId(@PathVariable Long customerId,
+                                                                      @RequestParam(required = false) Long afterId,
+                                                                      @RequestParam(required = false) Integer size){
+        return loanListingService.getLoansByCustomerId(customerId, afterId, size);
+    }
+
+    @GetMapping(value = "/listLoansByCustomerId/{customerId}/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamLoansByCustomerId(@PathVariable Long customerId){
+        return ResponseEntity.ok(output -> loanListingService.streamLoansByCustomerId(customerId, output));
+    }
+
     @GetMapping("/listInstallmentsByLoanId/{loanId}")
-    public ResponseEntity<List<LoanInstallment>> getInstallmentsByLoanId(@PathVariable Long loanId){
+    public ResponseEntity<List<LoanInstallmentDTO>> getInstallmentsByLoanId(@PathVariable Long loanId){
         return loanApplicationService.getInstallmentsByLoanId(loanId);
     }
 
+    @GetMapping("/listInstallmentsByLoanId/{loanId}/page")
+    public ResponseEntity<KeysetPageDTO<LoanInstallmentDTO>> getInstallmentsByLoanId(@PathVariable Long loanId,
+                                                                                    @RequestParam(required = false) Long afterId,
+                                                                                    @RequestParam(required = false) Integer size){
+        return loanListingService.getInstallmentsByLoanId(loanId, afterId, size);
+    }
+
+    @GetMapping(value = "/listInstallmentsByLoanId/{loanId}/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamInstallmentsByLoanId(@PathVariable Long loanId){
+        return ResponseEntity.ok(output -> loanListingService.streamInstallmentsByLoanId(loanId, output));
+    }
+
     @PostMapping("/payLoan")
-    public ResponseEntity<LoanPaymentResultDTO> payLoan(@RequestBody LoanPaymentDTO loanPaymentDTO){
-        return loanApplicationService.payLoan(loanPaymentDTO);
+    public ResponseEntity<LoanPaymentResultDTO> payLoan(@RequestBody LoanPaymentDTO loanPaymentDTO,
+            @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey, Principal principal){
+        loanAdmissionControl.admitPayment(principal == null ? null : principal.getName(), loanPaymentDTO.getLoanId());
+        try {
+            if (idempotencyKey == null) {
+                return loanApplicationService.payLoan(loanPaymentDTO);
+            }
+            return paymentIdempotencyService.payLoan(idempotencyKey, loanPaymentDTO);
+        } finally {
+            loanAdmissionControl.release();
+        }
+    }
+
+    @PostMapping(value = "/payLoans/bulk", consumes = {NDJSON, MediaType.APPLICATION_JSON_VALUE}, produces = NDJSON)
+    public void payLoans(InputStream payments, HttpServletResponse response, Principal principal) throws IOException {
+        loanAdmissionControl.admitBulk(principal == null ? null : principal.getName());
+        try {
+            response.setContentType(NDJSON);
+            bulkPaymentService.payLoans(payments, response.getOutputStream());
+        } finally {
+            loanAdmissionControl.release();
+        }
+    }
+
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(@RequestHeader(value = LAST_EVENT_ID, required = false) Long lastEventId,
+                                   @RequestParam(required = false) Long loanId){
+        return outboxEventStream.subscribe(lastEventId, loanId);
+    }
+
+    @GetMapping("/customerExposure/{customerId}")
+    public ResponseEntity<CustomerExposureDTO> getCustomerExposure(@PathVariable Long customerId){
+        return customerExposureService.getExposure(customerId);
     }
 }
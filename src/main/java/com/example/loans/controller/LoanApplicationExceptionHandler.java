@@ -0,0 +1,51 @@
+package com.example.loans.controller;
+
+import com.example.loans.enums.LoanRejection;
+import com.example.loans.exception.AdmissionRejectedException;
+import com.example.loans.exception.LoanRejectedException;
+import com.example.loans.response.CreateLoanResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Maps rejected loan requests to client errors and shed requests to 429, the responses are built once.
+ */
+@RestControllerAdvice
+public class LoanApplicationExceptionHandler {
+
+    private static final Map<LoanRejection, ResponseEntity<CreateLoanResponse>> REJECTIONS =
+        new EnumMap<>(LoanRejection.class);
+    private static final ResponseEntity<Void> TOO_MANY_REQUESTS = ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+        .header(HttpHeaders.RETRY_AFTER, "1")
+        .build();
+
+    static {
+        for (LoanRejection rejection : LoanRejection.values()) {
+            REJECTIONS.put(rejection, new ResponseEntity<>(CreateLoanResponse.rejected(rejection), status(rejection)));
+        }
+    }
+
+    @ExceptionHandler(LoanRejectedException.class)
+    public ResponseEntity<CreateLoanResponse> handleLoanRejected(LoanRejectedException e) {
+        return REJECTIONS.get(e.getRejection());
+    }
+
+    @ExceptionHandler(AdmissionRejectedException.class)
+    public ResponseEntity<Void> handleAdmissionRejected(AdmissionRejectedException e) {
+        return TOO_MANY_REQUESTS;
+    }
+
+    static HttpStatus status(LoanRejection rejection) {
+        return switch (rejection) {
+            case REQUEST_NULL, INSTALLMENT_TYPE, INTEREST_RATE, AMOUNT -> HttpStatus.BAD_REQUEST;
+            case CUSTOMER_NOT_FOUND -> HttpStatus.NOT_FOUND;
+            case CREDIT_LIMIT -> HttpStatus.UNPROCESSABLE_ENTITY;
+        };
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.loans.controller;
+
+import com.example.loans.dto.PortfolioSnapshotDTO;
+import com.example.loans.service.PortfolioAnalyticsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Portfolio snapshots of {@link PortfolioAnalyticsService}, only the ADMIN role may call it:
+ * GET /actuator/portfolio returns the cached snapshot, POST /actuator/portfolio aggregates a new one.
+ */
+@Component
+@Endpoint(id = "portfolio")
+public class PortfolioEndpoint {
+
+    @Autowired
+    private PortfolioAnalyticsService portfolioAnalyticsService;
+
+    @ReadOperation
+    public PortfolioSnapshotDTO snapshot() {
+        return portfolioAnalyticsService.snapshot(false);
+    }
+
+    @WriteOperation
+    public PortfolioSnapshotDTO refresh() {
+        return portfolioAnalyticsService.snapshot(true);
+    }
+}
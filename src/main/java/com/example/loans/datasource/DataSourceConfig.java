@@ -0,0 +1,79 @@
+package com.example.loans.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+
+@Configuration
+public class DataSourceConfig {
+
+    /**
+     * Put the pooled data source behind a {@link BoundedDataSource} sized by the pool, and behind a
+     * {@link SlowQueryDataSource} when a slow query threshold is set
+     */
+    @Bean
+    public static BeanPostProcessor boundedDataSourcePostProcessor(
+        @Value("${loan.datasource.max-waiting:1000}") int maxWaiting,
+        @Value("${loan.datasource.acquire-timeout:5s}") Duration acquireTimeout,
+        @Value("${loan.datasource.slow-query-threshold:0s}") Duration slowQueryThreshold,
+        @Value("${loan.datasource.slow-query-sample-rate:1.0}") double slowQuerySampleRate) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource hikariDataSource) {
+                    DataSource dataSource = new BoundedDataSource(hikariDataSource,
+                        hikariDataSource.getMaximumPoolSize(), maxWaiting, acquireTimeout);
+                    if (slowQueryThreshold.isPositive()) {
+                        dataSource = new SlowQueryDataSource(dataSource, slowQueryThreshold, slowQuerySampleRate);
+                    }
+                    return dataSource;
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * Saturation of the connection bulkhead and the slow query count, next to the hikaricp.* pool meters
+     */
+    @Bean
+    public MeterBinder dataSourceMetrics(DataSource dataSource) {
+        return registry -> {
+            BoundedDataSource boundedDataSource = unwrap(dataSource, BoundedDataSource.class);
+            if (boundedDataSource != null) {
+                Gauge.builder("loan.datasource.connections.available", boundedDataSource,
+                        BoundedDataSource::getAvailableConnections)
+                    .description("Connections callers can take without waiting")
+                    .register(registry);
+                Gauge.builder("loan.datasource.connections.waiting", boundedDataSource,
+                        BoundedDataSource::getWaiting)
+                    .description("Callers waiting for a connection")
+                    .register(registry);
+            }
+            SlowQueryDataSource slowQueryDataSource = unwrap(dataSource, SlowQueryDataSource.class);
+            if (slowQueryDataSource != null) {
+                FunctionCounter.builder("loan.datasource.slow.queries", slowQueryDataSource,
+                        SlowQueryDataSource::getSlowQueries)
+                    .description("Statements slower than loan.datasource.slow-query-threshold")
+                    .register(registry);
+            }
+        };
+    }
+
+    private static <T> T unwrap(DataSource dataSource, Class<T> type) {
+        try {
+            return dataSource.isWrapperFor(type) ? dataSource.unwrap(type) : null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.loans.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Times statement executions and logs the ones that take longer than the threshold, instead of logging
+ * every statement like show-sql. Every slow statement is counted, but only a sample of them is logged,
+ * so a slow database does not also flood the log.
+ */
+@Slf4j
+public class SlowQueryDataSource extends DelegatingDataSource {
+
+    private final long thresholdNanos;
+    private final double sampleRate;
+    private final LongAdder slowQueries = new LongAdder();
+
+    public SlowQueryDataSource(DataSource targetDataSource, Duration threshold, double sampleRate) {
+        super(targetDataSource);
+        this.thresholdNanos = threshold.toNanos();
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return timingStatements(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return timingStatements(super.getConnection(username, password));
+    }
+
+    /**
+     * @return the number of statements that took longer than the threshold, logged or not
+     */
+    public long getSlowQueries() {
+        return slowQueries.sum();
+    }
+
+    private Connection timingStatements(Connection connection) {
+        return new DelegatingConnection(connection) {
+            // prepared statements know their sql up front, plain statements get it on execute
+            @Override
+            public Statement createStatement() throws SQLException {
+                return new TimedStatement(super.createStatement(), this, null, SlowQueryDataSource.this);
+            }
+
+            @Override
+            public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+                return new TimedStatement(super.createStatement(resultSetType, resultSetConcurrency), this, null,
+                    SlowQueryDataSource.this);
+            }
+
+            @Override
+            public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+                throws SQLException {
+                return new TimedStatement(super.createStatement(resultSetType, resultSetConcurrency,
+                    resultSetHoldability), this, null, SlowQueryDataSource.this);
+            }
+
+            @Override
+            public PreparedStatement prepareStatement(String sql) throws SQLException {
+                return new TimedPreparedStatement(super.prepareStatement(sql), this, sql, SlowQueryDataSource.this);
+            }
+
+            @Override
+            public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency)
+                throws SQLException {
+                return new TimedPreparedStatement(super.prepareStatement(sql, resultSetType, resultSetConcurrency),
+                    this, sql, SlowQueryDataSource.this);
+            }
+
+            @Override
+            public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency,
+                                                      int resultSetHoldability) throws SQLException {
+                return new TimedPreparedStatement(super.prepareStatement(sql, resultSetType, resultSetConcurrency,
+                    resultSetHoldability), this, sql, SlowQueryDataSource.this);
+            }
+
+            @Override
+            public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+                return new TimedPreparedStatement(super.prepareStatement(sql, autoGeneratedKeys), this, sql,
+                    SlowQueryDataSource.this);
+            }
+
+            @Override
+            public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+                return new TimedPreparedStatement(super.prepareStatement(sql, columnIndexes), this, sql,
+                    SlowQueryDataSource.this);
+            }
+
+            @Override
+            public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+                return new TimedPreparedStatement(super.prepareStatement(sql, columnNames), this, sql,
+                    SlowQueryDataSource.this);
+            }
+
+            @Override
+            public CallableStatement prepareCall(String sql) throws SQLException {
+                return new TimedCallableStatement(super.prepareCall(sql), this, sql, SlowQueryDataSource.this);
+            }
+
+            @Override
+            public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency)
+                throws SQLException {
+                return new TimedCallableStatement(super.prepareCall(sql, resultSetType, resultSetConcurrency), this,
+                    sql, SlowQueryDataSource.this);
+            }
+
+            @Override
+            public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency,
+                                                 int resultSetHoldability) throws SQLException {
+                return new TimedCallableStatement(super.prepareCall(sql, resultSetType, resultSetConcurrency,
+                    resultSetHoldability), this, sql, SlowQueryDataSource.this);
+            }
+        };
+    }
+
+    /**
+     * Called by the timed statements after every execution
+     */
+    void executed(String sql, long elapsedNanos) {
+        if (elapsedNanos >= thresholdNanos) {
+            slowQuery(sql, elapsedNanos);
+        }
+    }
+
+    private void slowQuery(String sql, long elapsedNanos) {
+        slowQueries.increment();
+        if (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            log.warn("Slow query took {}ms: {}", TimeUnit.NANOSECONDS.toMillis(elapsedNanos), sql);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.loans.dto;
+
+import com.example.loans.entity.CustomerExposure;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Exposure of a customer as it is returned by the API
+ */
+@Getter
+@AllArgsConstructor
+public class CustomerExposureDTO {
+
+    private final Long customerId;
+    private final Integer openLoanCount;
+    private final BigDecimal outstandingAmount;
+    private final LocalDate nextDueDate;
+    private final BigDecimal overdueAmount;
+
+    public static CustomerExposureDTO of(CustomerExposure customerExposure) {
+        return new CustomerExposureDTO(customerExposure.getCustomerId(), customerExposure.getOpenLoanCount(),
+            customerExposure.getOutstandingAmount(), customerExposure.getNextDueDate(),
+            customerExposure.getOverdueAmount());
+    }
+}
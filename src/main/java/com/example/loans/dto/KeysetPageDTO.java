@@ -0,0 +1,16 @@
+package com.example.loans.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+public class KeysetPageDTO<T> {
+
+    private List<T> items;
+
+    // pass as afterId to get the next page, null if this is the last page
+    private Long nextAfterId;
+}
@@ -0,0 +1,16 @@
+package com.example.loans.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+@Getter
+@Setter
+public class LoanCreationResultDTO {
+
+    private Long loanId;
+    private BigDecimal loanAmount;
+    private String rejection;
+    private String message;
+}
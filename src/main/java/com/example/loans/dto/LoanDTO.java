@@ -0,0 +1,28 @@
+package com.example.loans.dto;
+
+import com.example.loans.entity.Loan;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Loan as it is returned by the API, selected with a constructor expression so no entity is loaded
+ */
+@Getter
+@AllArgsConstructor
+public class LoanDTO {
+
+    private final Long id;
+    private final Long customerId;
+    private final BigDecimal loanAmount;
+    private final Integer numberOfInstallment;
+    private final Date createDate;
+    private final Boolean isPaid;
+
+    public static LoanDTO of(Loan loan) {
+        return new LoanDTO(loan.getId(), loan.getCustomerId(), loan.getLoanAmount(), loan.getNumberOfInstallment(),
+            loan.getCreateDate(), loan.getIsPaid());
+    }
+}
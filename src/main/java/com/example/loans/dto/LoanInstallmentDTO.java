@@ -0,0 +1,25 @@
+package com.example.loans.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Loan installment as it is returned by the API, selected with a constructor expression so no entity is loaded
+ */
+@Getter
+@AllArgsConstructor
+public class LoanInstallmentDTO {
+
+    private final Long id;
+    private final Long loanId;
+    private final BigDecimal amount;
+    private final BigDecimal paidAmount;
+    private final LocalDate dueDate;
+    private final LocalDate paymentDate;
+    private final Boolean isPaid;
+    private final Boolean isOverdue;
+    private final BigDecimal lateFee;
+}
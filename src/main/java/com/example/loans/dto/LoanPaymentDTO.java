@@ -1,5 +1,6 @@
 package com.example.loans.dto;
 
+import com.example.loans.enums.PaymentAllocation;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -12,4 +13,7 @@ public class LoanPaymentDTO {
     private Long loanId;
 
     private BigDecimal paymentAmount;
+
+    // INSTALLMENTS if it is not given
+    private PaymentAllocation allocation;
 }
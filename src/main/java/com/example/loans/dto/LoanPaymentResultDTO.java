@@ -12,4 +12,10 @@ public class LoanPaymentResultDTO {
     private int numberOfInstallmentsPaid;
     private BigDecimal totalAmountSpent;
     private boolean isPaidCompletely;
+    // early payoff discount of the paid installments
+    private BigDecimal rewardAmount;
+    // late fees of the paid installments
+    private BigDecimal penaltyAmount;
+    // part of the payment applied to installments after the payable window
+    private BigDecimal carriedForwardAmount;
 }
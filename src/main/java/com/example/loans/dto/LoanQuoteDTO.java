@@ -0,0 +1,30 @@
+package com.example.loans.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Installment schedule of a loan which is not created, quotes are cached and shared so they are immutable
+ */
+@Getter
+@AllArgsConstructor
+public class LoanQuoteDTO {
+
+    private final BigDecimal amount;
+    private final BigDecimal interestRate;
+    private final int numberOfInstallments;
+    private final BigDecimal loanAmount;
+    private final List<Installment> installments;
+
+    @Getter
+    @AllArgsConstructor
+    public static class Installment {
+
+        private final LocalDate dueDate;
+        private final BigDecimal amount;
+    }
+}
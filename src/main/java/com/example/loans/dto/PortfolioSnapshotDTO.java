@@ -0,0 +1,50 @@
+package com.example.loans.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Getter
+@Setter
+public class PortfolioSnapshotDTO {
+
+    private LocalDateTime createdAt;
+    private long loanCount;
+    private long paidLoanCount;
+    private long installmentCount;
+    private long paidInstallmentCount;
+    // paid installments over all installments
+    private double paidRatio;
+    private BigDecimal paidAmount;
+    private BigDecimal outstandingAmount;
+    private BigDecimal overdueAmount;
+    private List<InstallmentTypeDTO> byNumberOfInstallments;
+    // unpaid installments by due month
+    private List<DueMonthDTO> dueDateHistogram;
+
+    @Getter
+    @Setter
+    public static class InstallmentTypeDTO {
+
+        private int numberOfInstallments;
+        private long loanCount;
+        private long paidLoanCount;
+        private long installmentCount;
+        private long paidInstallmentCount;
+        private BigDecimal outstandingAmount;
+        private BigDecimal overdueAmount;
+    }
+
+    @Getter
+    @Setter
+    public static class DueMonthDTO {
+
+        // yyyy-MM
+        private String month;
+        private long installmentCount;
+        private BigDecimal amount;
+    }
+}
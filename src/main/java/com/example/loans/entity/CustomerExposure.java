@@ -0,0 +1,39 @@
+package com.example.loans.entity;
+
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * What a customer owes, kept up to date by loan creation, payments and the overdue scan,
+ * so it can be read without loading loans or installments
+ */
+@Entity
+@Table(name = "CUSTOMER_EXPOSURES")
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class CustomerExposure {
+
+    @Id
+    private Long customerId;
+
+    private Integer openLoanCount;
+
+    // unpaid installment amounts, principal and interest
+    private BigDecimal outstandingAmount;
+
+    private LocalDate nextDueDate;
+
+    // unpaid overdue installment amounts and their late fees
+    private BigDecimal overdueAmount;
+}
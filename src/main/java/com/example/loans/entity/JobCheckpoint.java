@@ -0,0 +1,57 @@
+package com.example.loans.entity;
+
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Progress of one partition of a batch job run. A partition covers the ids from rangeStart to rangeEnd,
+ * everything up to lastId is done.
+ */
+@Entity
+@Table(name = "JOB_CHECKPOINTS")
+@IdClass(JobCheckpoint.Key.class)
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class JobCheckpoint {
+
+    @Id
+    private String jobName;
+
+    @Id
+    private Integer partitionNo;
+
+    private LocalDate runDate;
+
+    private Long rangeStart;
+
+    private Long rangeEnd;
+
+    private Long lastId;
+
+    private Boolean completed;
+
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    @Getter
+    @Setter
+    public static class Key implements Serializable {
+
+        private String jobName;
+
+        private Integer partitionNo;
+    }
+}
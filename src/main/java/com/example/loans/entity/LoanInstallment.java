@@ -5,6 +5,8 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -16,7 +18,8 @@ import java.time.LocalDate;
 import java.util.Date;
 
 @Entity
-@Table(name = "LOAN_INSTALLMENTS")
+@Table(name = "LOAN_INSTALLMENTS",
+    indexes = @Index(name = "idx_loan_installments_loan_paid_due", columnList = "loan_id, is_paid, due_date"))
 @NoArgsConstructor
 @AllArgsConstructor
 @Getter
@@ -24,7 +27,8 @@ import java.util.Date;
 public class LoanInstallment {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loan_installments_seq")
+    @SequenceGenerator(name = "loan_installments_seq", sequenceName = "LOAN_INSTALLMENTS_SEQ", allocationSize = 50)
     private Long id;
 
     private Long loanId;
@@ -38,5 +42,8 @@ public class LoanInstallment {
     private LocalDate paymentDate;
 
     private Boolean isPaid;
-    
+
+    private Boolean isOverdue = Boolean.FALSE;
+
+    private BigDecimal lateFee = BigDecimal.ZERO;
 }
@@ -0,0 +1,45 @@
+package com.example.loans.entity;
+
+
+import com.example.loans.enums.OutboxEventType;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "OUTBOX_EVENTS")
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class OutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    private OutboxEventType eventType;
+
+    private Long loanId;
+
+    private Long customerId;
+
+    // the event as JSON
+    private String payload;
+
+    private LocalDateTime createdAt;
+
+    // position in the published stream, null until the relay publishes the event
+    private Long publishedPosition;
+}
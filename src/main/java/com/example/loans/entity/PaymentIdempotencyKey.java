@@ -0,0 +1,88 @@
+package com.example.loans.entity;
+
+import com.example.loans.enums.PaymentAllocation;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.domain.Persistable;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * A payment made with an Idempotency-Key header and its result, saved in the transaction of the payment.
+ * The key is assigned, so a new key is persisted with an INSERT instead of merged: a duplicate key fails on
+ * the primary key instead of updating the row of the first payment.
+ */
+@Entity
+@Table(name = "PAYMENT_IDEMPOTENCY_KEYS")
+@NoArgsConstructor
+@Getter
+@Setter
+public class PaymentIdempotencyKey implements Persistable<String> {
+
+    @Id
+    private String idempotencyKey;
+
+    private Long loanId;
+
+    private BigDecimal paymentAmount;
+
+    @Enumerated(EnumType.STRING)
+    private PaymentAllocation allocation;
+
+    // the result of the payment, all null if the loan had nothing to pay
+    private Integer numberOfInstallmentsPaid;
+
+    private BigDecimal totalAmountSpent;
+
+    private Boolean paidCompletely;
+
+    private BigDecimal rewardAmount;
+
+    private BigDecimal penaltyAmount;
+
+    private BigDecimal carriedForwardAmount;
+
+    private LocalDateTime createdAt;
+
+    // false once the row is loaded or inserted, only save() reads it
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean isNew = true;
+
+    public PaymentIdempotencyKey(String idempotencyKey, Long loanId, BigDecimal paymentAmount,
+                                 PaymentAllocation allocation, LocalDateTime createdAt) {
+        this.idempotencyKey = idempotencyKey;
+        this.loanId = loanId;
+        this.paymentAmount = paymentAmount;
+        this.allocation = allocation;
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public String getId() {
+        return idempotencyKey;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        isNew = false;
+    }
+}
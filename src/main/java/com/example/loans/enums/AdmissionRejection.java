@@ -0,0 +1,21 @@
+package com.example.loans.enums;
+
+public enum AdmissionRejection {
+    CONCURRENCY("concurrency"),
+    PRINCIPAL_RATE("principal_rate"),
+    CUSTOMER_RATE("customer_rate"),
+    LOAN_RATE("loan_rate");
+
+    private final String reason;
+
+    AdmissionRejection(final String reason) {
+        this.reason = reason;
+    }
+
+    /**
+     * @return the reason as it is tagged on the rejection counter
+     */
+    public String getReason() {
+        return reason;
+    }
+}
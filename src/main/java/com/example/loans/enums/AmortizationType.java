@@ -0,0 +1,18 @@
+package com.example.loans.enums;
+
+public enum AmortizationType {
+    /**
+     * Interest rate is charged once over the whole loan and the total is split into equal installments
+     */
+    FLAT,
+    /**
+     * Interest rate is a nominal annual rate, installments are equal and each one pays the interest
+     * of the remaining balance
+     */
+    ANNUITY,
+    /**
+     * Interest rate is a nominal annual rate, principal is paid in equal parts and interest is charged
+     * on the remaining balance, so installments get smaller over time
+     */
+    DECLINING_BALANCE
+}
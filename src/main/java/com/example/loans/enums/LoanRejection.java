@@ -0,0 +1,35 @@
+package com.example.loans.enums;
+
+import java.util.Arrays;
+
+public enum LoanRejection {
+    REQUEST_NULL("request_null", "Request object, amount and interest rate are required"),
+    CUSTOMER_NOT_FOUND("customer_not_found", "No proper customer found with the customerId"),
+    CREDIT_LIMIT("credit_limit", "Customer credit limit is not enough"),
+    INSTALLMENT_TYPE("installment_type", "InstallmentType can only be: "
+        + Arrays.stream(NumberOfInstallments.values()).map(NumberOfInstallments::getNumberOfInstallments).toList()),
+    INTEREST_RATE("interest_rate", "Interest rate should be between 0.1 and 0.5"),
+    AMOUNT("amount", "Amount should be more than 0 and at most 1000000000");
+
+    private final String reason;
+    private final String message;
+
+    LoanRejection(final String reason, final String message) {
+        this.reason = reason;
+        this.message = message;
+    }
+
+    /**
+     * @return the reason as it is tagged on the rejection counter
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * @return the message returned to the client, the same for every rejected request
+     */
+    public String getMessage() {
+        return message;
+    }
+}
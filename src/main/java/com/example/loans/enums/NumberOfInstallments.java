@@ -6,6 +6,15 @@ public enum NumberOfInstallments {
     TWELVE(12),
     TWENTY_FOUR(24);
 
+    // installment types indexed by their number of installments
+    private static final NumberOfInstallments[] BY_NUMBER_OF_INSTALLMENTS = new NumberOfInstallments[25];
+
+    static {
+        for (NumberOfInstallments n : values()) {
+            BY_NUMBER_OF_INSTALLMENTS[n.getNumberOfInstallments()] = n;
+        }
+    }
+
     private final Integer numOfInstallments;
 
     NumberOfInstallments(final int numOfInstallments) {
@@ -15,4 +24,17 @@ public enum NumberOfInstallments {
     public int getNumberOfInstallments() {
         return numOfInstallments;
     }
+
+    /**
+     * Find the installment type of the given number of installments
+     *
+     * @param numberOfInstallments the number of installments
+     * @return the installment type or null if the number of installments is not supported
+     */
+    public static NumberOfInstallments of(int numberOfInstallments) {
+        if (numberOfInstallments < 0 || numberOfInstallments >= BY_NUMBER_OF_INSTALLMENTS.length) {
+            return null;
+        }
+        return BY_NUMBER_OF_INSTALLMENTS[numberOfInstallments];
+    }
 }
@@ -0,0 +1,20 @@
+package com.example.loans.enums;
+
+public enum OutboxEventType {
+    /**
+     * A loan and its installments are created
+     */
+    LOAN_CREATED,
+    /**
+     * A payment paid one or more installments of a loan
+     */
+    INSTALLMENT_PAID,
+    /**
+     * A payment paid the last installment of a loan
+     */
+    LOAN_FULLY_PAID,
+    /**
+     * Credit limit of a customer is reserved by a loan or released by a payment
+     */
+    CREDIT_LIMIT_CHANGED
+}
@@ -0,0 +1,21 @@
+package com.example.loans.enums;
+
+public enum PaymentAllocation {
+    /**
+     * Whole installments due in the payable window are paid in due date order, as long as the payment
+     * covers them completely, the rest of the payment is not spent
+     */
+    INSTALLMENTS,
+    /**
+     * The payment is spread over the unpaid installments in due date order, the last one it reaches is
+     * paid partially and whatever is left after the payable window is carried forward to the later installments.
+     * Overdue installments cost their late fee on top of their amount
+     */
+    PARTIAL,
+    /**
+     * The loan is paid off if the payment covers all unpaid installments priced at the payment date:
+     * installments due later are discounted by the early payoff reward per day early and overdue ones cost
+     * the late fee per day late. A payment which does not cover the payoff amount is allocated as PARTIAL
+     */
+    PAYOFF
+}
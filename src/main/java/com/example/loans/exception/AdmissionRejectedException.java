@@ -0,0 +1,37 @@
+package com.example.loans.exception;
+
+import com.example.loans.enums.AdmissionRejection;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Thrown when a request is shed by the admission control. There is one instance per rejection without a stack
+ * trace, so shedding a request allocates nothing.
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    private static final Map<AdmissionRejection, AdmissionRejectedException> INSTANCES =
+        new EnumMap<>(AdmissionRejection.class);
+
+    static {
+        for (AdmissionRejection rejection : AdmissionRejection.values()) {
+            INSTANCES.put(rejection, new AdmissionRejectedException(rejection));
+        }
+    }
+
+    private final AdmissionRejection rejection;
+
+    private AdmissionRejectedException(AdmissionRejection rejection) {
+        super("Request rejected by admission control: " + rejection.getReason(), null, false, false);
+        this.rejection = rejection;
+    }
+
+    public static AdmissionRejectedException of(AdmissionRejection rejection) {
+        return INSTANCES.get(rejection);
+    }
+
+    public AdmissionRejection getRejection() {
+        return rejection;
+    }
+}
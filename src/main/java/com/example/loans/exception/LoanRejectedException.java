@@ -0,0 +1,36 @@
+package com.example.loans.exception;
+
+import com.example.loans.enums.LoanRejection;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Thrown when a loan request is rejected. There is one instance per rejection without a stack trace,
+ * so rejecting a request allocates nothing.
+ */
+public class LoanRejectedException extends RuntimeException {
+
+    private static final Map<LoanRejection, LoanRejectedException> INSTANCES = new EnumMap<>(LoanRejection.class);
+
+    static {
+        for (LoanRejection rejection : LoanRejection.values()) {
+            INSTANCES.put(rejection, new LoanRejectedException(rejection));
+        }
+    }
+
+    private final LoanRejection rejection;
+
+    private LoanRejectedException(LoanRejection rejection) {
+        super(rejection.getMessage(), null, false, false);
+        this.rejection = rejection;
+    }
+
+    public static LoanRejectedException of(LoanRejection rejection) {
+        return INSTANCES.get(rejection);
+    }
+
+    public LoanRejection getRejection() {
+        return rejection;
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.loans.outbox;
+
+import com.example.loans.entity.OutboxEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Writes the events to the application log, the default sink for local runs
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "loan.outbox.sink", havingValue = "logging", matchIfMissing = true)
+public class LoggingOutboxSink implements OutboxSink {
+
+    @Override
+    public void publish(List<OutboxEvent> events) {
+        for (OutboxEvent event : events) {
+            log.info("{} {} id={} loanId={} customerId={} {}", event.getPublishedPosition(), event.getEventType(),
+                event.getId(), event.getLoanId(), event.getCustomerId(), event.getPayload());
+        }
+    }
+}
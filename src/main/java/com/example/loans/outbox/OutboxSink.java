@@ -0,0 +1,22 @@
+package com.example.loans.outbox;
+
+import com.example.loans.entity.OutboxEvent;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destination of the events relayed from the outbox table. Delivery is at least once: a batch which fails,
+ * or whose transaction fails after it was published, is published again, so sinks must tolerate duplicates
+ * and can drop them by event id.
+ */
+public interface OutboxSink {
+
+    /**
+     * Publish the events in the given order
+     *
+     * @param events the events ordered by published position
+     * @throws IOException if the events could not be published, they stay in the outbox
+     */
+    void publish(List<OutboxEvent> events) throws IOException;
+}
@@ -0,0 +1,158 @@
+package com.example.loans.repository;
+
+import com.example.loans.entity.CustomerExposure;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Repository
+public interface CustomerExposureRepository extends JpaRepository<CustomerExposure, Long> {
+
+    String CUSTOMERID = "customerId";
+    String LOANCOUNT = "loanCount";
+    String AMOUNT = "amount";
+    String DUEDATE = "dueDate";
+    String CLOSEDLOANS = "closedLoans";
+    String OVERDUEAMOUNT = "overdueAmount";
+    String AFTERID = "afterId";
+    String UPTOID = "upToId";
+
+    String EXPOSURES = "customer_exposures";
+    String UNPAID_INSTALLMENTS_OF_CUSTOMER = " FROM loans l JOIN loan_installments li ON li.loan_id = l.id"
+        + " WHERE l.customer_id = customer_exposures.customer_id AND li.is_paid = FALSE";
+    String NEXT_DUE_DATE = "(SELECT MIN(li.due_date)" + UNPAID_INSTALLMENTS_OF_CUSTOMER + ")";
+    // partial payments are taken off the installments they were made for
+    String OVERDUE_AMOUNT = "(SELECT COALESCE(SUM(li.amount + li.late_fee - COALESCE(li.paid_amount, 0)), 0)"
+        + UNPAID_INSTALLMENTS_OF_CUSTOMER
+        + " AND li.is_overdue = TRUE)";
+
+    // also run as a JDBC batch by the bulk loan creation
+    String ADD_LOANS = "MERGE INTO customer_exposures ce"
+        + " USING (SELECT CAST(:" + CUSTOMERID + " AS BIGINT) AS customer_id) loan"
+        + " ON ce.customer_id = loan.customer_id"
+        + " WHEN MATCHED THEN UPDATE SET open_loan_count = ce.open_loan_count + :" + LOANCOUNT
+        + ", outstanding_amount = ce.outstanding_amount + :" + AMOUNT
+        + ", next_due_date = CASE WHEN ce.next_due_date IS NULL OR ce.next_due_date > CAST(:" + DUEDATE + " AS DATE)"
+        + " THEN CAST(:" + DUEDATE + " AS DATE) ELSE ce.next_due_date END"
+        + " WHEN NOT MATCHED THEN INSERT (customer_id, open_loan_count, outstanding_amount, next_due_date, overdue_amount)"
+        + " VALUES (loan.customer_id, :" + LOANCOUNT + ", CAST(:" + AMOUNT + " AS NUMERIC(38, 2))"
+        + ", CAST(:" + DUEDATE + " AS DATE), 0)";
+
+    /**
+     * Add new loans to the exposure of the customer, the exposure is created with the first loan
+     *
+     * @param customerId the customer id
+     * @param loanCount the number of new loans
+     * @param amount the total amount of the installments of the loans
+     * @param dueDate the earliest due date of the first installments
+     * @return 1
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_NATIVE_SPACES, value = EXPOSURES))
+    @Query(value = ADD_LOANS, nativeQuery = true)
+    int addLoans(
+        @Param(CUSTOMERID) long customerId,
+        @Param(LOANCOUNT) int loanCount,
+        @Param(AMOUNT) BigDecimal amount,
+        @Param(DUEDATE) LocalDate dueDate);
+
+    /**
+     * Take a payment off the exposure of the customer. The overdue amount is lowered by what the payment paid of
+     * overdue installments, the next due date is only worked out again from the unpaid installments of the customer
+     * when the payment settled an installment due on it.
+     *
+     * @param customerId the customer id
+     * @param amount the amount of the settled installments
+     * @param closedLoans 1 if the payment paid the loan completely, otherwise 0
+     * @param overdueAmount the part of the overdue amount the payment paid
+     * @param dueDate the earliest due date of the settled installments, null if none was settled
+     * @return 1 if the exposure is updated, 0 if the customer has no exposure
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_NATIVE_SPACES, value = EXPOSURES))
+    @Query(value = "UPDATE customer_exposures"
+        + " SET outstanding_amount = outstanding_amount - :" + AMOUNT
+        + ", open_loan_count = open_loan_count - :" + CLOSEDLOANS
+        + ", next_due_date = CASE WHEN next_due_date = CAST(:" + DUEDATE + " AS DATE)"
+        + " THEN " + NEXT_DUE_DATE + " ELSE next_due_date END"
+        + ", overdue_amount = GREATEST(overdue_amount - :" + OVERDUEAMOUNT + ", 0)"
+        + " WHERE customer_id = :" + CUSTOMERID,
+        nativeQuery = true
+    )
+    int applyPayment(
+        @Param(CUSTOMERID) long customerId,
+        @Param(AMOUNT) BigDecimal amount,
+        @Param(CLOSEDLOANS) int closedLoans,
+        @Param(OVERDUEAMOUNT) BigDecimal overdueAmount,
+        @Param(DUEDATE) LocalDate dueDate);
+
+    /**
+     * Work out the overdue amount again for the customers of the loans in the id range
+     *
+     * @param afterId loans with a greater id are included
+     * @param upToId loans up to this id are included
+     * @return the number of updated exposures
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_NATIVE_SPACES, value = EXPOSURES))
+    @Query(value = "UPDATE customer_exposures"
+        + " SET overdue_amount = " + OVERDUE_AMOUNT
+        + " WHERE customer_id IN (SELECT l.customer_id FROM loans l"
+        + " WHERE l.id > :" + AFTERID + " AND l.id <= :" + UPTOID + ")",
+        nativeQuery = true
+    )
+    int refreshOverdueAmounts(
+        @Param(AFTERID) long afterId,
+        @Param(UPTOID) long upToId);
+
+    /**
+     * Delete the exposures of the customers in the id range before they are rebuilt
+     *
+     * @param afterId customers with a greater id are included
+     * @param upToId customers up to this id are included
+     * @return the number of deleted exposures
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_NATIVE_SPACES, value = EXPOSURES))
+    @Query(value = "DELETE FROM customer_exposures"
+        + " WHERE customer_id > :" + AFTERID + " AND customer_id <= :" + UPTOID,
+        nativeQuery = true
+    )
+    int deleteExposures(
+        @Param(AFTERID) long afterId,
+        @Param(UPTOID) long upToId);
+
+    /**
+     * Rebuild the exposures of the customers in the id range from their loans and installments
+     *
+     * @param afterId customers with a greater id are included
+     * @param upToId customers up to this id are included
+     * @return the number of rebuilt exposures
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_NATIVE_SPACES, value = EXPOSURES))
+    @Query(value = "INSERT INTO customer_exposures"
+        + " (customer_id, open_loan_count, outstanding_amount, next_due_date, overdue_amount)"
+        + " SELECT l.customer_id"
+        + ", COUNT(DISTINCT CASE WHEN l.is_paid = FALSE THEN l.id END)"
+        + ", COALESCE(SUM(CASE WHEN li.is_paid = FALSE THEN li.amount END), 0)"
+        + ", MIN(CASE WHEN li.is_paid = FALSE THEN li.due_date END)"
+        + ", COALESCE(SUM(CASE WHEN li.is_paid = FALSE AND li.is_overdue = TRUE"
+        + " THEN li.amount + li.late_fee - COALESCE(li.paid_amount, 0) END), 0)"
+        + " FROM loans l JOIN loan_installments li ON li.loan_id = l.id"
+        + " WHERE l.customer_id > :" + AFTERID + " AND l.customer_id <= :" + UPTOID
+        + " GROUP BY l.customer_id",
+        nativeQuery = true
+    )
+    int insertExposures(
+        @Param(AFTERID) long afterId,
+        @Param(UPTOID) long upToId);
+}
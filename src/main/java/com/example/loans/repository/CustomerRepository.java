@@ -2,8 +2,52 @@ package com.example.loans.repository;
 
 import com.example.loans.entity.Customer;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+
 @Repository
 public interface CustomerRepository extends JpaRepository<Customer, Long> {
+
+    String CUSTOMERID = "customerId";
+    String AMOUNT = "amount";
+
+    /**
+     * Reserve credit limit of the customer in a single conditional update
+     *
+     * @param customerId the customer id
+     * @param amount the amount to reserve
+     * @return 1 if the limit is reserved, 0 if the customer does not exist or its credit limit is not enough
+     */
+    @Modifying
+    @Query("UPDATE Customer c"
+        + " SET c.creditLimit = c.creditLimit - :" + AMOUNT
+        + ", c.usedCreditLimit = COALESCE(c.usedCreditLimit, 0) + :" + AMOUNT
+        + " WHERE c.id = :" + CUSTOMERID
+        + " AND c.creditLimit >= :" + AMOUNT
+    )
+    int reserveCreditLimit(
+        @Param(CUSTOMERID) long customerId,
+        @Param(AMOUNT) BigDecimal amount);
+
+    /**
+     * Give back credit limit to the customer in a single update
+     *
+     * @param customerId the customer id
+     * @param amount the amount to give back
+     * @return 1 if the limit is released, 0 if the customer does not exist
+     */
+    @Modifying
+    @Query("UPDATE Customer c"
+        + " SET c.creditLimit = c.creditLimit + :" + AMOUNT
+        + ", c.usedCreditLimit = CASE WHEN COALESCE(c.usedCreditLimit, 0) > :" + AMOUNT
+        + " THEN c.usedCreditLimit - :" + AMOUNT + " ELSE 0 END"
+        + " WHERE c.id = :" + CUSTOMERID
+    )
+    int releaseCreditLimit(
+        @Param(CUSTOMERID) long customerId,
+        @Param(AMOUNT) BigDecimal amount);
 }
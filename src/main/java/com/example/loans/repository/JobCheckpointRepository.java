@@ -0,0 +1,42 @@
+package com.example.loans.repository;
+
+import com.example.loans.entity.JobCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface JobCheckpointRepository extends JpaRepository<JobCheckpoint, JobCheckpoint.Key> {
+
+    String JOBNAME = "jobName";
+
+    /**
+     * Find the checkpoints of the last run of a job
+     *
+     * @param jobName the job name
+     * @return the checkpoints ordered by partition
+     */
+    @Query("FROM JobCheckpoint jc"
+        + " WHERE jc.jobName = :" + JOBNAME
+        + " ORDER BY jc.partitionNo"
+    )
+    List<JobCheckpoint> findCheckpointsByJobName(
+        @Param(JOBNAME) String jobName);
+
+    /**
+     * Delete the checkpoints of a job before a new run is planned
+     *
+     * @param jobName the job name
+     * @return the number of deleted checkpoints
+     */
+    @Modifying
+    @Query("DELETE FROM JobCheckpoint jc"
+        + " WHERE jc.jobName = :" + JOBNAME
+    )
+    int deleteCheckpointsByJobName(
+        @Param(JOBNAME) String jobName);
+}
@@ -1,17 +1,27 @@
 package com.example.loans.repository;
 
+import com.example.loans.dto.LoanInstallmentDTO;
 import com.example.loans.entity.LoanInstallment;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface LoanInstallmentRepository extends JpaRepository<LoanInstallment, Long> {
 
     String LOANID = "loanId";
+    String AFTERID = "afterId";
+    String SELECT_INSTALLMENT_DTO = "SELECT new com.example.loans.dto.LoanInstallmentDTO(li.id, li.loanId, li.amount,"
+        + " li.paidAmount, li.dueDate, li.paymentDate, li.isPaid, li.isOverdue, li.lateFee)";
 
     /**
      * Find loan installments by loan id
@@ -39,4 +49,60 @@ public interface LoanInstallmentRepository extends JpaRepository<LoanInstallment
     )
     List<LoanInstallment> findInstallmentsByLoanId(
         @Param(LOANID) long loanId);
+
+    /**
+     * Find loan installments by loan id as DTOs
+     *
+     * @param loanId the loan id
+     * @return the list of loan installments created for the given loan
+     */
+    @Query(SELECT_INSTALLMENT_DTO + " FROM LoanInstallment li"
+        + " WHERE li.loanId = :" + LOANID
+        + " ORDER BY li.dueDate"
+    )
+    List<LoanInstallmentDTO> findInstallmentDTOsByLoanId(
+        @Param(LOANID) long loanId);
+
+    /**
+     * Find a page of loan installments by loan id, keyset paginated by installment id. Installments of
+     * a loan are created in due date order, so id order is due date order.
+     *
+     * @param loanId the loan id
+     * @param afterId only installments with a greater id are returned
+     * @param limit the page size
+     * @return the page of loan installments ordered by id
+     */
+    @Query(SELECT_INSTALLMENT_DTO + " FROM LoanInstallment li"
+        + " WHERE li.loanId = :" + LOANID
+        + " AND li.id > :" + AFTERID
+        + " ORDER BY li.id"
+    )
+    List<LoanInstallmentDTO> findInstallmentsByLoanIdAfter(
+        @Param(LOANID) long loanId,
+        @Param(AFTERID) long afterId,
+        Limit limit);
+
+    /**
+     * Stream loan installments by loan id, the stream must be consumed and closed inside a transaction
+     *
+     * @param loanId the loan id
+     * @return the loan installments ordered by id
+     */
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(SELECT_INSTALLMENT_DTO + " FROM LoanInstallment li"
+        + " WHERE li.loanId = :" + LOANID
+        + " ORDER BY li.id"
+    )
+    Stream<LoanInstallmentDTO> streamInstallmentsByLoanId(
+        @Param(LOANID) long loanId);
+
+    /**
+     * Sum the amounts of all unpaid installments, which is the value still outstanding over all loans
+     *
+     * @return the outstanding amount, 0 if there is no unpaid installment
+     */
+    @Query("SELECT COALESCE(SUM(li.amount), 0) FROM LoanInstallment li"
+        + " WHERE li.isPaid <> true"
+    )
+    BigDecimal sumUnpaidAmount();
 }
@@ -1,17 +1,29 @@
 package com.example.loans.repository;
 
+import com.example.loans.dto.LoanDTO;
 import com.example.loans.entity.Loan;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface LoanRepository extends JpaRepository<Loan, Long> {
 
     String CUSTOMERID = "customerId";
+    String LOANID = "loanId";
+    String AFTERID = "afterId";
+    String SELECT_LOAN_DTO = "SELECT new com.example.loans.dto.LoanDTO(loan.id, loan.customerId, loan.loanAmount,"
+        + " loan.numberOfInstallment, loan.createDate, loan.isPaid)";
 
     /**
      * Find loans by customer id
@@ -24,4 +36,73 @@ public interface LoanRepository extends JpaRepository<Loan, Long> {
     )
     List<Loan> findLoansByCustomerId(
         @Param(CUSTOMERID) long customerId);
+
+    /**
+     * Find loans by customer id as DTOs
+     *
+     * @param customerId the customer id
+     * @return the list of loans created by the given customer
+     */
+    @Query(SELECT_LOAN_DTO + " FROM Loan loan"
+        + " WHERE loan.customerId = :" + CUSTOMERID
+    )
+    List<LoanDTO> findLoanDTOsByCustomerId(
+        @Param(CUSTOMERID) long customerId);
+
+    /**
+     * Find a page of loans by customer id, keyset paginated by loan id
+     *
+     * @param customerId the customer id
+     * @param afterId only loans with a greater id are returned
+     * @param limit the page size
+     * @return the page of loans ordered by id
+     */
+    @Query(SELECT_LOAN_DTO + " FROM Loan loan"
+        + " WHERE loan.customerId = :" + CUSTOMERID
+        + " AND loan.id > :" + AFTERID
+        + " ORDER BY loan.id"
+    )
+    List<LoanDTO> findLoansByCustomerIdAfter(
+        @Param(CUSTOMERID) long customerId,
+        @Param(AFTERID) long afterId,
+        Limit limit);
+
+    /**
+     * Stream loans by customer id, the stream must be consumed and closed inside a transaction
+     *
+     * @param customerId the customer id
+     * @return the loans ordered by id
+     */
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(SELECT_LOAN_DTO + " FROM Loan loan"
+        + " WHERE loan.customerId = :" + CUSTOMERID
+        + " ORDER BY loan.id"
+    )
+    Stream<LoanDTO> streamLoansByCustomerId(
+        @Param(CUSTOMERID) long customerId);
+
+    /**
+     * Find the customer id of the loan without loading the loan
+     *
+     * @param loanId the loan id
+     * @return the customer id of the loan
+     */
+    @Query("SELECT loan.customerId FROM Loan loan"
+        + " WHERE loan.id = :" + LOANID
+    )
+    Optional<Long> findCustomerIdByLoanId(
+        @Param(LOANID) long loanId);
+
+    /**
+     * Mark the loan as paid
+     *
+     * @param loanId the loan id
+     * @return the number of updated loans
+     */
+    @Modifying
+    @Query("UPDATE Loan loan SET loan.isPaid = true"
+        + " WHERE loan.id = :" + LOANID
+    )
+    int markLoanPaid(
+        @Param(LOANID) long loanId);
 }
@@ -0,0 +1,70 @@
+package com.example.loans.repository;
+
+import com.example.loans.entity.OutboxEvent;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    String POSITION = "position";
+    String CREATEDBEFORE = "createdBefore";
+
+    /**
+     * Find the events which are not published yet
+     *
+     * @param limit the batch size
+     * @return the events ordered by id
+     */
+    @Query("FROM OutboxEvent oe"
+        + " WHERE oe.publishedPosition IS NULL"
+        + " ORDER BY oe.id"
+    )
+    List<OutboxEvent> findUnpublishedEvents(
+        Limit limit);
+
+    /**
+     * Find a page of published events, keyset paginated by published position
+     *
+     * @param position only events with a greater position are returned
+     * @param limit the page size
+     * @return the events ordered by published position
+     */
+    @Query("FROM OutboxEvent oe"
+        + " WHERE oe.publishedPosition > :" + POSITION
+        + " ORDER BY oe.publishedPosition"
+    )
+    List<OutboxEvent> findPublishedEventsAfter(
+        @Param(POSITION) long position,
+        Limit limit);
+
+    /**
+     * Find the position of the last published event
+     *
+     * @return the last published position, 0 if no event is published
+     */
+    @Query("SELECT COALESCE(MAX(oe.publishedPosition), 0) FROM OutboxEvent oe")
+    long findLastPublishedPosition();
+
+    /**
+     * Delete the published events created before the given time, except the last published one
+     * which keeps the position of the stream
+     *
+     * @param createdBefore published events created before this time are deleted
+     * @return the number of deleted events
+     */
+    @Modifying
+    @Query("DELETE FROM OutboxEvent oe"
+        + " WHERE oe.publishedPosition < (SELECT MAX(last.publishedPosition) FROM OutboxEvent last)"
+        + " AND oe.createdAt < :" + CREATEDBEFORE
+    )
+    int deletePublishedEvents(
+        @Param(CREATEDBEFORE) LocalDateTime createdBefore);
+}
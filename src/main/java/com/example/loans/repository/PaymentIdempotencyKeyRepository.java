@@ -0,0 +1,40 @@
+package com.example.loans.repository;
+
+import com.example.loans.entity.PaymentIdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface PaymentIdempotencyKeyRepository extends JpaRepository<PaymentIdempotencyKey, String> {
+
+    String CREATEDBEFORE = "createdBefore";
+    String IDEMPOTENCYKEY = "idempotencyKey";
+
+    /**
+     * Delete the keys saved before the given time
+     *
+     * @param createdBefore keys saved before this time are deleted
+     * @return the number of deleted keys
+     */
+    @Modifying
+    @Query("DELETE FROM PaymentIdempotencyKey pik WHERE pik.createdAt < :" + CREATEDBEFORE)
+    int deleteExpiredKeys(@Param(CREATEDBEFORE) LocalDateTime createdBefore);
+
+    /**
+     * Delete the key if it was saved before the given time, so it can be used again
+     *
+     * @param idempotencyKey the key
+     * @param createdBefore the key is deleted if it was saved before this time
+     * @return the number of deleted keys
+     */
+    @Modifying
+    @Query("DELETE FROM PaymentIdempotencyKey pik WHERE pik.idempotencyKey = :" + IDEMPOTENCYKEY
+        + " AND pik.createdAt < :" + CREATEDBEFORE)
+    int deleteExpiredKey(@Param(IDEMPOTENCYKEY) String idempotencyKey,
+                         @Param(CREATEDBEFORE) LocalDateTime createdBefore);
+}
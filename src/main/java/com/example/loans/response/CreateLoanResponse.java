@@ -1,12 +1,28 @@
 package com.example.loans.response;
 
-import com.example.loans.entity.Loan;
+import com.example.loans.dto.LoanDTO;
+import com.example.loans.enums.LoanRejection;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
-import lombok.Setter;
 
+/**
+ * Response of createLoan, immutable so the responses of the rejections can be built once and shared
+ */
 @Getter
-@Setter
+@AllArgsConstructor
 public class CreateLoanResponse {
-    private Loan loan;
-    private String message;
+
+    public static final String CREATED = "Loan created successfully";
+
+    private final LoanDTO loan;
+    private final String rejection;
+    private final String message;
+
+    public static CreateLoanResponse created(LoanDTO loan) {
+        return new CreateLoanResponse(loan, null, CREATED);
+    }
+
+    public static CreateLoanResponse rejected(LoanRejection rejection) {
+        return new CreateLoanResponse(null, rejection.getReason(), rejection.getMessage());
+    }
 }
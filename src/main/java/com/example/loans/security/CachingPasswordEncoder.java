@@ -0,0 +1,86 @@
+package com.example.loans.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+
+/**
+ * Remembers the credentials the delegate verified for a short time, so repeated HTTP Basic requests with the same
+ * credentials cost one HMAC instead of a bcrypt verification. Only a digest of the raw and the encoded password
+ * is kept, keyed with a random key of this instance. A password change changes the encoded password, so the
+ * cached digests of the old one are never matched again.
+ */
+public class CachingPasswordEncoder implements PasswordEncoder {
+
+    private static final String HMAC = "HmacSHA256";
+
+    private final PasswordEncoder delegate;
+    private final Cache<ByteBuffer, Boolean> verified;
+    private final SecretKeySpec key;
+
+    public CachingPasswordEncoder(PasswordEncoder delegate, long maximumSize, Duration expireAfterWrite) {
+        this.delegate = delegate;
+        this.verified = Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(expireAfterWrite)
+            .build();
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, HMAC);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if (rawPassword == null || encodedPassword == null) {
+            return delegate.matches(rawPassword, encodedPassword);
+        }
+        ByteBuffer digest = digest(rawPassword, encodedPassword);
+        if (verified.getIfPresent(digest) != null) {
+            return true;
+        }
+        // failed verifications are not cached, they always pay the full cost
+        boolean matches = delegate.matches(rawPassword, encodedPassword);
+        if (matches) {
+            verified.put(digest, Boolean.TRUE);
+        }
+        return matches;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * Forget every verified credential
+     */
+    public void invalidateAll() {
+        verified.invalidateAll();
+    }
+
+    private ByteBuffer digest(CharSequence rawPassword, String encodedPassword) {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(key);
+            mac.update(encodedPassword.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            mac.update(rawPassword.toString().getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(mac.doFinal());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC is not available", e);
+        }
+    }
+}
@@ -1,18 +1,38 @@
 package com.example.loans.security;
 
+import com.example.loans.controller.AdmissionControlEndpoint;
+import com.example.loans.controller.CustomerExposureEndpoint;
+import com.example.loans.controller.PortfolioEndpoint;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityCustomizer;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
 import org.springframework.security.web.csrf.CsrfTokenRequestAttributeHandler;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
 @Configuration
 public class SecurityConfig {
 
+    // passwords with an {id} prefix are encoded already
+    private static final Pattern ENCODED_PASSWORD = Pattern.compile("^\\{.+}.*$");
+    public static final String ADMIN = "ADMIN";
+
     @Bean
     public WebSecurityCustomizer webSecurityCustomizer() {
         return (web) -> web.ignoring().requestMatchers(new AntPathRequestMatcher("/h2-console/**"));
@@ -22,13 +42,58 @@ public class SecurityConfig {
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         http
             .csrf(csrf -> csrf
-                .ignoringRequestMatchers( "/loanApplication/**")
+                .ignoringRequestMatchers( "/loanApplication/**", "/actuator/admission/**", "/actuator/exposure",
+                    "/actuator/portfolio")
                 .csrfTokenRepository(CookieCsrfTokenRepository.withHttpOnlyFalse())
                 .csrfTokenRequestHandler(new CsrfTokenRequestAttributeHandler()))
             .authorizeHttpRequests(auth -> {
+                // the limits of the API principals must not be changed by those principals, repair jobs and full
+                // portfolio scans are not started by them, and they do not see the risk of the whole portfolio
+                auth.requestMatchers(EndpointRequest.to(AdmissionControlEndpoint.class, CustomerExposureEndpoint.class,
+                        PortfolioEndpoint.class))
+                    .hasRole(ADMIN);
                 auth.anyRequest().authenticated();
             })
             .httpBasic(Customizer.withDefaults());
         return http.build();
     }
+
+    /**
+     * Bcrypt by default, with the credentials verified in the last expire-after-write cached in front of it
+     */
+    @Bean
+    public PasswordEncoder passwordEncoder(
+        @Value("${loan.security.credential-cache.maximum-size:1000}") long maximumSize,
+        @Value("${loan.security.credential-cache.expire-after-write:5m}") Duration expireAfterWrite) {
+        return new CachingPasswordEncoder(PasswordEncoderFactories.createDelegatingPasswordEncoder(), maximumSize,
+            expireAfterWrite);
+    }
+
+    /**
+     * The spring.security.user and the admin user, with their passwords encoded by the password encoder unless
+     * they are encoded already. The admin user is only created when loan.security.admin.password is set.
+     */
+    @Bean
+    public InMemoryUserDetailsManager userDetailsService(SecurityProperties securityProperties,
+                                                         PasswordEncoder passwordEncoder,
+                                                         @Value("${loan.security.admin.name:admin}") String adminName,
+                                                         @Value("${loan.security.admin.password:}") String adminPassword) {
+        SecurityProperties.User user = securityProperties.getUser();
+        List<UserDetails> users = new ArrayList<>(2);
+        users.add(User.withUsername(user.getName())
+            .password(encode(passwordEncoder, user.getPassword()))
+            .roles(user.getRoles().toArray(String[]::new))
+            .build());
+        if (!adminPassword.isBlank()) {
+            users.add(User.withUsername(adminName)
+                .password(encode(passwordEncoder, adminPassword))
+                .roles(ADMIN)
+                .build());
+        }
+        return new InMemoryUserDetailsManager(users);
+    }
+
+    private static String encode(PasswordEncoder passwordEncoder, String password) {
+        return ENCODED_PASSWORD.matcher(password).matches() ? password : passwordEncoder.encode(password);
+    }
 }
@@ -0,0 +1,151 @@
+package com.example.loans.service;
+
+import com.example.loans.enums.AmortizationType;
+import com.example.loans.enums.NumberOfInstallments;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Calculates installment schedules in cents. Amounts are kept as long minor units while the
+ * schedule is built, so a schedule costs one array instead of a BigDecimal per arithmetic step,
+ * and rounding differences are carried to the later installments so that no cent is lost.
+ */
+@Service
+public class AmortizationEngine {
+
+    private static final long RATE_SCALE = 1_000_000L;
+    private static final long MONTHS_PER_YEAR = 12L;
+    private static final long MONTHLY_RATE_SCALE = RATE_SCALE * MONTHS_PER_YEAR;
+    private static final int MAX_ANNUITY_FACTORS = 4096;
+
+    private final AmortizationType type;
+
+    // annuity payment factors keyed by rate and installment type, they only depend on those two
+    private final Map<Long, Double> annuityFactors = new ConcurrentHashMap<>();
+
+    @Autowired
+    public AmortizationEngine(@Value("${loan.amortization.type:FLAT}") AmortizationType type) {
+        this.type = type;
+    }
+
+    public AmortizationType getType() {
+        return type;
+    }
+
+    /**
+     * Calculate the installment amounts with the configured amortization type
+     *
+     * @param principalCents the loan principal in cents
+     * @param ratePpm the interest rate in parts per million
+     * @param numberOfInstallments the installment type
+     * @return the installment amounts in cents, ordered by due date
+     */
+    public long[] schedule(long principalCents, long ratePpm, NumberOfInstallments numberOfInstallments) {
+        return schedule(type, principalCents, ratePpm, numberOfInstallments);
+    }
+
+    /**
+     * Calculate the installment amounts
+     *
+     * @param type the amortization type
+     * @param principalCents the loan principal in cents
+     * @param ratePpm the interest rate in parts per million
+     * @param numberOfInstallments the installment type
+     * @return the installment amounts in cents, ordered by due date
+     */
+    public long[] schedule(AmortizationType type, long principalCents, long ratePpm,
+                           NumberOfInstallments numberOfInstallments) {
+        long[] amounts = new long[numberOfInstallments.getNumberOfInstallments()];
+        switch (type) {
+            case FLAT -> flat(principalCents, ratePpm, amounts);
+            case ANNUITY -> annuity(principalCents, ratePpm, numberOfInstallments, amounts);
+            case DECLINING_BALANCE -> decliningBalance(principalCents, ratePpm, amounts);
+        }
+        return amounts;
+    }
+
+    public static long toCents(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static long toRatePpm(BigDecimal interestRate) {
+        return interestRate.setScale(6, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal fromCents(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    private static void flat(long principalCents, long ratePpm, long[] amounts) {
+        long total = divideHalfUp(Math.multiplyExact(principalCents, RATE_SCALE + ratePpm), RATE_SCALE);
+        split(total, amounts);
+    }
+
+    private void annuity(long principalCents, long ratePpm, NumberOfInstallments numberOfInstallments,
+                         long[] amounts) {
+        if (ratePpm == 0) {
+            split(principalCents, amounts);
+            return;
+        }
+        long payment = Math.round(principalCents * annuityFactor(ratePpm, numberOfInstallments));
+        long balance = principalCents;
+        int last = amounts.length - 1;
+        for (int i = 0; i < last; i++) {
+            amounts[i] = payment;
+            balance -= payment - monthlyInterest(balance, ratePpm);
+        }
+        // the last installment settles whatever the rounded payments left over
+        amounts[last] = balance + monthlyInterest(balance, ratePpm);
+    }
+
+    private static void decliningBalance(long principalCents, long ratePpm, long[] amounts) {
+        split(principalCents, amounts);
+        long balance = principalCents;
+        for (int i = 0; i < amounts.length; i++) {
+            long principalPart = amounts[i];
+            amounts[i] = principalPart + monthlyInterest(balance, ratePpm);
+            balance -= principalPart;
+        }
+    }
+
+    /**
+     * Split the total into equal parts, every part is the difference of two cumulative shares so
+     * the remainder is carried forward instead of being dropped.
+     */
+    private static void split(long total, long[] amounts) {
+        int n = amounts.length;
+        long allocated = 0;
+        for (int i = 0; i < n; i++) {
+            long cumulative = Math.multiplyExact(total, (long) i + 1) / n;
+            amounts[i] = cumulative - allocated;
+            allocated = cumulative;
+        }
+    }
+
+    private double annuityFactor(long ratePpm, NumberOfInstallments numberOfInstallments) {
+        long key = ratePpm * NumberOfInstallments.values().length + numberOfInstallments.ordinal();
+        Double factor = annuityFactors.get(key);
+        if (factor == null) {
+            double monthlyRate = (double) ratePpm / MONTHLY_RATE_SCALE;
+            factor = monthlyRate / (1 - Math.pow(1 + monthlyRate, -numberOfInstallments.getNumberOfInstallments()));
+            if (annuityFactors.size() < MAX_ANNUITY_FACTORS) {
+                annuityFactors.put(key, factor);
+            }
+        }
+        return factor;
+    }
+
+    private static long monthlyInterest(long balance, long ratePpm) {
+        return divideHalfUp(Math.multiplyExact(balance, ratePpm), MONTHLY_RATE_SCALE);
+    }
+
+    private static long divideHalfUp(long dividend, long divisor) {
+        return (dividend + divisor / 2) / divisor;
+    }
+}
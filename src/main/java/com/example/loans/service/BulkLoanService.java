@@ -0,0 +1,460 @@
+package com.example.loans.service;
+
+import com.example.loans.dto.LoanCreationDTO;
+import com.example.loans.dto.LoanCreationResultDTO;
+import com.example.loans.entity.Customer;
+import com.example.loans.enums.LoanRejection;
+import com.example.loans.enums.NumberOfInstallments;
+import com.example.loans.enums.OutboxEventType;
+import com.example.loans.repository.CustomerExposureRepository;
+import com.example.loans.repository.CustomerRepository;
+import com.example.loans.response.CreateLoanResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.FlushModeType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Creates a stream of loans, either newline delimited or as a JSON array, with the checks of a single loan
+ * creation. Loans are parsed one by one and created in chunks:
+ * <ul>
+ *     <li>up to parallelism chunks are prepared at a time, the customers of a chunk are read with one query,
+ *     the requests are checked and their schedules are computed</li>
+ *     <li>prepared chunks are written in order, the credit limit of each customer is reserved once for all of its
+ *     loans in the chunk, or loan by loan if the limit changed since the chunk read it, and loans and installments
+ *     are inserted with JDBC batches, with ids allocated in blocks of the sequences</li>
+ * </ul>
+ * Each chunk is one transaction with its exposure updates and outbox events, and one result per loan is
+ * written in the order the loans were read.
+ */
+@Service
+public class BulkLoanService {
+
+    // the conditional update of CustomerRepository.reserveCreditLimit, run as one JDBC batch per chunk
+    private static final String RESERVE_CREDIT_LIMIT = "UPDATE customers"
+        + " SET credit_limit = credit_limit - ?, used_credit_limit = COALESCE(used_credit_limit, 0) + ?"
+        + " WHERE id = ? AND credit_limit >= ?";
+    // the credit limit of a customer whose batched reservation failed, locked until the chunk commits
+    private static final String SELECT_CREDIT_LIMIT_FOR_UPDATE = "SELECT credit_limit FROM customers"
+        + " WHERE id = ? FOR UPDATE";
+    private static final String INSERT_LOAN = "INSERT INTO loans"
+        + " (id, customer_id, loan_amount, number_of_installment, create_date, is_paid)"
+        + " VALUES (?, ?, ?, ?, ?, FALSE)";
+    private static final String INSERT_INSTALLMENT = "INSERT INTO loan_installments"
+        + " (id, loan_id, amount, paid_amount, due_date, payment_date, is_paid, is_overdue, late_fee)"
+        + " VALUES (?, ?, ?, 0, ?, NULL, FALSE, FALSE, 0)";
+    // increment of the sequences and allocation size of the entities
+    private static final int ID_BLOCK_SIZE = 50;
+
+    private final CustomerRepository customerRepository;
+    private final CustomerCache customerCache;
+    private final OutboxService outboxService;
+    private final AmortizationEngine amortizationEngine;
+    private final LoanMetrics loanMetrics;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final SequenceIdAllocator loanIds;
+    private final SequenceIdAllocator installmentIds;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter resultWriter;
+    private final int chunkSize;
+    private final int parallelism;
+
+    @Autowired
+    public BulkLoanService(CustomerRepository customerRepository, CustomerCache customerCache,
+                           OutboxService outboxService, AmortizationEngine amortizationEngine, LoanMetrics loanMetrics,
+                           JdbcTemplate jdbcTemplate, EntityManager entityManager,
+                           PlatformTransactionManager transactionManager, ObjectMapper objectMapper,
+                           @Value("${loan.bulk-origination.chunk-size:1000}") int chunkSize,
+                           @Value("${loan.bulk-origination.parallelism:4}") int parallelism) {
+        this.customerRepository = customerRepository;
+        this.customerCache = customerCache;
+        this.outboxService = outboxService;
+        this.amortizationEngine = amortizationEngine;
+        this.loanMetrics = loanMetrics;
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.loanIds = new SequenceIdAllocator(jdbcTemplate, entityManager.getEntityManagerFactory(), "loans_seq",
+            ID_BLOCK_SIZE);
+        this.installmentIds = new SequenceIdAllocator(jdbcTemplate, entityManager.getEntityManagerFactory(),
+            "loan_installments_seq", ID_BLOCK_SIZE);
+        this.objectMapper = objectMapper;
+        this.resultWriter = objectMapper.writer()
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+            .withRootValueSeparator("");
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Read loan requests from the input and write one result per line to the output,
+     * in the order the requests were read. A chunk that fails ends the output, the chunks before it stay created.
+     *
+     * @param input the loan requests
+     * @param output the created loan ids or the rejection reasons
+     */
+    public void createLoans(InputStream input, OutputStream output) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(input);
+             JsonGenerator generator = resultWriter.createGenerator(output);
+             ExecutorService executor = Executors.newFixedThreadPool(parallelism)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
+            }
+
+            Queue<Future<PreparedChunk>> chunks = new ArrayDeque<>();
+            List<LoanCreationDTO> chunk = new ArrayList<>(chunkSize);
+            while (token != null && token != JsonToken.END_ARRAY) {
+                chunk.add(objectMapper.readValue(parser, LoanCreationDTO.class));
+                if (chunk.size() == chunkSize) {
+                    // the next chunks are prepared while this one is written, at most parallelism chunks are pending
+                    if (chunks.size() == parallelism) {
+                        writeResults(createChunk(chunks.poll()), generator);
+                    }
+                    List<LoanCreationDTO> fullChunk = chunk;
+                    chunks.add(executor.submit(() -> prepareChunk(fullChunk)));
+                    chunk = new ArrayList<>(chunkSize);
+                }
+                token = parser.nextToken();
+            }
+            if (!chunk.isEmpty()) {
+                List<LoanCreationDTO> lastChunk = chunk;
+                chunks.add(executor.submit(() -> prepareChunk(lastChunk)));
+            }
+            while (!chunks.isEmpty()) {
+                writeResults(createChunk(chunks.poll()), generator);
+            }
+        }
+    }
+
+    /**
+     * Check the loans of the chunk and compute their schedules, without writing to the database
+     */
+    private PreparedChunk prepareChunk(List<LoanCreationDTO> chunk) {
+        Map<Long, Customer> customers = findCustomers(chunk);
+        LoanRejection[] rejections = new LoanRejection[chunk.size()];
+        long[][] schedules = new long[chunk.size()][];
+        BigDecimal[] loanAmounts = new BigDecimal[chunk.size()];
+        for (int index = 0; index < chunk.size(); index++) {
+            LoanCreationDTO loanCreationDTO = chunk.get(index);
+            Customer customer = loanCreationDTO == null ? null : customers.get(loanCreationDTO.getCustomerId());
+            rejections[index] = LoanApplicationService.validate(loanCreationDTO, customer);
+            if (rejections[index] == null) {
+                schedules[index] = amortizationEngine.schedule(
+                    AmortizationEngine.toCents(loanCreationDTO.getAmount()),
+                    AmortizationEngine.toRatePpm(loanCreationDTO.getInterestRate()),
+                    NumberOfInstallments.of(loanCreationDTO.getNumberOfInstallments()));
+                loanAmounts[index] = LoanApplicationService.calculateLoanAmount(amortizationEngine.getType(),
+                    loanCreationDTO.getAmount(), loanCreationDTO.getInterestRate(), schedules[index]);
+            }
+        }
+        return new PreparedChunk(chunk, rejections, schedules, loanAmounts,
+            checkCreditLimits(chunk, customers, rejections));
+    }
+
+    /**
+     * Write the loans of a prepared chunk in one transaction. Chunks are written one at a time, so the chunks of
+     * a request never wait for each other's customer row locks.
+     */
+    private LoanCreationResultDTO[] createChunk(Future<PreparedChunk> preparedChunk) {
+        PreparedChunk prepared;
+        try {
+            prepared = preparedChunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Bulk loan creation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Bulk loan creation failed", e.getCause());
+        }
+        List<LoanCreationDTO> chunk = prepared.loans();
+        LoanRejection[] rejections = prepared.rejections();
+
+        long[] createdLoanIds = new long[chunk.size()];
+        transactionTemplate.executeWithoutResult(status -> {
+            // the queries of the chunk never read the outbox events it appends, so they are flushed once at commit
+            entityManager.setFlushMode(FlushModeType.COMMIT);
+            reserveCreditLimits(chunk, prepared.loansByCustomer(), rejections);
+            insertLoans(chunk, prepared.loansByCustomer(), prepared.schedules(), prepared.loanAmounts(),
+                createdLoanIds);
+        });
+        // the customers were updated with JDBC, so the second level cache does not know about it
+        prepared.loansByCustomer().keySet().forEach(customerId ->
+            entityManager.getEntityManagerFactory().getCache().evict(Customer.class, customerId));
+
+        LoanCreationResultDTO[] results = new LoanCreationResultDTO[chunk.size()];
+        for (int index = 0; index < chunk.size(); index++) {
+            LoanCreationResultDTO result = new LoanCreationResultDTO();
+            if (rejections[index] == null) {
+                result.setLoanId(createdLoanIds[index]);
+                result.setLoanAmount(prepared.loanAmounts()[index]);
+                result.setMessage(CreateLoanResponse.CREATED);
+            } else {
+                loanMetrics.rejected(rejections[index]);
+                result.setRejection(rejections[index].getReason());
+                result.setMessage(rejections[index].getMessage());
+            }
+            results[index] = result;
+        }
+        return results;
+    }
+
+    private Map<Long, Customer> findCustomers(List<LoanCreationDTO> chunk) {
+        Set<Long> customerIds = new HashSet<>();
+        for (LoanCreationDTO loanCreationDTO : chunk) {
+            if (loanCreationDTO != null && loanCreationDTO.getCustomerId() != null) {
+                customerIds.add(loanCreationDTO.getCustomerId());
+            }
+        }
+        return customerRepository.findAllById(customerIds).stream()
+            .collect(Collectors.toMap(Customer::getId, Function.identity()));
+    }
+
+    /**
+     * Check the loans of each customer against the credit limit read with the chunk in the order they were read,
+     * as if they were created one by one
+     *
+     * @return the indexes of the loans to create by customer id
+     */
+    private static Map<Long, List<Integer>> checkCreditLimits(List<LoanCreationDTO> chunk,
+                                                              Map<Long, Customer> customers,
+                                                              LoanRejection[] rejections) {
+        Map<Long, List<Integer>> loansByCustomer = new TreeMap<>();
+        Map<Long, BigDecimal> availableLimits = new TreeMap<>();
+        for (int index = 0; index < chunk.size(); index++) {
+            if (rejections[index] != null) {
+                continue;
+            }
+            Long customerId = chunk.get(index).getCustomerId();
+            BigDecimal amount = chunk.get(index).getAmount();
+            BigDecimal availableLimit = availableLimits.computeIfAbsent(customerId,
+                id -> customers.get(id).getCreditLimit());
+            if (availableLimit.compareTo(amount) < 0) {
+                rejections[index] = LoanRejection.CREDIT_LIMIT;
+            } else {
+                availableLimits.put(customerId, availableLimit.subtract(amount));
+                loansByCustomer.computeIfAbsent(customerId, id -> new ArrayList<>()).add(index);
+            }
+        }
+        return loansByCustomer;
+    }
+
+    private void reserveCreditLimits(List<LoanCreationDTO> chunk, Map<Long, List<Integer>> loansByCustomer,
+                                     LoanRejection[] rejections) {
+        List<Long> customerIds = new ArrayList<>(loansByCustomer.keySet());
+        BigDecimal[] amounts = new BigDecimal[customerIds.size()];
+        for (int i = 0; i < customerIds.size(); i++) {
+            amounts[i] = BigDecimal.ZERO;
+            for (int index : loansByCustomer.get(customerIds.get(i))) {
+                amounts[i] = amounts[i].add(chunk.get(index).getAmount());
+            }
+        }
+
+        // customers are updated in id order, so concurrent chunks lock their rows in the same order
+        int[] updateCounts = jdbcTemplate.batchUpdate(RESERVE_CREDIT_LIMIT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setBigDecimal(1, amounts[i]);
+                ps.setBigDecimal(2, amounts[i]);
+                ps.setLong(3, customerIds.get(i));
+                ps.setBigDecimal(4, amounts[i]);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return customerIds.size();
+            }
+        });
+
+        for (int i = 0; i < customerIds.size(); i++) {
+            Long customerId = customerIds.get(i);
+            // the limit changed since the chunk read it, the loans of the customer are checked again one by one
+            BigDecimal reservedAmount = updateCounts[i] == 1 ? amounts[i]
+                : reserveLoanByLoan(chunk, customerId, loansByCustomer, rejections);
+            if (reservedAmount.signum() > 0) {
+                customerCache.invalidate(customerId);
+                outboxService.append(OutboxEventType.CREDIT_LIMIT_CHANGED, null, customerId,
+                    Map.of("customerId", customerId, "reservedAmount", reservedAmount));
+            }
+        }
+    }
+
+    /**
+     * Re-read the credit limit of the customer with its row locked and reserve the loans which still fit in the
+     * order they were read, like {@link #checkCreditLimits} does
+     *
+     * @return the reserved amount, zero if none of the loans fits
+     */
+    private BigDecimal reserveLoanByLoan(List<LoanCreationDTO> chunk, Long customerId,
+                                         Map<Long, List<Integer>> loansByCustomer, LoanRejection[] rejections) {
+        List<BigDecimal> creditLimits = jdbcTemplate.queryForList(SELECT_CREDIT_LIMIT_FOR_UPDATE, BigDecimal.class,
+            customerId);
+        BigDecimal availableLimit = creditLimits.isEmpty() || creditLimits.get(0) == null
+            ? BigDecimal.ZERO : creditLimits.get(0);
+        BigDecimal reservedAmount = BigDecimal.ZERO;
+        List<Integer> indexes = loansByCustomer.get(customerId);
+        for (Iterator<Integer> iterator = indexes.iterator(); iterator.hasNext(); ) {
+            int index = iterator.next();
+            BigDecimal amount = chunk.get(index).getAmount();
+            if (availableLimit.compareTo(amount) < 0) {
+                rejections[index] = LoanRejection.CREDIT_LIMIT;
+                iterator.remove();
+            } else {
+                availableLimit = availableLimit.subtract(amount);
+                reservedAmount = reservedAmount.add(amount);
+            }
+        }
+        if (indexes.isEmpty()) {
+            loansByCustomer.remove(customerId);
+        } else {
+            // the row is locked, so the conditional update cannot fail any more
+            jdbcTemplate.update(RESERVE_CREDIT_LIMIT, reservedAmount, reservedAmount, customerId, reservedAmount);
+        }
+        return reservedAmount;
+    }
+
+    private void insertLoans(List<LoanCreationDTO> chunk, Map<Long, List<Integer>> loansByCustomer,
+                             long[][] schedules, BigDecimal[] loanAmounts, long[] createdLoanIds) {
+        List<Integer> indexes = loansByCustomer.values().stream().flatMap(List::stream).sorted().toList();
+        if (indexes.isEmpty()) {
+            return;
+        }
+        long[] ids = loanIds.allocate(indexes.size());
+        int installmentCount = 0;
+        for (int i = 0; i < indexes.size(); i++) {
+            createdLoanIds[indexes.get(i)] = ids[i];
+            installmentCount += schedules[indexes.get(i)].length;
+        }
+
+        Timestamp createDate = new Timestamp(System.currentTimeMillis());
+        jdbcTemplate.batchUpdate(INSERT_LOAN, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                LoanCreationDTO loanCreationDTO = chunk.get(indexes.get(i));
+                ps.setLong(1, ids[i]);
+                ps.setLong(2, loanCreationDTO.getCustomerId());
+                ps.setBigDecimal(3, loanAmounts[indexes.get(i)]);
+                ps.setInt(4, loanCreationDTO.getNumberOfInstallments());
+                ps.setTimestamp(5, createDate);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return indexes.size();
+            }
+        });
+
+        LocalDate today = LocalDate.now();
+        Date[] dueDates = new Date[NumberOfInstallments.TWENTY_FOUR.getNumberOfInstallments()];
+        for (int month = 0; month < dueDates.length; month++) {
+            dueDates[month] = Date.valueOf(LoanApplicationService.calculateDueDate(today.plusMonths(month)));
+        }
+        long[] installmentIdBlock = installmentIds.allocate(installmentCount);
+        int[] installmentLoans = new int[installmentCount];
+        int[] installmentMonths = new int[installmentCount];
+        int installment = 0;
+        for (int i = 0; i < indexes.size(); i++) {
+            for (int month = 0; month < schedules[indexes.get(i)].length; month++) {
+                installmentLoans[installment] = i;
+                installmentMonths[installment] = month;
+                installment++;
+            }
+        }
+        jdbcTemplate.batchUpdate(INSERT_INSTALLMENT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                int loan = installmentLoans[i];
+                int month = installmentMonths[i];
+                ps.setLong(1, installmentIdBlock[i]);
+                ps.setLong(2, ids[loan]);
+                ps.setBigDecimal(3, AmortizationEngine.fromCents(schedules[indexes.get(loan)][month]));
+                ps.setDate(4, dueDates[month]);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return installmentIdBlock.length;
+            }
+        });
+
+        LocalDate firstDueDate = LoanApplicationService.calculateDueDate(today);
+        List<SqlParameterSource> exposures = new ArrayList<>(loansByCustomer.size());
+        loansByCustomer.forEach((customerId, customerLoans) -> {
+            long amount = 0;
+            for (int index : customerLoans) {
+                amount += LoanApplicationService.sum(schedules[index]);
+            }
+            exposures.add(new MapSqlParameterSource()
+                .addValue(CustomerExposureRepository.CUSTOMERID, customerId)
+                .addValue(CustomerExposureRepository.LOANCOUNT, customerLoans.size())
+                .addValue(CustomerExposureRepository.AMOUNT, AmortizationEngine.fromCents(amount))
+                .addValue(CustomerExposureRepository.DUEDATE, firstDueDate));
+        });
+        namedParameterJdbcTemplate.batchUpdate(CustomerExposureRepository.ADD_LOANS,
+            exposures.toArray(SqlParameterSource[]::new));
+
+        for (int i = 0; i < indexes.size(); i++) {
+            LoanCreationDTO loanCreationDTO = chunk.get(indexes.get(i));
+            outboxService.append(OutboxEventType.LOAN_CREATED, ids[i], loanCreationDTO.getCustomerId(), Map.of(
+                "loanId", ids[i],
+                "customerId", loanCreationDTO.getCustomerId(),
+                "loanAmount", loanAmounts[indexes.get(i)],
+                "numberOfInstallments", loanCreationDTO.getNumberOfInstallments(),
+                "firstDueDate", firstDueDate.toString()));
+        }
+    }
+
+    private void writeResults(LoanCreationResultDTO[] results, JsonGenerator generator) throws IOException {
+        for (LoanCreationResultDTO result : results) {
+            resultWriter.writeValue(generator, result);
+            generator.writeRaw('\n');
+        }
+        generator.flush();
+    }
+
+    private record PreparedChunk(List<LoanCreationDTO> loans, LoanRejection[] rejections, long[][] schedules,
+                                 BigDecimal[] loanAmounts, Map<Long, List<Integer>> loansByCustomer) {
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.loans.service;
+
+import com.example.loans.dto.LoanPaymentDTO;
+import com.example.loans.dto.LoanPaymentResultDTO;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Applies a stream of payments, either newline delimited or as a JSON array. Payments are parsed one by one
+ * and applied in chunks, so memory use depends on the chunk size and not on the size of the stream.
+ * The loans of a chunk are paid in groups of loan.bulk-payment.lock-group-size loans, each group in its own
+ * transaction holding the locks of its loans.
+ */
+@Service
+public class BulkPaymentService {
+
+    private final LoanPaymentEngine loanPaymentEngine;
+    private final LoanPaymentLocks loanPaymentLocks;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter resultWriter;
+    private final int chunkSize;
+    private final int lockGroupSize;
+
+    @Autowired
+    public BulkPaymentService(LoanPaymentEngine loanPaymentEngine, LoanPaymentLocks loanPaymentLocks,
+                              PlatformTransactionManager transactionManager,
+                              ObjectMapper objectMapper, @Value("${loan.bulk-payment.chunk-size:500}") int chunkSize,
+                              @Value("${loan.bulk-payment.lock-group-size:16}") int lockGroupSize) {
+        this.loanPaymentEngine = loanPaymentEngine;
+        this.loanPaymentLocks = loanPaymentLocks;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.resultWriter = objectMapper.writer()
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+            .withRootValueSeparator("");
+        this.chunkSize = chunkSize;
+        this.lockGroupSize = Math.max(lockGroupSize, 1);
+    }
+
+    /**
+     * Read payments from the input and write one payment result per line to the output,
+     * in the order the payments were read
+     *
+     * @param input the payments
+     * @param output the payment results
+     */
+    public void payLoans(InputStream input, OutputStream output) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(input);
+             JsonGenerator generator = resultWriter.createGenerator(output)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
+            }
+
+            List<LoanPaymentDTO> chunk = new ArrayList<>(chunkSize);
+            while (token != null && token != JsonToken.END_ARRAY) {
+                chunk.add(objectMapper.readValue(parser, LoanPaymentDTO.class));
+                if (chunk.size() == chunkSize) {
+                    writeResults(payChunk(chunk), generator);
+                    chunk.clear();
+                }
+                token = parser.nextToken();
+            }
+            if (!chunk.isEmpty()) {
+                writeResults(payChunk(chunk), generator);
+            }
+        }
+    }
+
+    private LoanPaymentResultDTO[] payChunk(List<LoanPaymentDTO> chunk) {
+        // payments are applied loan by loan in loan id order, so concurrent chunks lock rows in the same order,
+        // and payments of the same loan keep their arrival order
+        Map<Long, List<Integer>> paymentsByLoan = new TreeMap<>();
+        LoanPaymentResultDTO[] results = new LoanPaymentResultDTO[chunk.size()];
+        for (int i = 0; i < chunk.size(); i++) {
+            LoanPaymentDTO loanPaymentDTO = chunk.get(i);
+            if (!LoanApplicationService.isComplete(loanPaymentDTO)) {
+                results[i] = emptyResult();
+            } else {
+                paymentsByLoan.computeIfAbsent(loanPaymentDTO.getLoanId(), loanId -> new ArrayList<>()).add(i);
+            }
+        }
+
+        // each group of loans is paid in its own transaction holding only the locks of the group, so single
+        // payments of other loans do not wait for the whole chunk
+        List<Long> loanIds = new ArrayList<>(paymentsByLoan.keySet());
+        for (int from = 0; from < loanIds.size(); from += lockGroupSize) {
+            List<Long> group = loanIds.subList(from, Math.min(from + lockGroupSize, loanIds.size()));
+            loanPaymentLocks.withLoanLocks(group, () -> transactionTemplate.execute(status -> {
+                for (Long loanId : group) {
+                    for (int index : paymentsByLoan.get(loanId)) {
+                        LoanPaymentResultDTO result = loanPaymentEngine.pay(loanId,
+                            chunk.get(index).getPaymentAmount(), chunk.get(index).getAllocation());
+                        results[index] = result == null ? emptyResult() : result;
+                    }
+                }
+                return results;
+            }));
+        }
+        return results;
+    }
+
+    private void writeResults(LoanPaymentResultDTO[] results, JsonGenerator generator) throws IOException {
+        for (LoanPaymentResultDTO result : results) {
+            resultWriter.writeValue(generator, result);
+            generator.writeRaw('\n');
+        }
+        generator.flush();
+    }
+
+    private static LoanPaymentResultDTO emptyResult() {
+        LoanPaymentResultDTO loanPaymentResultDTO = new LoanPaymentResultDTO();
+        loanPaymentResultDTO.setTotalAmountSpent(BigDecimal.ZERO);
+        return loanPaymentResultDTO;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.loans.service;
+
+import com.example.loans.enums.OutboxEventType;
+import com.example.loans.repository.CustomerRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Reserves and releases customer credit limit with conditional updates, so concurrent
+ * requests can never overdraw a limit and no lock is taken while the request is validated.
+ */
+@Service
+public class CreditLimitService {
+
+    private final CustomerRepository customerRepository;
+    private final CustomerCache customerCache;
+    private final OutboxService outboxService;
+
+    @Autowired
+    public CreditLimitService(CustomerRepository customerRepository, CustomerCache customerCache,
+                              OutboxService outboxService) {
+        this.customerRepository = customerRepository;
+        this.customerCache = customerCache;
+        this.outboxService = outboxService;
+    }
+
+    /**
+     * Reserve the amount from the customer credit limit
+     *
+     * @param customerId the customer id
+     * @param amount the amount to reserve
+     * @return true if the credit limit was enough and it is reserved
+     */
+    @Transactional
+    public boolean reserve(Long customerId, BigDecimal amount) {
+        boolean reserved = customerRepository.reserveCreditLimit(customerId, amount) == 1;
+        if (reserved) {
+            customerCache.invalidate(customerId);
+            outboxService.append(OutboxEventType.CREDIT_LIMIT_CHANGED, null, customerId,
+                Map.of("customerId", customerId, "reservedAmount", amount));
+        }
+        return reserved;
+    }
+
+    /**
+     * Give back the amount to the customer credit limit
+     *
+     * @param customerId the customer id
+     * @param amount the amount to give back
+     */
+    @Transactional
+    public void release(Long customerId, BigDecimal amount) {
+        if (customerRepository.releaseCreditLimit(customerId, amount) == 1) {
+            customerCache.invalidate(customerId);
+            outboxService.append(OutboxEventType.CREDIT_LIMIT_CHANGED, null, customerId,
+                Map.of("customerId", customerId, "releasedAmount", amount));
+        }
+    }
+}
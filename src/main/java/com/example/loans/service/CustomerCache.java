@@ -0,0 +1,91 @@
+package com.example.loans.service;
+
+import com.example.loans.entity.Customer;
+import com.example.loans.repository.CustomerRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Read-through cache of customers in front of {@link CustomerRepository}, bounded by size and time to live.
+ * Cached customers are detached copies and must not be modified or saved. The cached credit limit is only
+ * used to fail fast, the conditional update of {@link CreditLimitService} still decides whether a loan fits.
+ * Its hits, misses and evictions are published as the cache.* meters of the customers cache.
+ */
+@Service
+public class CustomerCache implements MeterBinder {
+
+    private final CustomerRepository customerRepository;
+    private final Cache<Long, Customer> customers;
+
+    @Autowired
+    public CustomerCache(CustomerRepository customerRepository,
+                         @Value("${loan.customer-cache.maximum-size:10000}") long maximumSize,
+                         @Value("${loan.customer-cache.expire-after-write:5m}") Duration expireAfterWrite) {
+        this.customerRepository = customerRepository;
+        this.customers = Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(expireAfterWrite)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * Find the customer, from the cache if it is there, otherwise from the database
+     *
+     * @param customerId the customer id
+     * @return the customer, empty if it does not exist
+     */
+    public Optional<Customer> findById(Long customerId) {
+        if (customerId == null) {
+            return Optional.empty();
+        }
+        // missing customers are not cached, so a customer is found as soon as it is created
+        return Optional.ofNullable(customers.get(customerId, this::load));
+    }
+
+    /**
+     * Drop the customer from the cache now, and once more when the current transaction completes,
+     * so a read that raced with the change can not keep the old credit limit in the cache
+     *
+     * @param customerId the customer id
+     */
+    public void invalidate(Long customerId) {
+        customers.invalidate(customerId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    customers.invalidate(customerId);
+                }
+            });
+        }
+    }
+
+    public CacheStats stats() {
+        return customers.stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, customers, "customers");
+    }
+
+    private Customer load(Long customerId) {
+        return customerRepository.findById(customerId)
+            .map(customer -> new Customer(customer.getId(), customer.getName(), customer.getSurName(),
+                customer.getCreditLimit(), customer.getUsedCreditLimit()))
+            .orElse(null);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.loans.service;
+
+import com.example.loans.dto.CustomerExposureDTO;
+import com.example.loans.repository.CustomerExposureRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Keeps the exposure of each customer up to date with single row updates in the transactions that create
+ * and pay loans, and rebuilds it from the installments when it has to be repaired.
+ */
+@Service
+public class CustomerExposureService {
+
+    private final CustomerExposureRepository customerExposureRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int rebuildParallelism;
+    private final int rebuildChunkCustomers;
+
+    @Autowired
+    public CustomerExposureService(CustomerExposureRepository customerExposureRepository, JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${loan.exposure.rebuild-parallelism:4}") int rebuildParallelism,
+                                   @Value("${loan.exposure.rebuild-chunk-customers:1000}") int rebuildChunkCustomers) {
+        this.customerExposureRepository = customerExposureRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.rebuildParallelism = rebuildParallelism;
+        this.rebuildChunkCustomers = rebuildChunkCustomers;
+    }
+
+    public ResponseEntity<CustomerExposureDTO> getExposure(Long customerId) {
+        return customerExposureRepository.findById(customerId)
+            .map(customerExposure -> new ResponseEntity<>(CustomerExposureDTO.of(customerExposure), HttpStatus.OK))
+            .orElseGet(() -> new ResponseEntity<>(HttpStatus.NO_CONTENT));
+    }
+
+    /**
+     * Add a new loan to the exposure of the customer
+     *
+     * @param customerId the customer id
+     * @param amount the total amount of the loan installments
+     * @param firstDueDate the due date of the first installment
+     */
+    @Transactional
+    public void loanCreated(long customerId, BigDecimal amount, LocalDate firstDueDate) {
+        customerExposureRepository.addLoans(customerId, 1, amount, firstDueDate);
+    }
+
+    /**
+     * Take a payment off the exposure of the customer
+     *
+     * @param customerId the customer id
+     * @param amount the amount of the settled installments
+     * @param loanClosed true if the payment paid the loan completely
+     * @param overdueAmount the part of the overdue amount the payment paid
+     * @param settledDueDate the earliest due date of the settled installments, null if none was settled
+     */
+    @Transactional
+    public void paymentApplied(long customerId, BigDecimal amount, boolean loanClosed, BigDecimal overdueAmount,
+                               LocalDate settledDueDate) {
+        customerExposureRepository.applyPayment(customerId, amount, loanClosed ? 1 : 0, overdueAmount, settledDueDate);
+    }
+
+    @Scheduled(cron = "${loan.exposure.rebuild-cron:-}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    /**
+     * Recompute all exposures from the loans and installments, in chunks of customer ids committed
+     * one by one and processed in parallel. It is a repair job, loans created or paid while their chunk is
+     * rebuilt can be missed, so run it when loans are not being created or paid.
+     *
+     * @return the number of rebuilt exposures
+     */
+    public long rebuild() {
+        long[] customerIds = jdbcTemplate.queryForObject("SELECT MIN(customer_id), MAX(customer_id) FROM loans",
+            (rs, rowNum) -> new long[] {rs.getLong(1), rs.getLong(2)});
+        if (customerIds == null || customerIds[1] == 0) {
+            return 0;
+        }
+
+        List<Future<Integer>> chunks = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(rebuildParallelism)) {
+            for (long afterId = customerIds[0] - 1; afterId < customerIds[1]; afterId += rebuildChunkCustomers) {
+                long chunkAfterId = afterId;
+                long chunkUpToId = Math.min(afterId + rebuildChunkCustomers, customerIds[1]);
+                chunks.add(executor.submit(() -> transactionTemplate.execute(status -> {
+                    customerExposureRepository.deleteExposures(chunkAfterId, chunkUpToId);
+                    return customerExposureRepository.insertExposures(chunkAfterId, chunkUpToId);
+                })));
+            }
+        }
+
+        long rebuilt = 0;
+        try {
+            for (Future<Integer> chunk : chunks) {
+                rebuilt += chunk.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Exposure rebuild interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Exposure rebuild failed", e.getCause());
+        }
+        return rebuilt;
+    }
+}
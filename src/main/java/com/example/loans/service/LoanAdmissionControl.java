@@ -0,0 +1,144 @@
+package com.example.loans.service;
+
+import com.example.loans.enums.AdmissionRejection;
+import com.example.loans.exception.AdmissionRejectedException;
+import com.example.loans.util.StripedTokenBuckets;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sheds createLoan and payLoan requests before they reach {@link LoanApplicationService}: at most max-concurrent
+ * requests run at a time, and each API principal, customer and loan has a token bucket. Loans are created for a
+ * customer, payments are limited per loan which needs no lookup of the customer. A bulk request takes one
+ * concurrency slot for its whole stream and one token of its principal. Admitting a request neither locks
+ * nor allocates, and every limit can be changed while running.
+ */
+@Service
+public class LoanAdmissionControl {
+
+    public static final String PRINCIPAL = "principal";
+    public static final String CUSTOMER = "customer";
+    public static final String LOAN = "loan";
+
+    private final Map<String, StripedTokenBuckets> buckets;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<AdmissionRejection, Counter> rejections = new EnumMap<>(AdmissionRejection.class);
+    private volatile int maxConcurrent;
+
+    @Autowired
+    public LoanAdmissionControl(MeterRegistry meterRegistry,
+                                @Value("${loan.admission.stripes:4096}") int stripes,
+                                @Value("${loan.admission.max-concurrent:0}") int maxConcurrent,
+                                @Value("${loan.admission.principal.rate:0}") double principalRate,
+                                @Value("${loan.admission.principal.burst:1}") int principalBurst,
+                                @Value("${loan.admission.customer.rate:0}") double customerRate,
+                                @Value("${loan.admission.customer.burst:1}") int customerBurst,
+                                @Value("${loan.admission.loan.rate:0}") double loanRate,
+                                @Value("${loan.admission.loan.burst:1}") int loanBurst) {
+        this.buckets = Map.of(
+            PRINCIPAL, new StripedTokenBuckets(stripes, principalRate, principalBurst),
+            CUSTOMER, new StripedTokenBuckets(stripes, customerRate, customerBurst),
+            LOAN, new StripedTokenBuckets(stripes, loanRate, loanBurst));
+        this.maxConcurrent = maxConcurrent;
+        for (AdmissionRejection admissionRejection : AdmissionRejection.values()) {
+            rejections.put(admissionRejection, Counter.builder("loan.admission.rejections")
+                .description("Requests shed with 429 before reaching the loan service")
+                .tag("reason", admissionRejection.getReason())
+                .register(meterRegistry));
+        }
+        Gauge.builder("loan.admission.in.flight", inFlight, AtomicInteger::get)
+            .description("Admitted requests still running")
+            .register(meterRegistry);
+        Gauge.builder("loan.admission.max.concurrent", this, LoanAdmissionControl::getMaxConcurrent)
+            .description("Requests allowed to run at a time, 0 for no limit")
+            .register(meterRegistry);
+        buckets.forEach((limit, bucket) -> Gauge.builder("loan.admission.rate", bucket,
+                StripedTokenBuckets::getTokensPerSecond)
+            .description("Requests per second allowed per key, 0 for no limit")
+            .tag("limit", limit)
+            .register(meterRegistry));
+    }
+
+    /**
+     * Admit a loan creation, {@link #release()} must be called once it is done
+     *
+     * @param principal the name of the API principal, null if there is none
+     * @param customerId the customer id of the loan, null if it is missing
+     * @throws AdmissionRejectedException if the request is shed
+     */
+    public void admitLoan(String principal, Long customerId) {
+        admit(principal, CUSTOMER, customerId, AdmissionRejection.CUSTOMER_RATE);
+    }
+
+    /**
+     * Admit a loan payment, {@link #release()} must be called once it is done
+     *
+     * @param principal the name of the API principal, null if there is none
+     * @param loanId the loan id of the payment, null if it is missing
+     * @throws AdmissionRejectedException if the request is shed
+     */
+    public void admitPayment(String principal, Long loanId) {
+        admit(principal, LOAN, loanId, AdmissionRejection.LOAN_RATE);
+    }
+
+    /**
+     * Admit a bulk request, {@link #release()} must be called once its stream is done. The keys of the lines
+     * are only known while streaming, so only the concurrency and the principal are limited.
+     *
+     * @param principal the name of the API principal, null if there is none
+     * @throws AdmissionRejectedException if the request is shed
+     */
+    public void admitBulk(String principal) {
+        admit(principal, null, null, null);
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * @param maxConcurrent requests allowed to run at a time, 0 for no limit
+     */
+    public void setMaxConcurrent(int maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    /**
+     * @param limit principal, customer or loan
+     * @return the token buckets of the limit, null if there is no such limit
+     */
+    public StripedTokenBuckets getBuckets(String limit) {
+        return buckets.get(limit);
+    }
+
+    private void admit(String principal, String limit, Long key, AdmissionRejection keyRejection) {
+        int max = maxConcurrent;
+        if (inFlight.incrementAndGet() > max && max > 0) {
+            reject(AdmissionRejection.CONCURRENCY);
+        }
+        if (principal != null && !buckets.get(PRINCIPAL).tryAcquire(principal)) {
+            reject(AdmissionRejection.PRINCIPAL_RATE);
+        }
+        if (key != null && !buckets.get(limit).tryAcquire(key.longValue())) {
+            reject(keyRejection);
+        }
+    }
+
+    private void reject(AdmissionRejection admissionRejection) {
+        inFlight.decrementAndGet();
+        rejections.get(admissionRejection).increment();
+        throw AdmissionRejectedException.of(admissionRejection);
+    }
+}
@@ -1,145 +1,220 @@
 package com.example.loans.service;
 
 import com.example.loans.dto.LoanCreationDTO;
+import com.example.loans.dto.LoanDTO;
+import com.example.loans.dto.LoanInstallmentDTO;
 import com.example.loans.dto.LoanPaymentDTO;
 import com.example.loans.dto.LoanPaymentResultDTO;
 import com.example.loans.entity.Customer;
 import com.example.loans.entity.Loan;
 import com.example.loans.entity.LoanInstallment;
+import com.example.loans.enums.AmortizationType;
+import com.example.loans.enums.LoanRejection;
 import com.example.loans.enums.NumberOfInstallments;
-import com.example.loans.repository.CustomerRepository;
+import com.example.loans.enums.OutboxEventType;
+import com.example.loans.exception.LoanRejectedException;
 import com.example.loans.repository.LoanInstallmentRepository;
 import com.example.loans.repository.LoanRepository;
 import com.example.loans.response.CreateLoanResponse;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.time.Period;
 import java.time.temporal.TemporalAdjusters;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 @Service
+@Timed("loan.application.service")
 public class LoanApplicationService {
 
-    private final CustomerRepository customerRepository;
+    // schedules are calculated in long cents, larger amounts would overflow them
+    private static final BigDecimal MAX_AMOUNT = new BigDecimal(1_000_000_000);
+
+    private final CustomerCache customerCache;
     private final LoanRepository loanRepository;
     private final LoanInstallmentRepository loanInstallmentRepository;
+    private final CreditLimitService creditLimitService;
+    private final AmortizationEngine amortizationEngine;
+    private final LoanPaymentEngine loanPaymentEngine;
+    private final LoanMetrics loanMetrics;
+    private final CustomerExposureService customerExposureService;
+    private final LoanPaymentLocks loanPaymentLocks;
+    private final OutboxService outboxService;
 
     @Autowired
-    public LoanApplicationService(CustomerRepository customerRepository,
-                                  LoanRepository loanRepository,LoanInstallmentRepository loanInstallmentRepository){
-        this.customerRepository = customerRepository;
+    public LoanApplicationService(CustomerCache customerCache,
+                                  LoanRepository loanRepository,LoanInstallmentRepository loanInstallmentRepository,
+                                  CreditLimitService creditLimitService, AmortizationEngine amortizationEngine,
+                                  LoanPaymentEngine loanPaymentEngine, LoanMetrics loanMetrics,
+                                  CustomerExposureService customerExposureService, LoanPaymentLocks loanPaymentLocks,
+                                  OutboxService outboxService){
+        this.customerCache = customerCache;
         this.loanRepository = loanRepository;
         this.loanInstallmentRepository = loanInstallmentRepository;
+        this.creditLimitService = creditLimitService;
+        this.amortizationEngine = amortizationEngine;
+        this.loanPaymentEngine = loanPaymentEngine;
+        this.loanMetrics = loanMetrics;
+        this.customerExposureService = customerExposureService;
+        this.loanPaymentLocks = loanPaymentLocks;
+        this.outboxService = outboxService;
     }
 
+    @Transactional
     public ResponseEntity<CreateLoanResponse> createLoan(LoanCreationDTO loanCreationDTO) {
-        CreateLoanResponse response = new CreateLoanResponse();
-        if (loanCreationDTO == null) {
-            response.setMessage("Request object is null");
-            return new ResponseEntity<>(response, HttpStatus.INTERNAL_SERVER_ERROR);
+        Customer customer = loanCreationDTO == null ? null : findCustomer(loanCreationDTO.getCustomerId());
+        LoanRejection rejection = validate(loanCreationDTO, customer);
+        // the credit limit check is only a fast path, the conditional update is what guards the limit
+        if (rejection == null && !creditLimitService.reserve(customer.getId(), loanCreationDTO.getAmount())) {
+            rejection = LoanRejection.CREDIT_LIMIT;
         }
-
-        Customer customer = findCustomer(loanCreationDTO.getCustomerId());
-        if (customer == null) {
-            response.setMessage("No proper customer found with customerId:" + loanCreationDTO.getCustomerId());
-            return new ResponseEntity<>(response, HttpStatus.INTERNAL_SERVER_ERROR);
+        if (rejection != null) {
+            loanMetrics.rejected(rejection);
+            throw LoanRejectedException.of(rejection);
         }
 
-        if (customer.getCreditLimit().compareTo(loanCreationDTO.getAmount()) < 0) {
-
-            response.setMessage("Customer credit limit is not enough, credit limit is: " + customer.getCreditLimit());
-            return new ResponseEntity<>(response, HttpStatus.INTERNAL_SERVER_ERROR);
-        }
-
-        if (!correctInstallmentType(loanCreationDTO.getNumberOfInstallments())) {
-            response.setMessage("InstallmentType can only be: "
-                + Arrays.stream(NumberOfInstallments.values()).map(NumberOfInstallments::getNumberOfInstallments).toList()
-                + "but your request has: " + loanCreationDTO.getNumberOfInstallments());
-            return new ResponseEntity<>(response, HttpStatus.INTERNAL_SERVER_ERROR);
-        }
-
-        if (!correctInterestRate(loanCreationDTO.getInterestRate())) {
-            response.setMessage("Interest rate should be between 0.1 and 0.5 but yours is " + loanCreationDTO.getInterestRate());
-            return new ResponseEntity<>(response, HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+        long[] schedule = amortizationEngine.schedule(
+            AmortizationEngine.toCents(loanCreationDTO.getAmount()),
+            AmortizationEngine.toRatePpm(loanCreationDTO.getInterestRate()),
+            NumberOfInstallments.of(loanCreationDTO.getNumberOfInstallments()));
 
         Loan loan = new Loan();
         loan.setCustomerId(loanCreationDTO.getCustomerId());
         loan.setNumberOfInstallment(loanCreationDTO.getNumberOfInstallments());
-        loan.setLoanAmount(calculateLoanAmount(loanCreationDTO.getAmount(), loanCreationDTO.getInterestRate()));
+        loan.setLoanAmount(calculateLoanAmount(amortizationEngine.getType(), loanCreationDTO.getAmount(),
+            loanCreationDTO.getInterestRate(), schedule));
         loan.setIsPaid(Boolean.FALSE);
         loan.setCreateDate(new Date());
 
         loan = loanRepository.save(loan);
 
-        createLoanInstallments(loan, loanCreationDTO.getNumberOfInstallments());
-
-        customer.setCreditLimit(customer.getCreditLimit().subtract(loanCreationDTO.getAmount()));
-        customer.setUsedCreditLimit(loanCreationDTO.getAmount());
-        customerRepository.save(customer);
-
-        response.setMessage("Loan created successfully");
-        response.setLoan(loan);
-        return new ResponseEntity<>(response, HttpStatus.OK);
+        createLoanInstallments(loan, schedule);
+        LocalDate firstDueDate = calculateDueDate(LocalDate.now());
+        customerExposureService.loanCreated(customer.getId(), AmortizationEngine.fromCents(sum(schedule)), firstDueDate);
+        outboxService.append(OutboxEventType.LOAN_CREATED, loan.getId(), customer.getId(), Map.of(
+            "loanId", loan.getId(),
+            "customerId", customer.getId(),
+            "loanAmount", loan.getLoanAmount(),
+            "numberOfInstallments", loan.getNumberOfInstallment(),
+            "firstDueDate", firstDueDate.toString()));
+
+        return new ResponseEntity<>(CreateLoanResponse.created(LoanDTO.of(loan)), HttpStatus.OK);
     }
 
-    private void createLoanInstallments(Loan loan, int numberOfInstallments) {
-        BigDecimal installmentAmount = calculateInstallmentAmount(loan.getLoanAmount(), numberOfInstallments);
-
-        for (int i = 0; i < numberOfInstallments; i++) {
+    private void createLoanInstallments(Loan loan, long[] schedule) {
+        List<LoanInstallment> loanInstallments = new ArrayList<>(schedule.length);
+        for (int i = 0; i < schedule.length; i++) {
             LoanInstallment loanInstallment = new LoanInstallment();
             loanInstallment.setIsPaid(Boolean.FALSE);
             loanInstallment.setLoanId(loan.getId());
-            loanInstallment.setAmount(installmentAmount);
+            loanInstallment.setAmount(AmortizationEngine.fromCents(schedule[i]));
             loanInstallment.setPaidAmount(BigDecimal.ZERO);
             loanInstallment.setDueDate(calculateDueDate(LocalDate.now().plusMonths(i)));
             loanInstallment.setPaymentDate(null);
-            loanInstallmentRepository.save(loanInstallment);
+            loanInstallments.add(loanInstallment);
+        }
+        // written as a single JDBC batch, see hibernate.jdbc.batch_size
+        loanInstallmentRepository.saveAll(loanInstallments);
+    }
+
+    /**
+     * Check the loan request against the customer, the credit limit check is only a fast path
+     * and the limit still has to be reserved
+     *
+     * @param loanCreationDTO the loan request
+     * @param customer the customer of the request, null if it is not found
+     * @return the reason the request is rejected for, null if it is valid
+     */
+    static LoanRejection validate(LoanCreationDTO loanCreationDTO, Customer customer) {
+        if (loanCreationDTO == null
+            || loanCreationDTO.getAmount() == null || loanCreationDTO.getInterestRate() == null) {
+            return LoanRejection.REQUEST_NULL;
+        }
+        if (customer == null) {
+            return LoanRejection.CUSTOMER_NOT_FOUND;
+        }
+        if (customer.getCreditLimit().compareTo(loanCreationDTO.getAmount()) < 0) {
+            return LoanRejection.CREDIT_LIMIT;
+        }
+        return validateTerms(loanCreationDTO.getAmount(), loanCreationDTO.getInterestRate(),
+            loanCreationDTO.getNumberOfInstallments());
+    }
+
+    /**
+     * Check the terms of a loan request which do not depend on the customer
+     *
+     * @param amount the requested amount
+     * @param interestRate the interest rate
+     * @param numberOfInstallments the number of installments
+     * @return the reason the terms are rejected for, null if they are valid
+     */
+    static LoanRejection validateTerms(BigDecimal amount, BigDecimal interestRate, int numberOfInstallments) {
+        if (amount == null || interestRate == null) {
+            return LoanRejection.REQUEST_NULL;
+        }
+        if (!correctAmount(amount)) {
+            return LoanRejection.AMOUNT;
         }
+        if (!correctInstallmentType(numberOfInstallments)) {
+            return LoanRejection.INSTALLMENT_TYPE;
+        }
+        if (!correctInterestRate(interestRate)) {
+            return LoanRejection.INTEREST_RATE;
+        }
+        return null;
     }
 
-    private LocalDate calculateDueDate(LocalDate localDate) {
+    static LocalDate calculateDueDate(LocalDate localDate) {
         return localDate.with(TemporalAdjusters.firstDayOfNextMonth());
     }
 
-    private BigDecimal calculateInstallmentAmount(BigDecimal loanAmount, int numberOfInstallments) {
-        return loanAmount.divide(new BigDecimal(numberOfInstallments));
+    static BigDecimal calculateLoanAmount(AmortizationType type, BigDecimal amount, BigDecimal interestRate,
+                                          long[] schedule) {
+        if (type == AmortizationType.FLAT) {
+            return amount.multiply(BigDecimal.ONE.add(interestRate));
+        }
+        return AmortizationEngine.fromCents(sum(schedule));
     }
 
-    private BigDecimal calculateLoanAmount(BigDecimal amount, BigDecimal interestRate) {
-        return amount.multiply(BigDecimal.ONE.add(interestRate));
+    static long sum(long[] schedule) {
+        long total = 0;
+        for (long installmentAmount : schedule) {
+            total += installmentAmount;
+        }
+        return total;
+    }
+
+    private static boolean correctAmount(BigDecimal amount) {
+        return amount.signum() > 0 && amount.compareTo(MAX_AMOUNT) <= 0;
     }
 
-    private boolean correctInterestRate(BigDecimal interestRate) {
+    private static boolean correctInterestRate(BigDecimal interestRate) {
         return interestRate.compareTo(new BigDecimal("0.1")) >= 0 &&
             interestRate.compareTo(new BigDecimal("0.5")) <= 0;
     }
 
     private Customer findCustomer(Long customerId) {
-        return customerRepository.findById(customerId).orElse(null);
+        return customerCache.findById(customerId).orElse(null);
     }
 
-    private boolean correctInstallmentType(int value) {
-        for (NumberOfInstallments n : NumberOfInstallments.values()) {
-            if (n.getNumberOfInstallments() == value) {
-                return true;
-            }
-        }
-        return false;
+    private static boolean correctInstallmentType(int value) {
+        return NumberOfInstallments.of(value) != null;
     }
 
-    public ResponseEntity<List<Loan>> getLoansByCustomerId(Long customerId) {
+    @Transactional(readOnly = true)
+    public ResponseEntity<List<LoanDTO>> getLoansByCustomerId(Long customerId) {
 
         try {
-            List<Loan> loans = loanRepository.findLoansByCustomerId(customerId);
+            List<LoanDTO> loans = loanRepository.findLoanDTOsByCustomerId(customerId);
 
             if (CollectionUtils.isEmpty(loans)) {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
@@ -151,9 +226,10 @@ public class LoanApplicationService {
         }
     }
 
-    public ResponseEntity<List<LoanInstallment>> getInstallmentsByLoanId(Long loanId) {
+    @Transactional(readOnly = true)
+    public ResponseEntity<List<LoanInstallmentDTO>> getInstallmentsByLoanId(Long loanId) {
         try {
-            List<LoanInstallment> loanInstallments = loanInstallmentRepository.findInstallmentsByLoanId(loanId);
+            List<LoanInstallmentDTO> loanInstallments = loanInstallmentRepository.findInstallmentDTOsByLoanId(loanId);
 
             if (CollectionUtils.isEmpty(loanInstallments)) {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
@@ -166,55 +242,24 @@ public class LoanApplicationService {
     }
 
     public ResponseEntity<LoanPaymentResultDTO> payLoan(LoanPaymentDTO loanPaymentDTO) {
-        List<LoanInstallment> loanInstallments =
-            loanInstallmentRepository.findUnpaidInstallmentsByLoanId(loanPaymentDTO.getLoanId());
-        if (CollectionUtils.isEmpty(loanInstallments)) {
-            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
-        }
-
-        BigDecimal leftAmount = loanPaymentDTO.getPaymentAmount();
-        int numberOfInstallmentsPaid = 0;
-        for (LoanInstallment loanInstallment : loanInstallments) {
-            if (loanInstallment.getAmount().compareTo(leftAmount) > 0) {
-                break;
-            } else {
-                LocalDate currentMonthFirstDay = LocalDate.now().with(TemporalAdjusters.firstDayOfMonth());
-                if (Period.between(currentMonthFirstDay, loanInstallment.getDueDate()).getMonths() <= 2) {
-                    payInstallment(loanInstallment);
-                    leftAmount = leftAmount.subtract(loanInstallment.getAmount());
-                    numberOfInstallmentsPaid++;
-                }
-            }
-        }
-
-        LoanPaymentResultDTO loanPaymentResultDTO = new LoanPaymentResultDTO();
-        BigDecimal totalAmountSpent = loanPaymentDTO.getPaymentAmount().subtract(leftAmount);
-        loanPaymentResultDTO.setNumberOfInstallmentsPaid(numberOfInstallmentsPaid);
-        loanPaymentResultDTO.setTotalAmountSpent(totalAmountSpent);
-        boolean isPaidCompletely = loanInstallments.size() == numberOfInstallmentsPaid;
-        loanPaymentResultDTO.setPaidCompletely(isPaidCompletely);
-
-        Loan loan = loanRepository.findById(loanPaymentDTO.getLoanId()).orElse(null);
-        if (loan != null && isPaidCompletely) {
-            loan.setIsPaid(true);
-            loanRepository.save(loan);
+        if (!isComplete(loanPaymentDTO)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
-
-        if (loan != null) {
-            Customer customer = customerRepository.findById(loan.getCustomerId()).orElse(null);
-            if (customer != null) {
-                customer.setCreditLimit(customer.getCreditLimit().add(totalAmountSpent));
-                customerRepository.save(customer);
-            }
+        LoanPaymentResultDTO loanPaymentResultDTO = loanPaymentLocks.withLoanLock(loanPaymentDTO.getLoanId(),
+            () -> loanPaymentEngine.pay(loanPaymentDTO.getLoanId(), loanPaymentDTO.getPaymentAmount(),
+                loanPaymentDTO.getAllocation()));
+        if (loanPaymentResultDTO == null) {
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
         }
 
         return new ResponseEntity<>(loanPaymentResultDTO, HttpStatus.OK);
     }
 
-    private void payInstallment(LoanInstallment loanInstallment) {
-        loanInstallment.setPaymentDate(LocalDate.now());
-        loanInstallment.setIsPaid(Boolean.TRUE);
-        loanInstallment.setPaidAmount(loanInstallment.getAmount());
-        loanInstallmentRepository.save(loanInstallment);
+    /**
+     * @return true if the payment has a loan id and a positive payment amount
+     */
+    static boolean isComplete(LoanPaymentDTO loanPaymentDTO) {
+        return loanPaymentDTO.getLoanId() != null && loanPaymentDTO.getPaymentAmount() != null
+            && loanPaymentDTO.getPaymentAmount().signum() > 0;
     }
 }
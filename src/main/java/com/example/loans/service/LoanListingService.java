@@ -0,0 +1,138 @@
+package com.example.loans.service;
+
+import com.example.loans.dto.KeysetPageDTO;
+import com.example.loans.dto.LoanDTO;
+import com.example.loans.dto.LoanInstallmentDTO;
+import com.example.loans.repository.LoanInstallmentRepository;
+import com.example.loans.repository.LoanRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Lists loans and installments either page by page with keyset pagination, or as a JSON array streamed
+ * row by row from the database. Neither materializes the whole result, and rows are read as DTOs in read only
+ * transactions, so no entity is loaded into the persistence context.
+ */
+@Service
+public class LoanListingService {
+
+    private static final int FLUSH_EVERY_ROWS = 500;
+
+    private final LoanRepository loanRepository;
+    private final LoanInstallmentRepository loanInstallmentRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ObjectWriter rowWriter;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+
+    @Autowired
+    public LoanListingService(LoanRepository loanRepository, LoanInstallmentRepository loanInstallmentRepository,
+                              PlatformTransactionManager transactionManager,
+                              ObjectMapper objectMapper,
+                              @Value("${loan.listing.default-page-size:100}") int defaultPageSize,
+                              @Value("${loan.listing.max-page-size:500}") int maxPageSize) {
+        this.loanRepository = loanRepository;
+        this.loanInstallmentRepository = loanInstallmentRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.rowWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+    }
+
+    public ResponseEntity<KeysetPageDTO<LoanDTO>> getLoansByCustomerId(long customerId, Long afterId, Integer size) {
+        int pageSize = pageSize(size);
+        List<LoanDTO> loans = readOnlyTransaction.execute(status ->
+            loanRepository.findLoansByCustomerIdAfter(customerId, afterId(afterId), Limit.of(pageSize)));
+        return page(loans, pageSize, LoanDTO::getId);
+    }
+
+    public ResponseEntity<KeysetPageDTO<LoanInstallmentDTO>> getInstallmentsByLoanId(long loanId, Long afterId,
+                                                                                    Integer size) {
+        int pageSize = pageSize(size);
+        List<LoanInstallmentDTO> loanInstallments = readOnlyTransaction.execute(status ->
+            loanInstallmentRepository.findInstallmentsByLoanIdAfter(loanId, afterId(afterId), Limit.of(pageSize)));
+        return page(loanInstallments, pageSize, LoanInstallmentDTO::getId);
+    }
+
+    /**
+     * Write the loans of the customer to the output as a JSON array
+     *
+     * @param customerId the customer id
+     * @param output the output
+     */
+    public void streamLoansByCustomerId(long customerId, OutputStream output) {
+        writeJsonArray(() -> loanRepository.streamLoansByCustomerId(customerId), output);
+    }
+
+    /**
+     * Write the installments of the loan to the output as a JSON array
+     *
+     * @param loanId the loan id
+     * @param output the output
+     */
+    public void streamInstallmentsByLoanId(long loanId, OutputStream output) {
+        writeJsonArray(() -> loanInstallmentRepository.streamInstallmentsByLoanId(loanId), output);
+    }
+
+    private <T> void writeJsonArray(Supplier<Stream<T>> rows, OutputStream output) {
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<T> stream = rows.get();
+                 JsonGenerator generator = rowWriter.createGenerator(output)) {
+                generator.writeStartArray();
+                Iterator<T> iterator = stream.iterator();
+                int written = 0;
+                while (iterator.hasNext()) {
+                    rowWriter.writeValue(generator, iterator.next());
+                    if (++written % FLUSH_EVERY_ROWS == 0) {
+                        generator.flush();
+                    }
+                }
+                generator.writeEndArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private <T> ResponseEntity<KeysetPageDTO<T>> page(List<T> items, int pageSize, Function<T, Long> id) {
+        if (items.isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        }
+
+        KeysetPageDTO<T> page = new KeysetPageDTO<>();
+        page.setItems(items);
+        page.setNextAfterId(items.size() < pageSize ? null : id.apply(items.get(items.size() - 1)));
+        return new ResponseEntity<>(page, HttpStatus.OK);
+    }
+
+    private int pageSize(Integer size) {
+        if (size == null || size <= 0) {
+            return defaultPageSize;
+        }
+        return Math.min(size, maxPageSize);
+    }
+
+    private static long afterId(Long afterId) {
+        return afterId == null ? 0L : afterId;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.loans.service;
+
+import com.example.loans.enums.LoanRejection;
+import com.example.loans.repository.LoanInstallmentRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loan meters besides the timers: a counter of rejected loans per rejection reason, and a gauge of the
+ * outstanding loan value. The outstanding value is summed over all unpaid installments, so it is refreshed
+ * on a schedule and not on every scrape.
+ */
+@Service
+public class LoanMetrics {
+
+    private final LoanInstallmentRepository loanInstallmentRepository;
+    private final Map<LoanRejection, Counter> rejections = new EnumMap<>(LoanRejection.class);
+    private final AtomicReference<Double> outstandingAmount = new AtomicReference<>(0d);
+
+    @Autowired
+    public LoanMetrics(MeterRegistry meterRegistry, LoanInstallmentRepository loanInstallmentRepository) {
+        this.loanInstallmentRepository = loanInstallmentRepository;
+        for (LoanRejection loanRejection : LoanRejection.values()) {
+            rejections.put(loanRejection, Counter.builder("loan.rejections")
+                .description("Loans rejected by createLoan")
+                .tag("reason", loanRejection.getReason())
+                .register(meterRegistry));
+        }
+        Gauge.builder("loan.outstanding.amount", outstandingAmount, AtomicReference::get)
+            .description("Sum of the unpaid installment amounts")
+            .register(meterRegistry);
+    }
+
+    public void rejected(LoanRejection loanRejection) {
+        rejections.get(loanRejection).increment();
+    }
+
+    @Scheduled(fixedDelayString = "${loan.metrics.outstanding-refresh-interval:30s}")
+    public void refreshOutstandingAmount() {
+        outstandingAmount.set(loanInstallmentRepository.sumUnpaidAmount().doubleValue());
+    }
+}
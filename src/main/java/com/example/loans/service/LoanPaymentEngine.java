@@ -0,0 +1,189 @@
+package com.example.loans.service;
+
+import com.example.loans.dto.LoanPaymentResultDTO;
+import com.example.loans.enums.OutboxEventType;
+import com.example.loans.enums.PaymentAllocation;
+import com.example.loans.repository.LoanRepository;
+import com.example.loans.service.PaymentAllocationEngine.Allocation;
+import com.example.loans.service.PaymentAllocationEngine.Schedule;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settles loan payments in the database. The unpaid installments of the loan are read with one query into a
+ * schedule snapshot, {@link PaymentAllocationEngine} allocates the payment over it in memory, and only the
+ * installments it changed are written back with one JDBC batch of conditional updates, so a payment costs the
+ * same number of round trips no matter how many installments it reaches, and no installment, loan or customer
+ * entity is loaded. Callers hold the lock of the loan from {@link LoanPaymentLocks} around the payment transaction.
+ */
+@Service
+public class LoanPaymentEngine {
+
+    // installments can be paid up to 2 months ahead of the current month
+    private static final int PAYABLE_MONTHS = 3;
+    private static final int SCHEDULE_CAPACITY = 24;
+
+    private static final String SELECT_UNPAID = "SELECT id, amount, COALESCE(paid_amount, 0), COALESCE(late_fee, 0),"
+        + " due_date, is_overdue FROM loan_installments WHERE loan_id = ? AND is_paid = FALSE ORDER BY due_date, id";
+    // a row paid by a payment which raced with this one is not updated
+    private static final String UPDATE_PAID = "UPDATE loan_installments"
+        + " SET paid_amount = ?, is_paid = ?, late_fee = ?, payment_date = ?"
+        + " WHERE id = ? AND is_paid = FALSE AND COALESCE(paid_amount, 0) = ?";
+
+    private final LoanRepository loanRepository;
+    private final CreditLimitService creditLimitService;
+    private final CustomerExposureService customerExposureService;
+    private final OutboxService outboxService;
+    private final PaymentAllocationEngine paymentAllocationEngine;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public LoanPaymentEngine(LoanRepository loanRepository, CreditLimitService creditLimitService,
+                             CustomerExposureService customerExposureService, OutboxService outboxService,
+                             PaymentAllocationEngine paymentAllocationEngine, JdbcTemplate jdbcTemplate) {
+        this.loanRepository = loanRepository;
+        this.creditLimitService = creditLimitService;
+        this.customerExposureService = customerExposureService;
+        this.outboxService = outboxService;
+        this.paymentAllocationEngine = paymentAllocationEngine;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Pay the installments of the loan which are due in the payable window, in due date order,
+     * as long as the payment amount covers them completely
+     *
+     * @param loanId the loan id
+     * @param paymentAmount the payment amount
+     * @return the payment result or null if the loan has no unpaid installments
+     */
+    @Transactional
+    public LoanPaymentResultDTO pay(long loanId, BigDecimal paymentAmount) {
+        return pay(loanId, paymentAmount, PaymentAllocation.INSTALLMENTS);
+    }
+
+    /**
+     * Allocate the payment over the unpaid installments of the loan
+     *
+     * @param loanId the loan id
+     * @param paymentAmount the payment amount
+     * @param allocation how the payment is allocated, INSTALLMENTS if it is null
+     * @return the payment result or null if the loan has no unpaid installments
+     */
+    @Transactional
+    public LoanPaymentResultDTO pay(long loanId, BigDecimal paymentAmount, PaymentAllocation allocation) {
+        LocalDate today = LocalDate.now();
+        LocalDate windowEnd = today.with(TemporalAdjusters.firstDayOfMonth()).plusMonths(PAYABLE_MONTHS);
+
+        // installments saved earlier in the transaction have to be visible to the plain JDBC query
+        loanRepository.flush();
+        Schedule schedule = new Schedule(SCHEDULE_CAPACITY);
+        BitSet overdue = new BitSet(SCHEDULE_CAPACITY);
+        jdbcTemplate.query(SELECT_UNPAID, rs -> {
+            overdue.set(schedule.size(), rs.getBoolean(6));
+            schedule.add(rs.getLong(1), AmortizationEngine.toCents(rs.getBigDecimal(2)),
+                AmortizationEngine.toCents(rs.getBigDecimal(3)), AmortizationEngine.toCents(rs.getBigDecimal(4)),
+                rs.getDate(5).toLocalDate());
+        }, loanId);
+        if (schedule.size() == 0) {
+            return null;
+        }
+
+        Allocation result = paymentAllocationEngine.allocate(
+            allocation == null ? PaymentAllocation.INSTALLMENTS : allocation,
+            schedule, AmortizationEngine.toCents(paymentAmount), today, windowEnd);
+        LoanPaymentResultDTO loanPaymentResultDTO = new LoanPaymentResultDTO();
+        loanPaymentResultDTO.setNumberOfInstallmentsPaid(result.getSettledCount());
+        loanPaymentResultDTO.setTotalAmountSpent(AmortizationEngine.fromCents(result.getSpentCents()));
+        loanPaymentResultDTO.setRewardAmount(AmortizationEngine.fromCents(result.getRewardCents()));
+        loanPaymentResultDTO.setPenaltyAmount(AmortizationEngine.fromCents(result.getPenaltyCents()));
+        loanPaymentResultDTO.setCarriedForwardAmount(AmortizationEngine.fromCents(result.getCarriedForwardCents()));
+        if (result.getSpentCents() == 0 && result.getSettledCount() == 0) {
+            return loanPaymentResultDTO;
+        }
+
+        writeChangedInstallments(loanId, schedule, result, today);
+        boolean isPaidCompletely = result.isPaidOff();
+        loanPaymentResultDTO.setPaidCompletely(isPaidCompletely);
+        if (isPaidCompletely) {
+            loanRepository.markLoanPaid(loanId);
+        }
+
+        Long customerId = loanRepository.findCustomerIdByLoanId(loanId).orElse(null);
+        outboxService.append(OutboxEventType.INSTALLMENT_PAID, loanId, customerId, Map.of(
+            "loanId", loanId,
+            "numberOfInstallmentsPaid", result.getSettledCount(),
+            "amount", loanPaymentResultDTO.getTotalAmountSpent(),
+            "paymentDate", today.toString()));
+        if (isPaidCompletely) {
+            outboxService.append(OutboxEventType.LOAN_FULLY_PAID, loanId, customerId, Map.of(
+                "loanId", loanId,
+                "paymentDate", today.toString()));
+        }
+        // exposures and credit limits hold the amounts of unpaid installments, partial payments count once
+        // their installment is settled, but lower the overdue amount right away
+        long overduePaidCents = overduePaidCents(schedule, overdue, result);
+        if (customerId != null && (result.getSettledCount() > 0 || overduePaidCents > 0)) {
+            BigDecimal settledAmount = AmortizationEngine.fromCents(result.getSettledAmountCents());
+            if (result.getSettledCount() > 0) {
+                creditLimitService.release(customerId, settledAmount);
+            }
+            customerExposureService.paymentApplied(customerId, settledAmount, isPaidCompletely,
+                AmortizationEngine.fromCents(overduePaidCents), firstSettledDueDate(schedule, result));
+        }
+
+        return loanPaymentResultDTO;
+    }
+
+    // what the payment took off the amount + late fee - paid amount of the overdue installments
+    private static long overduePaidCents(Schedule schedule, BitSet overdue, Allocation result) {
+        long paidCents = 0;
+        for (int i = overdue.nextSetBit(0); i >= 0; i = overdue.nextSetBit(i + 1)) {
+            if (result.isSettled(i)) {
+                paidCents += schedule.amountCents(i) + schedule.lateFeeCents(i) - schedule.paidCents(i);
+            } else if (result.isChanged(i)) {
+                paidCents += result.paidCents(i) - schedule.paidCents(i);
+            }
+        }
+        return paidCents;
+    }
+
+    private static LocalDate firstSettledDueDate(Schedule schedule, Allocation result) {
+        for (int i = 0; i < schedule.size(); i++) {
+            if (result.isSettled(i)) {
+                return schedule.dueDate(i);
+            }
+        }
+        return null;
+    }
+
+    private void writeChangedInstallments(long loanId, Schedule schedule, Allocation result, LocalDate today) {
+        Date paymentDate = Date.valueOf(today);
+        List<Object[]> updates = new ArrayList<>(schedule.size());
+        for (int i = 0; i < schedule.size(); i++) {
+            if (result.isChanged(i)) {
+                updates.add(new Object[] {AmortizationEngine.fromCents(result.paidCents(i)), result.isSettled(i),
+                    AmortizationEngine.fromCents(result.lateFeeCents(i)), paymentDate, schedule.id(i),
+                    AmortizationEngine.fromCents(schedule.paidCents(i))});
+            }
+        }
+        for (int updated : jdbcTemplate.batchUpdate(UPDATE_PAID, updates)) {
+            if (updated != 1 && updated != Statement.SUCCESS_NO_INFO) {
+                throw new ConcurrencyFailureException("Installments of loan " + loanId + " changed during payment");
+            }
+        }
+    }
+}
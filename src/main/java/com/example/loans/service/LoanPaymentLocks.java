@@ -0,0 +1,69 @@
+package com.example.loans.service;
+
+import com.example.loans.util.StripedLocks;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+
+/**
+ * Serializes the payments of a loan within this instance, payments of different loans run in parallel
+ * unless their loan ids share a lock stripe. The lock must be taken before the payment transaction starts
+ * and held until it commits, so the next payment of the loan reads the installments the previous one paid.
+ * The conditional update of {@link LoanPaymentEngine} still rejects a payment that raced with one on another
+ * instance.
+ */
+@Service
+public class LoanPaymentLocks {
+
+    private final StripedLocks locks;
+
+    @Autowired
+    public LoanPaymentLocks(@Value("${loan.payment.lock-stripes:1024}") int lockStripes) {
+        this.locks = new StripedLocks(lockStripes);
+    }
+
+    /**
+     * Run the action holding the lock of the loan
+     *
+     * @param loanId the loan id
+     * @param action the action, usually a payment transaction
+     * @return the result of the action
+     */
+    public <T> T withLoanLock(long loanId, Supplier<T> action) {
+        Lock lock = locks.get(loanId);
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Run the action holding the locks of all the loans. The locks are taken in stripe order,
+     * so callers locking overlapping sets of loans can not deadlock.
+     *
+     * @param loanIds the loan ids
+     * @param action the action, usually a transaction paying all the loans
+     * @return the result of the action
+     */
+    public <T> T withLoanLocks(Collection<Long> loanIds, Supplier<T> action) {
+        int[] stripes = loanIds.stream().mapToInt(locks::stripeOf).sorted().distinct().toArray();
+        int locked = 0;
+        try {
+            for (int stripe : stripes) {
+                locks.getAt(stripe).lock();
+                locked++;
+            }
+            return action.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                locks.getAt(stripes[i]).unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.loans.service;
+
+import com.example.loans.dto.LoanQuoteDTO;
+import com.example.loans.enums.LoanRejection;
+import com.example.loans.enums.NumberOfInstallments;
+import com.example.loans.exception.LoanRejectedException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Quotes the installment schedule of a loan without creating it. A quote only depends on the amount, the rate,
+ * the number of installments and the month it starts in, so quotes are memoized by those in a bounded cache
+ * and repeated quotes cost one cache lookup. No database is touched and no credit limit is reserved.
+ * The cache is published as the cache.* meters of the quotes cache.
+ */
+@Service
+public class LoanQuoteService implements MeterBinder {
+
+    private final AmortizationEngine amortizationEngine;
+    private final Cache<QuoteKey, ResponseEntity<LoanQuoteDTO>> quotes;
+
+    @Autowired
+    public LoanQuoteService(AmortizationEngine amortizationEngine,
+                            @Value("${loan.quote-cache.maximum-size:100000}") long maximumSize) {
+        this.amortizationEngine = amortizationEngine;
+        this.quotes = Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * Quote the installments of a loan starting in the current month
+     *
+     * @param amount the requested amount
+     * @param interestRate the interest rate
+     * @param numberOfInstallments the number of installments
+     * @return the quote
+     * @throws LoanRejectedException if createLoan would reject the terms
+     */
+    public ResponseEntity<LoanQuoteDTO> quote(BigDecimal amount, BigDecimal interestRate, int numberOfInstallments) {
+        return quote(amount, interestRate, numberOfInstallments, YearMonth.now());
+    }
+
+    /**
+     * Quote the installments of a loan, the first installment is due on the first day of the month after
+     * the start month, like the installments of createLoan
+     *
+     * @param amount the requested amount
+     * @param interestRate the interest rate
+     * @param numberOfInstallments the number of installments
+     * @param startMonth the month the loan is created in
+     * @return the quote
+     * @throws LoanRejectedException if createLoan would reject the terms
+     */
+    public ResponseEntity<LoanQuoteDTO> quote(BigDecimal amount, BigDecimal interestRate, int numberOfInstallments,
+                                              YearMonth startMonth) {
+        LoanRejection rejection = LoanApplicationService.validateTerms(amount, interestRate, numberOfInstallments);
+        if (rejection != null) {
+            throw LoanRejectedException.of(rejection);
+        }
+        QuoteKey key = new QuoteKey(AmortizationEngine.toCents(amount), AmortizationEngine.toRatePpm(interestRate),
+            NumberOfInstallments.of(numberOfInstallments), startMonth);
+        return quotes.get(key, this::calculate);
+    }
+
+    public CacheStats stats() {
+        return quotes.stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, quotes, "quotes");
+    }
+
+    private ResponseEntity<LoanQuoteDTO> calculate(QuoteKey key) {
+        long[] schedule = amortizationEngine.schedule(key.amountCents(), key.ratePpm(), key.numberOfInstallments());
+        BigDecimal amount = AmortizationEngine.fromCents(key.amountCents());
+        BigDecimal interestRate = BigDecimal.valueOf(key.ratePpm(), 6).stripTrailingZeros();
+
+        LoanQuoteDTO.Installment[] installments = new LoanQuoteDTO.Installment[schedule.length];
+        for (int i = 0; i < schedule.length; i++) {
+            installments[i] = new LoanQuoteDTO.Installment(
+                LoanApplicationService.calculateDueDate(key.startMonth().atDay(1).plusMonths(i)),
+                AmortizationEngine.fromCents(schedule[i]));
+        }
+        LoanQuoteDTO quote = new LoanQuoteDTO(amount, interestRate, schedule.length,
+            LoanApplicationService.calculateLoanAmount(amortizationEngine.getType(), amount, interestRate, schedule),
+            List.of(installments));
+        return new ResponseEntity<>(quote, HttpStatus.OK);
+    }
+
+    private record QuoteKey(long amountCents, long ratePpm, NumberOfInstallments numberOfInstallments,
+                            YearMonth startMonth) {
+    }
+}
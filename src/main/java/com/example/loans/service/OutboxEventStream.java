@@ -0,0 +1,187 @@
+package com.example.loans.service;
+
+import com.example.loans.entity.OutboxEvent;
+import com.example.loans.repository.OutboxEventRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Server-sent event stream of the published outbox events. The id of each event is its published position,
+ * a consumer reconnecting with a Last-Event-ID header first gets the events it missed from the outbox table
+ * and then the live events, so nothing is lost as long as it reconnects within the retention of the outbox.
+ * <p>
+ * Publishing only puts the events on a bounded queue per subscriber, each queue is drained on its own virtual
+ * thread, so a slow consumer never holds up the relay or the other consumers. A consumer whose queue is full is
+ * completed and replays what it missed when it reconnects.
+ */
+@Service
+public class OutboxEventStream {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final long timeoutMillis;
+    private final int replayPageSize;
+    private final int bufferSize;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Autowired
+    public OutboxEventStream(OutboxEventRepository outboxEventRepository,
+                             @Value("${loan.outbox.stream-timeout:30m}") Duration timeout,
+                             @Value("${loan.outbox.batch-size:500}") int replayPageSize,
+                             @Value("${loan.outbox.stream-buffer:1000}") int bufferSize) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.timeoutMillis = timeout.toMillis();
+        this.replayPageSize = replayPageSize;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Subscribe to the published events
+     *
+     * @param lastEventId the position of the last event the consumer received, null to get only new events
+     * @param loanId only events of this loan are sent, null for all events
+     * @return the event stream
+     */
+    public SseEmitter subscribe(Long lastEventId, Long loanId) {
+        SseEmitter emitter = newEmitter(timeoutMillis);
+        long position = lastEventId == null ? outboxEventRepository.findLastPublishedPosition() : lastEventId;
+        Subscriber subscriber = new Subscriber(emitter, loanId, position, bufferSize);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> subscribers.remove(subscriber));
+
+        // the subscriber starts out draining, so live events are queued until the replay is sent,
+        // and the ones the replay already sent are skipped
+        subscribers.add(subscriber);
+        List<OutboxEvent> page;
+        do {
+            page = outboxEventRepository.findPublishedEventsAfter(subscriber.position, Limit.of(replayPageSize));
+        } while (subscriber.send(page) && page.size() == replayPageSize);
+        subscriber.drained();
+        return emitter;
+    }
+
+    /**
+     * Queue the events for the subscribers, it never waits for a consumer
+     *
+     * @param events the events ordered by published position
+     */
+    public void publish(List<OutboxEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.offer(events)) {
+                subscribers.remove(subscriber);
+            }
+        }
+    }
+
+    /**
+     * @return the number of connected consumers
+     */
+    int subscriberCount() {
+        return subscribers.size();
+    }
+
+    SseEmitter newEmitter(long timeoutMillis) {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    @PreDestroy
+    public void close() {
+        senders.shutdownNow();
+    }
+
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final Long loanId;
+        private final BlockingQueue<OutboxEvent> queue;
+        // only one thread drains the queue at a time, it owns the position
+        private final AtomicBoolean draining = new AtomicBoolean(true);
+        private volatile boolean closed;
+        private long position;
+
+        private Subscriber(SseEmitter emitter, Long loanId, long position, int bufferSize) {
+            this.emitter = emitter;
+            this.loanId = loanId;
+            this.position = position;
+            this.queue = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        private boolean offer(List<OutboxEvent> events) {
+            if (closed) {
+                return false;
+            }
+            for (OutboxEvent event : events) {
+                if ((loanId == null || loanId.equals(event.getLoanId())) && !queue.offer(event)) {
+                    // the consumer fell behind, it reconnects with the last id it received
+                    closed = true;
+                    senders.execute(emitter::complete);
+                    return false;
+                }
+            }
+            if (draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+            return true;
+        }
+
+        private void drain() {
+            List<OutboxEvent> events = new ArrayList<>();
+            while (!closed && queue.drainTo(events) > 0) {
+                send(events);
+                events.clear();
+            }
+            drained();
+        }
+
+        // a publish which found the subscriber draining after its last poll has to start the next drain
+        private void drained() {
+            draining.set(false);
+            if (!closed && !queue.isEmpty() && draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private boolean send(List<OutboxEvent> events) {
+            try {
+                for (OutboxEvent event : events) {
+                    if (event.getPublishedPosition() <= position) {
+                        continue;
+                    }
+                    if (loanId == null || loanId.equals(event.getLoanId())) {
+                        emitter.send(SseEmitter.event()
+                            .id(String.valueOf(event.getPublishedPosition()))
+                            .name(event.getEventType().name())
+                            .data(event.getPayload()));
+                    }
+                    position = event.getPublishedPosition();
+                }
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                // the consumer is gone, it reconnects with the last id it received
+                closed = true;
+                subscribers.remove(this);
+                emitter.completeWithError(e);
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.loans.service;
+
+import com.example.loans.entity.OutboxEvent;
+import com.example.loans.outbox.OutboxSink;
+import com.example.loans.repository.OutboxEventRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Publishes the outbox events in batches. Each batch is read in id order, numbered with the next published
+ * positions, handed to the {@link OutboxSink} and marked as published in one transaction, then pushed to the
+ * subscribers of {@link OutboxEventStream}.
+ * <p>
+ * Payments of a loan are serialized, so the events of a loan are committed, and published, in the order they
+ * happened. Events of different loans can be committed out of id order, the published position is the order
+ * consumers see. One relay runs at a time in an instance, running it on more instances needs a lock around it.
+ */
+@Service
+public class OutboxRelay {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final OutboxSink outboxSink;
+    private final OutboxEventStream outboxEventStream;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Duration retention;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Autowired
+    public OutboxRelay(OutboxEventRepository outboxEventRepository, OutboxSink outboxSink,
+                       OutboxEventStream outboxEventStream, PlatformTransactionManager transactionManager,
+                       @Value("${loan.outbox.batch-size:500}") int batchSize,
+                       @Value("${loan.outbox.retention:7d}") Duration retention) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.outboxSink = outboxSink;
+        this.outboxEventStream = outboxEventStream;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.retention = retention;
+    }
+
+    @Scheduled(fixedDelayString = "${loan.outbox.relay-interval:1s}")
+    public void scheduledRelay() {
+        relay();
+    }
+
+    /**
+     * Publish all the events which are not published yet
+     *
+     * @return the number of published events, -1 if the relay is already running
+     */
+    public long relay() {
+        if (!running.compareAndSet(false, true)) {
+            return -1;
+        }
+        try {
+            long published = 0;
+            List<OutboxEvent> batch;
+            do {
+                batch = transactionTemplate.execute(status -> publishBatch());
+                outboxEventStream.publish(batch);
+                published += batch.size();
+            } while (batch.size() == batchSize);
+            return published;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Delete the published events which are older than the retention, consumers can not replay them anymore
+     *
+     * @return the number of deleted events
+     */
+    @Scheduled(fixedDelayString = "${loan.outbox.purge-interval:1h}")
+    public int purgePublishedEvents() {
+        return transactionTemplate.execute(
+            status -> outboxEventRepository.deletePublishedEvents(LocalDateTime.now().minus(retention)));
+    }
+
+    private List<OutboxEvent> publishBatch() {
+        List<OutboxEvent> events = outboxEventRepository.findUnpublishedEvents(Limit.of(batchSize));
+        if (events.isEmpty()) {
+            return events;
+        }
+
+        long position = outboxEventRepository.findLastPublishedPosition();
+        for (OutboxEvent event : events) {
+            event.setPublishedPosition(++position);
+        }
+        try {
+            outboxSink.publish(events);
+        } catch (IOException e) {
+            // rolls back the positions, the batch is published again by the next run
+            throw new UncheckedIOException("Outbox events could not be published", e);
+        }
+        return events;
+    }
+}
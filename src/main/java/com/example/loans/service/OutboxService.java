@@ -0,0 +1,49 @@
+package com.example.loans.service;
+
+import com.example.loans.entity.OutboxEvent;
+import com.example.loans.enums.OutboxEventType;
+import com.example.loans.repository.OutboxEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Writes domain events to the outbox table in the transaction of the change they describe, so an event is
+ * published if and only if its change is committed. {@link OutboxRelay} publishes them afterwards.
+ */
+@Service
+public class OutboxService {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public OutboxService(OutboxEventRepository outboxEventRepository, ObjectMapper objectMapper) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Add an event to the outbox, it must be called in the transaction of the change
+     *
+     * @param eventType the event type
+     * @param loanId the loan id, null for customer events
+     * @param customerId the customer id
+     * @param payload the event fields, written as JSON
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void append(OutboxEventType eventType, Long loanId, Long customerId, Map<String, Object> payload) {
+        try {
+            outboxEventRepository.save(new OutboxEvent(null, eventType, loanId, customerId,
+                objectMapper.writeValueAsString(payload), LocalDateTime.now(), null));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Outbox event payload can not be written as JSON", e);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.loans.service;
+
+import com.example.loans.entity.JobCheckpoint;
+import com.example.loans.repository.CustomerExposureRepository;
+import com.example.loans.repository.JobCheckpointRepository;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Flags unpaid installments past their due date as overdue and charges a late fee of
+ * amount * daily rate * days overdue, recomputed on every run.
+ * <p>
+ * Loans are split into id ranges that are scanned in parallel. Each range is walked in chunks of loan ids,
+ * each chunk reads the overdue installments of its loans with one indexed range query and updates them with
+ * one JDBC batch. Every chunk commits together with the checkpoint of its range, so a restarted run on the
+ * same day continues after the last committed chunk.
+ */
+@Service
+@Timed("loan.overdue.scan")
+public class OverdueInstallmentScanner {
+
+    public static final String JOB_NAME = "overdue-installments";
+
+    private static final String SELECT_OVERDUE = "SELECT id, amount, due_date FROM loan_installments"
+        + " WHERE loan_id > ? AND loan_id <= ? AND is_paid = FALSE AND due_date < ?";
+    private static final String UPDATE_OVERDUE = "UPDATE loan_installments SET is_overdue = TRUE, late_fee = ?"
+        + " WHERE id = ? AND is_paid = FALSE";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JobCheckpointRepository jobCheckpointRepository;
+    private final CustomerExposureRepository customerExposureRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int parallelism;
+    private final int chunkLoans;
+    private final long lateFeeDailyRatePpm;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Autowired
+    public OverdueInstallmentScanner(JdbcTemplate jdbcTemplate, JobCheckpointRepository jobCheckpointRepository,
+                                     CustomerExposureRepository customerExposureRepository,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${loan.overdue.parallelism:4}") int parallelism,
+                                     @Value("${loan.overdue.chunk-loans:5000}") int chunkLoans,
+                                     @Value("${loan.overdue.late-fee-daily-rate:0.001}") BigDecimal lateFeeDailyRate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jobCheckpointRepository = jobCheckpointRepository;
+        this.customerExposureRepository = customerExposureRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.parallelism = parallelism;
+        this.chunkLoans = chunkLoans;
+        this.lateFeeDailyRatePpm = AmortizationEngine.toRatePpm(lateFeeDailyRate);
+    }
+
+    @Scheduled(cron = "${loan.overdue.cron:0 0 2 * * *}")
+    public void scheduledScan() {
+        scan(LocalDate.now());
+    }
+
+    /**
+     * Flag the installments due before the given day as overdue, or continue the run of that day
+     *
+     * @param today installments due before this day are overdue
+     * @return the number of installments flagged by this call, -1 if a scan is already running
+     */
+    public long scan(LocalDate today) {
+        if (!running.compareAndSet(false, true)) {
+            return -1;
+        }
+        try {
+            List<JobCheckpoint> checkpoints = jobCheckpointRepository.findCheckpointsByJobName(JOB_NAME);
+            if (checkpoints.isEmpty() || !today.equals(checkpoints.get(0).getRunDate())) {
+                checkpoints = plan(today);
+            }
+
+            List<Future<Long>> partitions = new ArrayList<>();
+            try (ExecutorService executor = Executors.newFixedThreadPool(parallelism)) {
+                for (JobCheckpoint checkpoint : checkpoints) {
+                    if (!checkpoint.getCompleted()) {
+                        partitions.add(executor.submit(() -> scanPartition(checkpoint, today)));
+                    }
+                }
+            }
+
+            long flagged = 0;
+            for (Future<Long> partition : partitions) {
+                flagged += partition.get();
+            }
+            return flagged;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Overdue scan interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Overdue scan failed, it continues from the last checkpoint", e.getCause());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private List<JobCheckpoint> plan(LocalDate today) {
+        return transactionTemplate.execute(status -> {
+            jobCheckpointRepository.deleteCheckpointsByJobName(JOB_NAME);
+            long[] loanIds = jdbcTemplate.queryForObject("SELECT MIN(id), MAX(id) FROM loans",
+                (rs, rowNum) -> new long[] {rs.getLong(1), rs.getLong(2)});
+            if (loanIds == null || loanIds[1] == 0) {
+                return List.of();
+            }
+
+            long rangeSize = (loanIds[1] - loanIds[0]) / parallelism + 1;
+            List<JobCheckpoint> checkpoints = new ArrayList<>(parallelism);
+            for (int i = 0; i < parallelism; i++) {
+                long rangeStart = loanIds[0] + i * rangeSize;
+                if (rangeStart > loanIds[1]) {
+                    break;
+                }
+                long rangeEnd = Math.min(rangeStart + rangeSize - 1, loanIds[1]);
+                checkpoints.add(new JobCheckpoint(JOB_NAME, i, today, rangeStart, rangeEnd, rangeStart - 1, false));
+            }
+            return jobCheckpointRepository.saveAll(checkpoints);
+        });
+    }
+
+    private long scanPartition(JobCheckpoint checkpoint, LocalDate today) {
+        long flagged = 0;
+        while (!checkpoint.getCompleted()) {
+            long afterId = checkpoint.getLastId();
+            long upToId = Math.min(afterId + chunkLoans, checkpoint.getRangeEnd());
+            flagged += transactionTemplate.execute(status -> {
+                int chunkFlagged = flagChunk(afterId, upToId, today);
+                if (chunkFlagged > 0) {
+                    customerExposureRepository.refreshOverdueAmounts(afterId, upToId);
+                }
+                checkpoint.setLastId(upToId);
+                checkpoint.setCompleted(upToId >= checkpoint.getRangeEnd());
+                jobCheckpointRepository.save(checkpoint);
+                return chunkFlagged;
+            });
+        }
+        return flagged;
+    }
+
+    private int flagChunk(long afterLoanId, long upToLoanId, LocalDate today) {
+        List<Object[]> updates = new ArrayList<>();
+        long todayEpochDay = today.toEpochDay();
+        jdbcTemplate.query(SELECT_OVERDUE, rs -> {
+            long daysOverdue = todayEpochDay - rs.getDate(3).toLocalDate().toEpochDay();
+            updates.add(new Object[] {lateFee(rs.getBigDecimal(2), daysOverdue), rs.getLong(1)});
+        }, afterLoanId, upToLoanId, Date.valueOf(today));
+        if (updates.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate(UPDATE_OVERDUE, updates);
+        return updates.size();
+    }
+
+    private BigDecimal lateFee(BigDecimal amount, long daysOverdue) {
+        // cents * ppm * days stays far below Long.MAX_VALUE for any realistic installment
+        long feeMicroCents = AmortizationEngine.toCents(amount) * lateFeeDailyRatePpm * daysOverdue;
+        return AmortizationEngine.fromCents((feeMicroCents + 500_000) / 1_000_000);
+    }
+}
@@ -0,0 +1,271 @@
+package com.example.loans.service;
+
+import com.example.loans.enums.PaymentAllocation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Allocates a payment over the unpaid installments of a loan in cents. It works on a snapshot of the schedule
+ * held in memory and only marks the installments it changes, so {@link LoanPaymentEngine} reads the schedule
+ * with one query and writes the changed rows with one JDBC batch, however many installments a payment reaches.
+ */
+@Service
+public class PaymentAllocationEngine {
+
+    private static final long RATE_SCALE = 1_000_000L;
+
+    private final long rewardDailyRatePpm;
+    private final long penaltyDailyRatePpm;
+
+    @Autowired
+    public PaymentAllocationEngine(
+        @Value("${loan.payment.early-payoff-reward-daily-rate:0.001}") BigDecimal rewardDailyRate,
+        @Value("${loan.overdue.late-fee-daily-rate:0.001}") BigDecimal penaltyDailyRate) {
+        this.rewardDailyRatePpm = AmortizationEngine.toRatePpm(rewardDailyRate);
+        this.penaltyDailyRatePpm = AmortizationEngine.toRatePpm(penaltyDailyRate);
+    }
+
+    /**
+     * Allocate a payment over the unpaid installments
+     *
+     * @param allocation how the payment is allocated
+     * @param schedule the unpaid installments in due date order
+     * @param paymentCents the payment amount in cents, nothing is allocated if it is not positive
+     * @param today the payment date
+     * @param windowEnd installments due on or after this date are not payable yet, payments reaching them are
+     *                  carried forward
+     * @return the allocation, the schedule is not changed
+     */
+    Allocation allocate(PaymentAllocation allocation, Schedule schedule, long paymentCents, LocalDate today,
+                        LocalDate windowEnd) {
+        Allocation result = new Allocation(schedule);
+        if (paymentCents <= 0) {
+            return result;
+        }
+        long windowEndDay = windowEnd.toEpochDay();
+        switch (allocation) {
+            case INSTALLMENTS -> payInstallments(result, paymentCents, windowEndDay);
+            case PARTIAL -> payInOrder(result, paymentCents, windowEndDay, schedule.lateFeeCents);
+            case PAYOFF -> {
+                long[] payoffFees = payoffFees(schedule, today.toEpochDay());
+                payInOrder(result, paymentCents, windowEndDay,
+                    payoffCents(schedule, payoffFees) <= paymentCents ? payoffFees : schedule.lateFeeCents);
+            }
+        }
+        return result;
+    }
+
+    private static void payInstallments(Allocation result, long paymentCents, long windowEndDay) {
+        Schedule schedule = result.schedule;
+        long remaining = paymentCents;
+        for (int i = 0; i < schedule.size; i++) {
+            long owed = schedule.amountCents[i] - schedule.paidCents[i];
+            if (schedule.dueDays[i] >= windowEndDay || owed > remaining) {
+                break;
+            }
+            result.pay(i, owed, true, 0, windowEndDay);
+            remaining -= owed;
+        }
+    }
+
+    private static void payInOrder(Allocation result, long paymentCents, long windowEndDay, long[] feeCents) {
+        Schedule schedule = result.schedule;
+        long remaining = paymentCents;
+        for (int i = 0; i < schedule.size; i++) {
+            // a partial payment made before a reward was given can already cover the discounted amount
+            long owed = Math.max(schedule.amountCents[i] + feeCents[i] - schedule.paidCents[i], 0);
+            if (owed > 0 && remaining == 0) {
+                break;
+            }
+            long paid = Math.min(remaining, owed);
+            result.pay(i, paid, paid == owed, feeCents[i], windowEndDay);
+            remaining -= paid;
+        }
+    }
+
+    private long[] payoffFees(Schedule schedule, long today) {
+        long[] fees = new long[schedule.size];
+        for (int i = 0; i < schedule.size; i++) {
+            long daysLate = today - schedule.dueDays[i];
+            if (daysLate > 0) {
+                fees[i] = dailyCharge(schedule.amountCents[i], penaltyDailyRatePpm, daysLate);
+            } else if (daysLate < 0) {
+                fees[i] = -Math.min(dailyCharge(schedule.amountCents[i], rewardDailyRatePpm, -daysLate),
+                    schedule.amountCents[i]);
+            }
+        }
+        return fees;
+    }
+
+    private static long payoffCents(Schedule schedule, long[] fees) {
+        long total = 0;
+        for (int i = 0; i < schedule.size; i++) {
+            total += Math.max(schedule.amountCents[i] + fees[i] - schedule.paidCents[i], 0);
+        }
+        return total;
+    }
+
+    private static long dailyCharge(long amountCents, long dailyRatePpm, long days) {
+        // cents * ppm * days stays far below Long.MAX_VALUE for any realistic installment
+        return (amountCents * dailyRatePpm * days + RATE_SCALE / 2) / RATE_SCALE;
+    }
+
+    /**
+     * Unpaid installments of a loan in due date order, as parallel arrays of cents and epoch days
+     */
+    static final class Schedule {
+
+        private long[] ids;
+        private long[] amountCents;
+        private long[] paidCents;
+        private long[] lateFeeCents;
+        private long[] dueDays;
+        private int size;
+
+        Schedule(int capacity) {
+            ids = new long[capacity];
+            amountCents = new long[capacity];
+            paidCents = new long[capacity];
+            lateFeeCents = new long[capacity];
+            dueDays = new long[capacity];
+        }
+
+        void add(long id, long amountCents, long paidCents, long lateFeeCents, LocalDate dueDate) {
+            if (size == ids.length) {
+                int capacity = Math.max(size * 2, 8);
+                ids = Arrays.copyOf(ids, capacity);
+                this.amountCents = Arrays.copyOf(this.amountCents, capacity);
+                this.paidCents = Arrays.copyOf(this.paidCents, capacity);
+                this.lateFeeCents = Arrays.copyOf(this.lateFeeCents, capacity);
+                dueDays = Arrays.copyOf(dueDays, capacity);
+            }
+            ids[size] = id;
+            this.amountCents[size] = amountCents;
+            this.paidCents[size] = paidCents;
+            this.lateFeeCents[size] = lateFeeCents;
+            dueDays[size] = dueDate.toEpochDay();
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long id(int i) {
+            return ids[i];
+        }
+
+        long amountCents(int i) {
+            return amountCents[i];
+        }
+
+        long paidCents(int i) {
+            return paidCents[i];
+        }
+
+        long lateFeeCents(int i) {
+            return lateFeeCents[i];
+        }
+
+        LocalDate dueDate(int i) {
+            return LocalDate.ofEpochDay(dueDays[i]);
+        }
+    }
+
+    /**
+     * New paid amounts and late fees of the installments a payment reached, with its totals
+     */
+    static final class Allocation {
+
+        private final Schedule schedule;
+        private final long[] paidCents;
+        private final long[] lateFeeCents;
+        private final boolean[] settled;
+        private final boolean[] changed;
+        private long spentCents;
+        private long settledAmountCents;
+        private long rewardCents;
+        private long penaltyCents;
+        private long carriedForwardCents;
+        private int settledCount;
+
+        private Allocation(Schedule schedule) {
+            this.schedule = schedule;
+            this.paidCents = Arrays.copyOf(schedule.paidCents, schedule.size);
+            this.lateFeeCents = Arrays.copyOf(schedule.lateFeeCents, schedule.size);
+            this.settled = new boolean[schedule.size];
+            this.changed = new boolean[schedule.size];
+        }
+
+        private void pay(int i, long cents, boolean settles, long feeCents, long windowEndDay) {
+            paidCents[i] += cents;
+            spentCents += cents;
+            changed[i] = true;
+            if (schedule.dueDays[i] >= windowEndDay) {
+                carriedForwardCents += cents;
+            }
+            if (!settles) {
+                return;
+            }
+            settled[i] = true;
+            settledCount++;
+            settledAmountCents += schedule.amountCents[i];
+            if (feeCents < 0) {
+                rewardCents -= feeCents;
+            } else if (feeCents > 0) {
+                penaltyCents += feeCents;
+                lateFeeCents[i] = feeCents;
+            }
+        }
+
+        boolean isChanged(int i) {
+            return changed[i];
+        }
+
+        boolean isSettled(int i) {
+            return settled[i];
+        }
+
+        long paidCents(int i) {
+            return paidCents[i];
+        }
+
+        long lateFeeCents(int i) {
+            return lateFeeCents[i];
+        }
+
+        long getSpentCents() {
+            return spentCents;
+        }
+
+        // amounts of the settled installments, before rewards and fees
+        long getSettledAmountCents() {
+            return settledAmountCents;
+        }
+
+        long getRewardCents() {
+            return rewardCents;
+        }
+
+        long getPenaltyCents() {
+            return penaltyCents;
+        }
+
+        long getCarriedForwardCents() {
+            return carriedForwardCents;
+        }
+
+        int getSettledCount() {
+            return settledCount;
+        }
+
+        boolean isPaidOff() {
+            return settledCount == schedule.size;
+        }
+    }
+}
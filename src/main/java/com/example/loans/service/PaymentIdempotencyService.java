@@ -0,0 +1,180 @@
+package com.example.loans.service;
+
+import com.example.loans.dto.LoanPaymentDTO;
+import com.example.loans.dto.LoanPaymentResultDTO;
+import com.example.loans.entity.PaymentIdempotencyKey;
+import com.example.loans.enums.PaymentAllocation;
+import com.example.loans.repository.PaymentIdempotencyKeyRepository;
+import com.example.loans.util.StripedLocks;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Makes loan payments with an Idempotency-Key header run once per key. The result of the payment is saved
+ * with the key in the transaction of the payment, and retries of the key get the saved result back.
+ * <p>
+ * Recent keys are kept in a bounded in-memory cache, so a retry costs one cache lookup. A key which is not in
+ * the cache takes its striped lock, so concurrent duplicates wait for the first one instead of paying again,
+ * and is then looked up in the database. The primary key of the table stops duplicates sent to different
+ * instances, the payment of the later one is rolled back and the saved result is returned.
+ */
+@Service
+public class PaymentIdempotencyService {
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final PaymentIdempotencyKeyRepository paymentIdempotencyKeyRepository;
+    private final LoanPaymentEngine loanPaymentEngine;
+    private final LoanPaymentLocks loanPaymentLocks;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration ttl;
+    private final StripedLocks locks;
+    private final Cache<String, PaymentIdempotencyKey> payments;
+
+    @Autowired
+    public PaymentIdempotencyService(PaymentIdempotencyKeyRepository paymentIdempotencyKeyRepository,
+                                     LoanPaymentEngine loanPaymentEngine, LoanPaymentLocks loanPaymentLocks,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${loan.idempotency.maximum-size:100000}") long maximumSize,
+                                     @Value("${loan.idempotency.ttl:24h}") Duration ttl,
+                                     @Value("${loan.idempotency.lock-stripes:1024}") int lockStripes) {
+        this.paymentIdempotencyKeyRepository = paymentIdempotencyKeyRepository;
+        this.loanPaymentEngine = loanPaymentEngine;
+        this.loanPaymentLocks = loanPaymentLocks;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.ttl = ttl;
+        this.locks = new StripedLocks(lockStripes);
+        this.payments = Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(ttl)
+            .build();
+    }
+
+    /**
+     * Pay the loan once for the idempotency key, retries of the key get the result of the first payment
+     *
+     * @param idempotencyKey the Idempotency-Key header
+     * @param loanPaymentDTO the payment
+     * @return the payment result, 400 if the key or the payment is incomplete, 422 if the key was used for
+     * a different payment
+     */
+    public ResponseEntity<LoanPaymentResultDTO> payLoan(String idempotencyKey, LoanPaymentDTO loanPaymentDTO) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH
+            || !LoanApplicationService.isComplete(loanPaymentDTO)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        PaymentIdempotencyKey payment = payments.getIfPresent(idempotencyKey);
+        if (payment == null) {
+            Lock lock = locks.get(idempotencyKey);
+            lock.lock();
+            try {
+                payment = payments.getIfPresent(idempotencyKey);
+                if (payment == null) {
+                    LocalDateTime expiredBefore = LocalDateTime.now().minus(ttl);
+                    payment = paymentIdempotencyKeyRepository.findById(idempotencyKey).orElse(null);
+                    if (payment == null || payment.getCreatedAt().isBefore(expiredBefore)) {
+                        payment = pay(idempotencyKey, loanPaymentDTO, payment == null ? null : expiredBefore);
+                    }
+                    payments.put(idempotencyKey, payment);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return toResponse(payment, loanPaymentDTO);
+    }
+
+    /**
+     * Delete the keys which are older than the time to live
+     *
+     * @return the number of deleted keys
+     */
+    @Scheduled(fixedDelayString = "${loan.idempotency.purge-interval:1h}")
+    public int purgeExpiredKeys() {
+        return transactionTemplate.execute(
+            status -> paymentIdempotencyKeyRepository.deleteExpiredKeys(LocalDateTime.now().minus(ttl)));
+    }
+
+    /**
+     * @param expiredBefore not null if an expired row of the key is deleted before the key is used again
+     */
+    private PaymentIdempotencyKey pay(String idempotencyKey, LoanPaymentDTO loanPaymentDTO,
+                                      LocalDateTime expiredBefore) {
+        try {
+            return loanPaymentLocks.withLoanLock(loanPaymentDTO.getLoanId(),
+                () -> transactionTemplate.execute(status -> payAndSave(idempotencyKey, loanPaymentDTO, expiredBefore)));
+        } catch (DataIntegrityViolationException e) {
+            // another instance paid with the same key first
+            return paymentIdempotencyKeyRepository.findById(idempotencyKey).orElseThrow(() -> e);
+        }
+    }
+
+    private PaymentIdempotencyKey payAndSave(String idempotencyKey, LoanPaymentDTO loanPaymentDTO,
+                                             LocalDateTime expiredBefore) {
+        if (expiredBefore != null) {
+            paymentIdempotencyKeyRepository.deleteExpiredKey(idempotencyKey, expiredBefore);
+        }
+        LoanPaymentResultDTO result = loanPaymentEngine.pay(loanPaymentDTO.getLoanId(),
+            loanPaymentDTO.getPaymentAmount(), allocationOf(loanPaymentDTO));
+        PaymentIdempotencyKey payment = toPayment(idempotencyKey, loanPaymentDTO, result);
+        // persisted and flushed here, so a duplicate key fails on the primary key and rolls the payment back
+        return paymentIdempotencyKeyRepository.saveAndFlush(payment);
+    }
+
+    /**
+     * @param result the result of the payment, null if the loan had nothing to pay
+     */
+    static PaymentIdempotencyKey toPayment(String idempotencyKey, LoanPaymentDTO loanPaymentDTO,
+                                           LoanPaymentResultDTO result) {
+        PaymentIdempotencyKey payment = new PaymentIdempotencyKey(idempotencyKey, loanPaymentDTO.getLoanId(),
+            loanPaymentDTO.getPaymentAmount(), allocationOf(loanPaymentDTO), LocalDateTime.now());
+        if (result != null) {
+            payment.setNumberOfInstallmentsPaid(result.getNumberOfInstallmentsPaid());
+            payment.setTotalAmountSpent(result.getTotalAmountSpent());
+            payment.setPaidCompletely(result.isPaidCompletely());
+            payment.setRewardAmount(result.getRewardAmount());
+            payment.setPenaltyAmount(result.getPenaltyAmount());
+            payment.setCarriedForwardAmount(result.getCarriedForwardAmount());
+        }
+        return payment;
+    }
+
+    private static ResponseEntity<LoanPaymentResultDTO> toResponse(PaymentIdempotencyKey payment,
+                                                                   LoanPaymentDTO loanPaymentDTO) {
+        if (!payment.getLoanId().equals(loanPaymentDTO.getLoanId())
+            || payment.getPaymentAmount().compareTo(loanPaymentDTO.getPaymentAmount()) != 0
+            || payment.getAllocation() != allocationOf(loanPaymentDTO)) {
+            return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+        if (payment.getNumberOfInstallmentsPaid() == null) {
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        }
+
+        LoanPaymentResultDTO loanPaymentResultDTO = new LoanPaymentResultDTO();
+        loanPaymentResultDTO.setNumberOfInstallmentsPaid(payment.getNumberOfInstallmentsPaid());
+        loanPaymentResultDTO.setTotalAmountSpent(payment.getTotalAmountSpent());
+        loanPaymentResultDTO.setPaidCompletely(payment.getPaidCompletely());
+        loanPaymentResultDTO.setRewardAmount(payment.getRewardAmount());
+        loanPaymentResultDTO.setPenaltyAmount(payment.getPenaltyAmount());
+        loanPaymentResultDTO.setCarriedForwardAmount(payment.getCarriedForwardAmount());
+        return new ResponseEntity<>(loanPaymentResultDTO, HttpStatus.OK);
+    }
+
+    private static PaymentAllocation allocationOf(LoanPaymentDTO loanPaymentDTO) {
+        return loanPaymentDTO.getAllocation() == null ? PaymentAllocation.INSTALLMENTS : loanPaymentDTO.getAllocation();
+    }
+}
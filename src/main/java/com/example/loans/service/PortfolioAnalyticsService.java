@@ -0,0 +1,349 @@
+package com.example.loans.service;
+
+import com.example.loans.dto.PortfolioSnapshotDTO;
+import com.example.loans.enums.NumberOfInstallments;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Aggregates the whole portfolio for risk reports: amounts by installment type, unpaid installments by due month
+ * and paid ratios.
+ * <p>
+ * Loans and installments are split into id ranges on a fork join pool, each range of at most partition-rows ids
+ * is streamed with one indexed range query into long cent accumulators, and the accumulators are merged when
+ * the ranges are joined. Memory is bounded by the accumulators and the fetch size, not by the number of rows.
+ * The last snapshot is kept for cache-ttl, 0 computes every request.
+ */
+@Service
+@Timed("loan.analytics")
+public class PortfolioAnalyticsService {
+
+    private static final String SELECT_ID_RANGES = "SELECT (SELECT MIN(id) FROM loans), (SELECT MAX(id) FROM loans),"
+        + " MIN(id), MAX(id), MIN(due_date), MAX(due_date) FROM loan_installments";
+    private static final String SELECT_LOANS = "SELECT number_of_installment, is_paid FROM loans"
+        + " WHERE id > ? AND id <= ?";
+    private static final String SELECT_INSTALLMENTS = "SELECT l.number_of_installment,"
+        + " CAST(li.amount * 100 AS BIGINT), CAST(COALESCE(li.paid_amount, 0) * 100 AS BIGINT), li.is_paid,"
+        + " CASE WHEN li.due_date < ? THEN 1 ELSE 0 END,"
+        + " EXTRACT(YEAR FROM li.due_date) * 12 + EXTRACT(MONTH FROM li.due_date) - 1"
+        + " FROM loan_installments li JOIN loans l ON l.id = li.loan_id WHERE li.id > ? AND li.id <= ?";
+
+    // installment types by ordinal, the last bucket holds loans with an unsupported number of installments
+    private static final NumberOfInstallments[] TYPES = NumberOfInstallments.values();
+    private static final int BUCKETS = TYPES.length + 1;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int parallelism;
+    private final long partitionRows;
+    private final Duration cacheTtl;
+    private volatile PortfolioSnapshotDTO lastSnapshot;
+    // the aggregation which is running, null if none is
+    private CompletableFuture<PortfolioSnapshotDTO> aggregation;
+
+    @Autowired
+    public PortfolioAnalyticsService(DataSource dataSource,
+                                     @Value("${loan.analytics.parallelism:4}") int parallelism,
+                                     @Value("${loan.analytics.partition-rows:100000}") long partitionRows,
+                                     @Value("${loan.analytics.fetch-size:1000}") int fetchSize,
+                                     @Value("${loan.analytics.cache-ttl:0s}") Duration cacheTtl) {
+        // its own template, the fetch size of the shared one is left alone
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.parallelism = parallelism;
+        this.partitionRows = partitionRows;
+        this.cacheTtl = cacheTtl;
+    }
+
+    @Scheduled(cron = "${loan.analytics.refresh-cron:-}")
+    public void scheduledRefresh() {
+        snapshot(true);
+    }
+
+    /**
+     * Get the cached snapshot if it is younger than the cache ttl, otherwise aggregate a new one. Concurrent
+     * callers share the aggregation which is already running instead of starting their own.
+     *
+     * @param refresh true to aggregate a new snapshot even if the cached one is still fresh
+     * @return the portfolio snapshot
+     */
+    public PortfolioSnapshotDTO snapshot(boolean refresh) {
+        PortfolioSnapshotDTO snapshot = lastSnapshot;
+        if (!refresh && isFresh(snapshot)) {
+            return snapshot;
+        }
+        CompletableFuture<PortfolioSnapshotDTO> running;
+        boolean owner;
+        synchronized (this) {
+            // a concurrent request may have aggregated it while this one waited
+            snapshot = lastSnapshot;
+            if (!refresh && isFresh(snapshot)) {
+                return snapshot;
+            }
+            owner = aggregation == null;
+            if (owner) {
+                aggregation = new CompletableFuture<>();
+            }
+            running = aggregation;
+        }
+        if (!owner) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        try {
+            snapshot = aggregate(LocalDate.now());
+            lastSnapshot = snapshot;
+            running.complete(snapshot);
+            return snapshot;
+        } catch (RuntimeException e) {
+            running.completeExceptionally(e);
+            throw e;
+        } finally {
+            synchronized (this) {
+                aggregation = null;
+            }
+        }
+    }
+
+    private boolean isFresh(PortfolioSnapshotDTO snapshot) {
+        return snapshot != null && !cacheTtl.isZero()
+            && snapshot.getCreatedAt().plus(cacheTtl).isAfter(LocalDateTime.now());
+    }
+
+    /**
+     * Aggregate the portfolio, installments due before the given day count as overdue
+     *
+     * @param today installments due before this day are overdue
+     * @return the portfolio snapshot
+     */
+    PortfolioSnapshotDTO aggregate(LocalDate today) {
+        LocalDateTime createdAt = LocalDateTime.now();
+        long[] ranges = jdbcTemplate.queryForObject(SELECT_ID_RANGES, (rs, rowNum) -> new long[] {
+            rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4),
+            rs.getDate(5) == null ? 0 : monthIndex(rs.getDate(5).toLocalDate()),
+            rs.getDate(6) == null ? 0 : monthIndex(rs.getDate(6).toLocalDate())});
+        if (ranges == null || ranges[1] == 0) {
+            return PortfolioAccumulator.empty().toSnapshot(createdAt);
+        }
+
+        int firstMonth = (int) ranges[4];
+        int months = (int) (ranges[5] - ranges[4]) + 1;
+        Date overdueBefore = Date.valueOf(today);
+        PortfolioAccumulator portfolio;
+        try (ForkJoinPool pool = new ForkJoinPool(parallelism)) {
+            portfolio = pool.invoke(new PartitionTask(false, ranges[0] - 1, ranges[1], firstMonth, months, null));
+            if (ranges[3] != 0) {
+                portfolio.merge(pool.invoke(
+                    new PartitionTask(true, ranges[2] - 1, ranges[3], firstMonth, months, overdueBefore)));
+            }
+        }
+        return portfolio.toSnapshot(createdAt);
+    }
+
+    private static int monthIndex(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    private static int bucket(int numberOfInstallments) {
+        NumberOfInstallments type = NumberOfInstallments.of(numberOfInstallments);
+        return type == null ? BUCKETS - 1 : type.ordinal();
+    }
+
+    /**
+     * Aggregates the rows with ids in (afterId, upToId], split in halves until a half is at most
+     * partition-rows ids wide.
+     */
+    private final class PartitionTask extends RecursiveTask<PortfolioAccumulator> {
+
+        private final boolean installments;
+        private final long afterId;
+        private final long upToId;
+        private final int firstMonth;
+        private final int months;
+        private final Date overdueBefore;
+
+        private PartitionTask(boolean installments, long afterId, long upToId, int firstMonth, int months,
+                              Date overdueBefore) {
+            this.installments = installments;
+            this.afterId = afterId;
+            this.upToId = upToId;
+            this.firstMonth = firstMonth;
+            this.months = months;
+            this.overdueBefore = overdueBefore;
+        }
+
+        @Override
+        protected PortfolioAccumulator compute() {
+            if (upToId - afterId > partitionRows) {
+                long middleId = afterId + (upToId - afterId) / 2;
+                PartitionTask left = new PartitionTask(installments, afterId, middleId, firstMonth, months,
+                    overdueBefore);
+                left.fork();
+                PortfolioAccumulator right = new PartitionTask(installments, middleId, upToId, firstMonth, months,
+                    overdueBefore).compute();
+                return right.merge(left.join());
+            }
+
+            PortfolioAccumulator accumulator = new PortfolioAccumulator(firstMonth, months);
+            if (installments) {
+                jdbcTemplate.query(SELECT_INSTALLMENTS, accumulator::addInstallment, overdueBefore, afterId, upToId);
+            } else {
+                jdbcTemplate.query(SELECT_LOANS, accumulator::addLoan, afterId, upToId);
+            }
+            return accumulator;
+        }
+    }
+
+    /**
+     * Counts and cent sums of one partition, indexed by installment type bucket and by due month
+     */
+    private static final class PortfolioAccumulator {
+
+        private final int firstMonth;
+        private final long[] loans = new long[BUCKETS];
+        private final long[] paidLoans = new long[BUCKETS];
+        private final long[] installments = new long[BUCKETS];
+        private final long[] paidInstallments = new long[BUCKETS];
+        private final long[] outstandingCents = new long[BUCKETS];
+        private final long[] overdueCents = new long[BUCKETS];
+        private final long[] dueInstallments;
+        private final long[] dueCents;
+        private long paidCents;
+
+        private PortfolioAccumulator(int firstMonth, int months) {
+            this.firstMonth = firstMonth;
+            this.dueInstallments = new long[months];
+            this.dueCents = new long[months];
+        }
+
+        private static PortfolioAccumulator empty() {
+            return new PortfolioAccumulator(0, 0);
+        }
+
+        private void addLoan(ResultSet rs) throws SQLException {
+            int bucket = bucket(rs.getInt(1));
+            loans[bucket]++;
+            if (rs.getBoolean(2)) {
+                paidLoans[bucket]++;
+            }
+        }
+
+        private void addInstallment(ResultSet rs) throws SQLException {
+            int bucket = bucket(rs.getInt(1));
+            long amountCents = rs.getLong(2);
+            long paidAmountCents = rs.getLong(3);
+            installments[bucket]++;
+            paidCents += paidAmountCents;
+            if (rs.getBoolean(4)) {
+                paidInstallments[bucket]++;
+                return;
+            }
+
+            // partially paid installments are outstanding by their unpaid part
+            long unpaidCents = amountCents - paidAmountCents;
+            outstandingCents[bucket] += unpaidCents;
+            if (rs.getInt(5) == 1) {
+                overdueCents[bucket] += unpaidCents;
+            }
+            // rows written while aggregating can be due outside the months read up front, they are left out
+            // of the due months but still counted in the totals
+            int month = rs.getInt(6) - firstMonth;
+            if (!rs.wasNull() && month >= 0 && month < dueInstallments.length) {
+                dueInstallments[month]++;
+                dueCents[month] += unpaidCents;
+            }
+        }
+
+        private PortfolioAccumulator merge(PortfolioAccumulator other) {
+            add(loans, other.loans);
+            add(paidLoans, other.paidLoans);
+            add(installments, other.installments);
+            add(paidInstallments, other.paidInstallments);
+            add(outstandingCents, other.outstandingCents);
+            add(overdueCents, other.overdueCents);
+            add(dueInstallments, other.dueInstallments);
+            add(dueCents, other.dueCents);
+            paidCents += other.paidCents;
+            return this;
+        }
+
+        private static void add(long[] sums, long[] values) {
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] += values[i];
+            }
+        }
+
+        private PortfolioSnapshotDTO toSnapshot(LocalDateTime createdAt) {
+            PortfolioSnapshotDTO snapshot = new PortfolioSnapshotDTO();
+            snapshot.setCreatedAt(createdAt);
+            List<PortfolioSnapshotDTO.InstallmentTypeDTO> types = new ArrayList<>(BUCKETS);
+            long outstanding = 0;
+            long overdue = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot.setLoanCount(snapshot.getLoanCount() + loans[i]);
+                snapshot.setPaidLoanCount(snapshot.getPaidLoanCount() + paidLoans[i]);
+                snapshot.setInstallmentCount(snapshot.getInstallmentCount() + installments[i]);
+                snapshot.setPaidInstallmentCount(snapshot.getPaidInstallmentCount() + paidInstallments[i]);
+                outstanding += outstandingCents[i];
+                overdue += overdueCents[i];
+                if (loans[i] == 0 && installments[i] == 0) {
+                    continue;
+                }
+
+                PortfolioSnapshotDTO.InstallmentTypeDTO type = new PortfolioSnapshotDTO.InstallmentTypeDTO();
+                // 0 for loans with an unsupported number of installments
+                type.setNumberOfInstallments(i < TYPES.length ? TYPES[i].getNumberOfInstallments() : 0);
+                type.setLoanCount(loans[i]);
+                type.setPaidLoanCount(paidLoans[i]);
+                type.setInstallmentCount(installments[i]);
+                type.setPaidInstallmentCount(paidInstallments[i]);
+                type.setOutstandingAmount(AmortizationEngine.fromCents(outstandingCents[i]));
+                type.setOverdueAmount(AmortizationEngine.fromCents(overdueCents[i]));
+                types.add(type);
+            }
+            snapshot.setByNumberOfInstallments(types);
+            snapshot.setPaidRatio(snapshot.getInstallmentCount() == 0 ? 0
+                : (double) snapshot.getPaidInstallmentCount() / snapshot.getInstallmentCount());
+            snapshot.setPaidAmount(AmortizationEngine.fromCents(paidCents));
+            snapshot.setOutstandingAmount(AmortizationEngine.fromCents(outstanding));
+            snapshot.setOverdueAmount(AmortizationEngine.fromCents(overdue));
+
+            List<PortfolioSnapshotDTO.DueMonthDTO> histogram = new ArrayList<>();
+            for (int i = 0; i < dueInstallments.length; i++) {
+                if (dueInstallments[i] == 0) {
+                    continue;
+                }
+                int monthIndex = firstMonth + i;
+                PortfolioSnapshotDTO.DueMonthDTO dueMonth = new PortfolioSnapshotDTO.DueMonthDTO();
+                dueMonth.setMonth(YearMonth.of(monthIndex / 12, monthIndex % 12 + 1).toString());
+                dueMonth.setInstallmentCount(dueInstallments[i]);
+                dueMonth.setAmount(AmortizationEngine.fromCents(dueCents[i]));
+                histogram.add(dueMonth);
+            }
+            snapshot.setDueDateHistogram(histogram);
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.loans.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Hands out ids of a database sequence in blocks, one sequence call per block, for rows inserted with JDBC.
+ * A block is the one the pooled optimizer of Hibernate takes for the same sequence value, (value - size, value],
+ * so ids allocated here never overlap the ids of entities saved with JPA. The block size must be the increment
+ * of the sequence and the allocation size of the entity.
+ */
+class SequenceIdAllocator {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String nextValueSql;
+    private final int blockSize;
+    private long nextId;
+    private long lastId;
+
+    SequenceIdAllocator(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory,
+                        String sequenceName, int blockSize) {
+        Dialect dialect = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+        this.jdbcTemplate = jdbcTemplate;
+        this.nextValueSql = dialect.getSequenceSupport().getSequenceNextValString(sequenceName);
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Allocate ids, the rest of the last block is kept for the next call
+     *
+     * @param count the number of ids
+     * @return the ids in ascending order
+     */
+    synchronized long[] allocate(int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            if (nextId > lastId) {
+                Long value = jdbcTemplate.queryForObject(nextValueSql, Long.class);
+                if (value == null) {
+                    throw new IllegalStateException("Sequence returned no value: " + nextValueSql);
+                }
+                // the first value of a new sequence is below the block size, Hibernate takes it as a block of one
+                nextId = Math.max(value - blockSize + 1, 1);
+                lastId = value;
+            }
+            ids[i] = nextId++;
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.loans.util;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed number of locks shared by any number of keys. Equal keys always get the same lock, different keys
+ * may share one, so memory stays bounded and a key never needs a lock to be created or removed.
+ */
+public class StripedLocks {
+
+    private final Lock[] locks;
+    private final int mask;
+
+    /**
+     * @param stripes the number of locks, rounded up to a power of two
+     */
+    public StripedLocks(int stripes) {
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.locks = new Lock[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return the index of the lock of the key
+     */
+    public int stripeOf(Object key) {
+        int hash = key.hashCode();
+        // spread the high bits, so keys differing only there do not all land on one lock
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * @param key the key
+     * @return the lock of the key
+     */
+    public Lock get(Object key) {
+        return locks[stripeOf(key)];
+    }
+
+    /**
+     * @param stripe the index of the lock
+     * @return the lock at the index
+     */
+    public Lock getAt(int stripe) {
+        return locks[stripe];
+    }
+
+    public int size() {
+        return locks.length;
+    }
+}
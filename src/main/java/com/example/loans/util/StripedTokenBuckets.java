@@ -0,0 +1,98 @@
+package com.example.loans.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed number of token buckets shared by any number of keys, like {@link StripedLocks}. Each bucket is one
+ * long, the time its next token is due (the generic cell rate algorithm), updated with compare and set, so taking
+ * a token neither locks nor allocates. Keys sharing a bucket share its rate, so there should be many more
+ * buckets than busy keys. The rate can be changed at any time, the buckets keep their state.
+ */
+public class StripedTokenBuckets {
+
+    private final AtomicLongArray nextTokenDue;
+    private final int mask;
+    private volatile long nanosPerToken;
+    private volatile long burstNanos;
+
+    /**
+     * @param stripes the number of buckets, rounded up to a power of two
+     * @param tokensPerSecond the rate tokens are added with, 0 for no limit
+     * @param burst the number of tokens a bucket holds
+     */
+    public StripedTokenBuckets(int stripes, double tokensPerSecond, int burst) {
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.nextTokenDue = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            // a new bucket is full
+            nextTokenDue.set(i, Long.MIN_VALUE);
+        }
+        setRate(tokensPerSecond, burst);
+    }
+
+    /**
+     * @param tokensPerSecond the rate tokens are added with, 0 for no limit
+     * @param burst the number of tokens a bucket holds
+     */
+    public void setRate(double tokensPerSecond, int burst) {
+        long nanos = tokensPerSecond <= 0 ? 0 : (long) (1_000_000_000d / tokensPerSecond);
+        this.burstNanos = nanos * (Math.max(burst, 1) - 1);
+        this.nanosPerToken = nanos;
+    }
+
+    public double getTokensPerSecond() {
+        long nanos = nanosPerToken;
+        return nanos == 0 ? 0 : 1_000_000_000d / nanos;
+    }
+
+    public int getBurst() {
+        long nanos = nanosPerToken;
+        return nanos == 0 ? 0 : (int) (burstNanos / nanos) + 1;
+    }
+
+    /**
+     * Take a token from the bucket of the key
+     *
+     * @param key the key
+     * @return true if the bucket had a token
+     */
+    public boolean tryAcquire(long key) {
+        return tryAcquireAt(stripeOf(Long.hashCode(key)), System.nanoTime());
+    }
+
+    /**
+     * Take a token from the bucket of the key
+     *
+     * @param key the key, its hash code should not allocate, like the cached one of a String
+     * @return true if the bucket had a token
+     */
+    public boolean tryAcquire(Object key) {
+        return tryAcquireAt(stripeOf(key.hashCode()), System.nanoTime());
+    }
+
+    boolean tryAcquireAt(int stripe, long now) {
+        long nanos = nanosPerToken;
+        if (nanos == 0) {
+            // no limit, the buckets may still hold tokens taken ahead of the rate they had before
+            return true;
+        }
+        long burst = burstNanos;
+        while (true) {
+            long due = nextTokenDue.get(stripe);
+            long start = Math.max(due, now);
+            // more than burst tokens have been taken ahead of the rate
+            if (start - now > burst) {
+                return false;
+            }
+            if (nextTokenDue.compareAndSet(stripe, due, start + nanos)) {
+                return true;
+            }
+        }
+    }
+
+    int stripeOf(int hash) {
+        // spread the high bits, so keys differing only there do not all land on one bucket
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,33 @@
+CREATE SEQUENCE customers_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE loans_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE loan_installments_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE customers (
+    id BIGINT NOT NULL,
+    name VARCHAR(255),
+    sur_name VARCHAR(255),
+    credit_limit NUMERIC(38, 2),
+    used_credit_limit NUMERIC(38, 2),
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE loans (
+    id BIGINT NOT NULL,
+    customer_id BIGINT,
+    loan_amount NUMERIC(38, 2),
+    number_of_installment INTEGER,
+    create_date TIMESTAMP(6),
+    is_paid BOOLEAN,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE loan_installments (
+    id BIGINT NOT NULL,
+    loan_id BIGINT,
+    amount NUMERIC(38, 2),
+    paid_amount NUMERIC(38, 2),
+    due_date DATE,
+    payment_date DATE,
+    is_paid BOOLEAN,
+    PRIMARY KEY (id)
+);
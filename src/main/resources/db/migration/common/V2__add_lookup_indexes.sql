@@ -0,0 +1,5 @@
+-- listLoansByCustomerId and the customer id lookups of payments
+CREATE INDEX idx_loans_customer_id ON loans (customer_id);
+
+-- installment lookups by loan, unpaid installments of a loan in due date order
+CREATE INDEX idx_loan_installments_loan_paid_due ON loan_installments (loan_id, is_paid, due_date);
@@ -0,0 +1,14 @@
+ALTER TABLE loan_installments ADD COLUMN is_overdue BOOLEAN DEFAULT FALSE NOT NULL;
+ALTER TABLE loan_installments ADD COLUMN late_fee NUMERIC(38, 2) DEFAULT 0 NOT NULL;
+
+-- progress of batch jobs, one row per partition of the current run
+CREATE TABLE job_checkpoints (
+    job_name VARCHAR(100) NOT NULL,
+    partition_no INTEGER NOT NULL,
+    run_date DATE NOT NULL,
+    range_start BIGINT NOT NULL,
+    range_end BIGINT NOT NULL,
+    last_id BIGINT NOT NULL,
+    completed BOOLEAN NOT NULL,
+    PRIMARY KEY (job_name, partition_no)
+);
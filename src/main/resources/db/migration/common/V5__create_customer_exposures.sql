@@ -0,0 +1,18 @@
+CREATE TABLE customer_exposures (
+    customer_id BIGINT NOT NULL,
+    open_loan_count INTEGER NOT NULL,
+    outstanding_amount NUMERIC(38, 2) NOT NULL,
+    next_due_date DATE,
+    overdue_amount NUMERIC(38, 2) NOT NULL,
+    PRIMARY KEY (customer_id)
+);
+
+INSERT INTO customer_exposures (customer_id, open_loan_count, outstanding_amount, next_due_date, overdue_amount)
+SELECT l.customer_id,
+    COUNT(DISTINCT CASE WHEN l.is_paid = FALSE THEN l.id END),
+    COALESCE(SUM(CASE WHEN li.is_paid = FALSE THEN li.amount END), 0),
+    MIN(CASE WHEN li.is_paid = FALSE THEN li.due_date END),
+    COALESCE(SUM(CASE WHEN li.is_paid = FALSE AND li.is_overdue = TRUE THEN li.amount + li.late_fee END), 0)
+FROM loans l
+JOIN loan_installments li ON li.loan_id = l.id
+GROUP BY l.customer_id;
@@ -0,0 +1,13 @@
+-- results of payments made with an Idempotency-Key header, replayed for retries of the same key
+CREATE TABLE payment_idempotency_keys (
+    idempotency_key VARCHAR(255) NOT NULL,
+    loan_id BIGINT NOT NULL,
+    payment_amount NUMERIC(38, 2) NOT NULL,
+    number_of_installments_paid INTEGER,
+    total_amount_spent NUMERIC(38, 2),
+    paid_completely BOOLEAN,
+    created_at TIMESTAMP NOT NULL,
+    PRIMARY KEY (idempotency_key)
+);
+
+CREATE INDEX idx_payment_idempotency_keys_created_at ON payment_idempotency_keys (created_at);
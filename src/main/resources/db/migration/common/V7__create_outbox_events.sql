@@ -0,0 +1,15 @@
+CREATE SEQUENCE outbox_events_seq START WITH 1 INCREMENT BY 50;
+
+-- domain events written in the transaction that caused them, published_position is set by the relay
+CREATE TABLE outbox_events (
+    id BIGINT NOT NULL,
+    event_type VARCHAR(50) NOT NULL,
+    loan_id BIGINT,
+    customer_id BIGINT,
+    payload VARCHAR(4000) NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL,
+    published_position BIGINT,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_outbox_events_published_position ON outbox_events (published_position, id);
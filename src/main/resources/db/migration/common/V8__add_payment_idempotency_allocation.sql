@@ -0,0 +1,5 @@
+-- the allocation is part of the payment a key was used for, keys saved before it were INSTALLMENTS payments
+ALTER TABLE payment_idempotency_keys ADD COLUMN allocation VARCHAR(20) DEFAULT 'INSTALLMENTS' NOT NULL;
+ALTER TABLE payment_idempotency_keys ADD COLUMN reward_amount NUMERIC(38, 2);
+ALTER TABLE payment_idempotency_keys ADD COLUMN penalty_amount NUMERIC(38, 2);
+ALTER TABLE payment_idempotency_keys ADD COLUMN carried_forward_amount NUMERIC(38, 2);
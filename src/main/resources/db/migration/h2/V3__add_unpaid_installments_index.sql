@@ -0,0 +1,2 @@
+-- H2 has no partial indexes, unpaid installment lookups use idx_loan_installments_loan_paid_due.
+-- This migration only keeps the version history the same as on databases that support them.
@@ -0,0 +1,2 @@
+-- only unpaid installments are looked up by payments, so the partial index stays small as loans are paid off
+CREATE INDEX idx_loan_installments_unpaid ON loan_installments (loan_id, due_date) WHERE is_paid = FALSE;
@@ -0,0 +1,77 @@
+package com.example.loans.datasource;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedDataSourceTest {
+
+    @Test
+    public void testConnectionIsGivenBackOnClose() throws Exception {
+        Connection connection = Mockito.mock(Connection.class);
+        DataSource dataSource = Mockito.mock(DataSource.class);
+        Mockito.when(dataSource.getConnection()).thenReturn(connection);
+        BoundedDataSource boundedDataSource = new BoundedDataSource(dataSource, 1, 0, Duration.ofMillis(10));
+
+        Connection first = boundedDataSource.getConnection();
+        assertEquals(0, boundedDataSource.getAvailableConnections());
+        first.close();
+        first.close();
+
+        assertEquals(1, boundedDataSource.getAvailableConnections());
+        Mockito.verify(connection, Mockito.times(2)).close();
+    }
+
+    @Test
+    public void testConnectionIsEqualOnlyToItself() throws Exception {
+        Connection connection = Mockito.mock(Connection.class);
+        Mockito.when(connection.unwrap(Runnable.class)).thenReturn(() -> { });
+        Mockito.when(connection.isWrapperFor(Runnable.class)).thenReturn(true);
+        DataSource dataSource = Mockito.mock(DataSource.class);
+        Mockito.when(dataSource.getConnection()).thenReturn(connection);
+        BoundedDataSource boundedDataSource = new BoundedDataSource(dataSource, 1, 0, Duration.ofMillis(10));
+
+        try (Connection bounded = boundedDataSource.getConnection()) {
+            assertEquals(bounded, bounded);
+            assertNotEquals(bounded, connection);
+            assertEquals(System.identityHashCode(bounded), bounded.hashCode());
+            // the wrapper answers for itself and leaves the rest to the wrapped connection
+            assertSame(bounded, bounded.unwrap(Connection.class));
+            assertTrue(bounded.isWrapperFor(Runnable.class));
+            assertNotNull(bounded.unwrap(Runnable.class));
+        }
+    }
+
+    @Test
+    public void testCallersWaitOnlyUpToTheLimit() throws Exception {
+        DataSource dataSource = Mockito.mock(DataSource.class);
+        Mockito.when(dataSource.getConnection()).thenReturn(Mockito.mock(Connection.class));
+        BoundedDataSource boundedDataSource = new BoundedDataSource(dataSource, 1, 0, Duration.ofSeconds(10));
+
+        Connection connection = boundedDataSource.getConnection();
+        long start = System.nanoTime();
+        assertThrows(SQLTransientConnectionException.class, boundedDataSource::getConnection);
+        // no waiting is allowed, so the second caller fails without waiting for the timeout
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+        assertEquals(0, boundedDataSource.getWaiting());
+
+        connection.close();
+        boundedDataSource.getConnection().close();
+    }
+
+    @Test
+    public void testPermitIsGivenBackWhenPoolFails() throws Exception {
+        DataSource dataSource = Mockito.mock(DataSource.class);
+        Mockito.when(dataSource.getConnection()).thenThrow(new SQLTransientConnectionException("pool timeout"));
+        BoundedDataSource boundedDataSource = new BoundedDataSource(dataSource, 1, 1, Duration.ofMillis(10));
+
+        assertThrows(SQLTransientConnectionException.class, boundedDataSource::getConnection);
+        assertEquals(1, boundedDataSource.getAvailableConnections());
+    }
+}
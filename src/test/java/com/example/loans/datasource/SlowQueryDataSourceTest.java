@@ -0,0 +1,62 @@
+package com.example.loans.datasource;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlowQueryDataSourceTest {
+
+    @Test
+    public void testOnlyStatementsOverTheThresholdAreCounted() throws Exception {
+        PreparedStatement preparedStatement = Mockito.mock(PreparedStatement.class);
+        Mockito.when(preparedStatement.executeUpdate()).thenAnswer(invocation -> {
+            Thread.sleep(30);
+            return 1;
+        });
+        Statement statement = Mockito.mock(Statement.class);
+        Connection connection = Mockito.mock(Connection.class);
+        Mockito.when(connection.prepareStatement("UPDATE loans SET is_paid = TRUE")).thenReturn(preparedStatement);
+        Mockito.when(connection.createStatement()).thenReturn(statement);
+        DataSource dataSource = Mockito.mock(DataSource.class);
+        Mockito.when(dataSource.getConnection()).thenReturn(connection);
+        SlowQueryDataSource slowQueryDataSource = new SlowQueryDataSource(dataSource, Duration.ofMillis(20), 0);
+
+        try (Connection timed = slowQueryDataSource.getConnection()) {
+            PreparedStatement slow = timed.prepareStatement("UPDATE loans SET is_paid = TRUE");
+            assertEquals(1, slow.executeUpdate());
+            timed.createStatement().execute("SELECT 1");
+            assertEquals(slow, slow);
+            assertNotEquals(slow, preparedStatement);
+        }
+
+        assertEquals(1, slowQueryDataSource.getSlowQueries());
+        Mockito.verify(statement).execute("SELECT 1");
+        Mockito.verify(connection).close();
+    }
+
+    @Test
+    public void testConnectionIsEqualOnlyToItself() throws Exception {
+        Connection connection = Mockito.mock(Connection.class);
+        Mockito.when(connection.prepareStatement("SELECT 1")).thenReturn(Mockito.mock(PreparedStatement.class));
+        DataSource dataSource = Mockito.mock(DataSource.class);
+        Mockito.when(dataSource.getConnection()).thenReturn(connection);
+        SlowQueryDataSource slowQueryDataSource = new SlowQueryDataSource(dataSource, Duration.ofMillis(20), 0);
+
+        Connection timed = slowQueryDataSource.getConnection();
+        PreparedStatement statement = timed.prepareStatement("SELECT 1");
+
+        assertEquals(timed, timed);
+        assertNotEquals(timed, connection);
+        assertSame(timed, statement.getConnection());
+        assertSame(statement, statement.unwrap(PreparedStatement.class));
+        assertTrue(timed.isWrapperFor(Connection.class));
+        assertSame(timed, timed.unwrap(Connection.class));
+    }
+}
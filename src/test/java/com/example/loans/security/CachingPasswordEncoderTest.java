@@ -0,0 +1,42 @@
+package com.example.loans.security;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingPasswordEncoderTest {
+
+    @Test
+    public void testVerifiedCredentialsAreCached() {
+        PasswordEncoder delegate = Mockito.mock(PasswordEncoder.class);
+        Mockito.when(delegate.matches("password", "{bcrypt}old")).thenReturn(true);
+        CachingPasswordEncoder passwordEncoder = new CachingPasswordEncoder(delegate, 10, Duration.ofMinutes(5));
+
+        assertTrue(passwordEncoder.matches("password", "{bcrypt}old"));
+        assertTrue(passwordEncoder.matches("password", "{bcrypt}old"));
+        assertFalse(passwordEncoder.matches("wrong", "{bcrypt}old"));
+        assertFalse(passwordEncoder.matches("wrong", "{bcrypt}old"));
+
+        Mockito.verify(delegate, Mockito.times(1)).matches("password", "{bcrypt}old");
+        // failed verifications are checked every time
+        Mockito.verify(delegate, Mockito.times(2)).matches("wrong", "{bcrypt}old");
+    }
+
+    @Test
+    public void testChangedPasswordIsVerifiedAgain() {
+        PasswordEncoder delegate = Mockito.mock(PasswordEncoder.class);
+        Mockito.when(delegate.matches("password", "{bcrypt}old")).thenReturn(true);
+        CachingPasswordEncoder passwordEncoder = new CachingPasswordEncoder(delegate, 10, Duration.ofMinutes(5));
+        assertTrue(passwordEncoder.matches("password", "{bcrypt}old"));
+
+        assertFalse(passwordEncoder.matches("password", "{bcrypt}new"));
+
+        passwordEncoder.invalidateAll();
+        assertTrue(passwordEncoder.matches("password", "{bcrypt}old"));
+        Mockito.verify(delegate, Mockito.times(2)).matches("password", "{bcrypt}old");
+    }
+}
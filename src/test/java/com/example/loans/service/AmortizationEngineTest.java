@@ -0,0 +1,67 @@
+package com.example.loans.service;
+
+import com.example.loans.enums.AmortizationType;
+import com.example.loans.enums.NumberOfInstallments;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AmortizationEngineTest {
+
+    private final AmortizationEngine amortizationEngine = new AmortizationEngine(AmortizationType.FLAT);
+
+    @Test
+    public void testFlatScheduleCarriesRemainder(){
+        long[] schedule = amortizationEngine.schedule(AmortizationType.FLAT,
+            AmortizationEngine.toCents(new BigDecimal("1000.00")),
+            AmortizationEngine.toRatePpm(new BigDecimal("0.1")),
+            NumberOfInstallments.NINE);
+
+        assertEquals(9, schedule.length);
+        assertEquals(110000, Arrays.stream(schedule).sum());
+        assertEquals(12222, schedule[0]);
+        assertEquals(12223, schedule[8]);
+    }
+
+    @Test
+    public void testFlatScheduleWithEqualInstallments(){
+        long[] schedule = amortizationEngine.schedule(AmortizationType.FLAT,
+            AmortizationEngine.toCents(new BigDecimal(10000)),
+            AmortizationEngine.toRatePpm(new BigDecimal("0.5")),
+            NumberOfInstallments.SIX);
+
+        assertTrue(Arrays.stream(schedule).allMatch(amount -> amount == 250000));
+    }
+
+    @Test
+    public void testAnnuityScheduleHasLevelPayments(){
+        long[] schedule = amortizationEngine.schedule(AmortizationType.ANNUITY,
+            AmortizationEngine.toCents(new BigDecimal(10000)),
+            AmortizationEngine.toRatePpm(new BigDecimal("0.12")),
+            NumberOfInstallments.TWELVE);
+
+        // 10000 at 1% monthly for 12 months is 888.49 per month
+        for (int i = 0; i < schedule.length - 1; i++) {
+            assertEquals(88849, schedule[i]);
+        }
+        assertTrue(Math.abs(schedule[11] - 88849) <= 12);
+    }
+
+    @Test
+    public void testDecliningBalanceScheduleDecreases(){
+        long[] schedule = amortizationEngine.schedule(AmortizationType.DECLINING_BALANCE,
+            AmortizationEngine.toCents(new BigDecimal(12000)),
+            AmortizationEngine.toRatePpm(new BigDecimal("0.12")),
+            NumberOfInstallments.TWELVE);
+
+        // 1000 principal each month plus 1% interest on the remaining balance
+        assertEquals(112000, schedule[0]);
+        assertEquals(101000, schedule[11]);
+        for (int i = 1; i < schedule.length; i++) {
+            assertTrue(schedule[i] < schedule[i - 1]);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.loans.service;
+
+import com.example.loans.dto.LoanCreationResultDTO;
+import com.example.loans.entity.Customer;
+import com.example.loans.entity.CustomerExposure;
+import com.example.loans.entity.Loan;
+import com.example.loans.enums.AmortizationType;
+import com.example.loans.enums.LoanRejection;
+import com.example.loans.enums.OutboxEventType;
+import com.example.loans.repository.CustomerExposureRepository;
+import com.example.loans.repository.CustomerRepository;
+import com.example.loans.repository.LoanInstallmentRepository;
+import com.example.loans.repository.LoanRepository;
+import com.example.loans.repository.OutboxEventRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalAnswers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class BulkLoanServiceTest {
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private LoanInstallmentRepository loanInstallmentRepository;
+
+    @Autowired
+    private CustomerExposureRepository customerExposureRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private CustomerCache customerCache;
+
+    private OutboxService outboxService;
+
+    @BeforeEach
+    public void setUp(){
+        customerCache = new CustomerCache(customerRepository, 100, Duration.ofMinutes(5));
+        outboxService = new OutboxService(outboxEventRepository, objectMapper);
+    }
+
+    @AfterEach
+    public void tearDown(){
+        outboxEventRepository.deleteAll();
+        customerExposureRepository.deleteAll();
+        loanInstallmentRepository.deleteAll();
+        loanRepository.deleteAll();
+        customerRepository.deleteAll();
+    }
+
+    @Test
+    public void testCreateLoansReportsEachRow() throws Exception {
+        Long customerId = createCustomer(new BigDecimal(10000));
+        String loans = loan(customerId, 1000, "0.2", 12)
+            + loan(-1L, 1000, "0.2", 12)
+            + loan(customerId, 1000, "0.2", 7)
+            + loan(customerId, 1000, "0.9", 12)
+            + loan(customerId, 2000, "0.1", 6)
+            + loan(customerId, 8000, "0.1", 6);
+
+        List<LoanCreationResultDTO> results = createLoans(loans, 1000);
+
+        assertEquals(6, results.size());
+        assertNotNull(results.get(0).getLoanId());
+        assertEquals(0, new BigDecimal(1200).compareTo(results.get(0).getLoanAmount()));
+        assertEquals(LoanRejection.CUSTOMER_NOT_FOUND.getReason(), results.get(1).getRejection());
+        assertEquals(LoanRejection.INSTALLMENT_TYPE.getReason(), results.get(2).getRejection());
+        assertEquals(LoanRejection.INTEREST_RATE.getReason(), results.get(3).getRejection());
+        assertNotNull(results.get(4).getLoanId());
+        // 8000 is within the limit read with the chunk, but not after the two loans before it
+        assertEquals(LoanRejection.CREDIT_LIMIT.getReason(), results.get(5).getRejection());
+        assertTrue(results.get(5).getMessage().contains("Customer credit limit is not enough"));
+
+        assertEquals(12, loanInstallmentRepository.findInstallmentsByLoanId(results.get(0).getLoanId()).size());
+        assertEquals(6, loanInstallmentRepository.findInstallmentsByLoanId(results.get(4).getLoanId()).size());
+        assertEquals(0, new BigDecimal(7000).compareTo(customerRepository.findById(customerId).get().getCreditLimit()));
+        CustomerExposure exposure = customerExposureRepository.findById(customerId).get();
+        assertEquals(2, exposure.getOpenLoanCount());
+        assertEquals(0, new BigDecimal(3400).compareTo(exposure.getOutstandingAmount()));
+        assertEquals(2, outboxEventRepository.findAll().stream()
+            .filter(event -> event.getEventType() == OutboxEventType.LOAN_CREATED).count());
+    }
+
+    @Test
+    public void testLoansAreReservedOneByOneWhenTheLimitChangedAfterTheChunkReadIt() throws Exception {
+        Long customerId = createCustomer(new BigDecimal(10000));
+        // another request reserves 4000 of the limit right after the chunk read the customer
+        CustomerRepository racingRepository = Mockito.mock(CustomerRepository.class,
+            AdditionalAnswers.delegatesTo(customerRepository));
+        Mockito.doAnswer(invocation -> {
+            Object customers = customerRepository.findAllById(invocation.getArgument(0));
+            jdbcTemplate.update("UPDATE customers SET credit_limit = credit_limit - 4000 WHERE id = ?", customerId);
+            return customers;
+        }).when(racingRepository).findAllById(Mockito.any());
+        String loans = loan(customerId, 4000, "0.2", 12)
+            + loan(customerId, 3000, "0.2", 12)
+            + loan(customerId, 2000, "0.2", 12);
+
+        List<LoanCreationResultDTO> results = createLoans(racingRepository, loans, 1000);
+
+        // the batched reservation of 9000 fails, 4000 and 2000 still fit in the 6000 left
+        assertNotNull(results.get(0).getLoanId());
+        assertEquals(LoanRejection.CREDIT_LIMIT.getReason(), results.get(1).getRejection());
+        assertNotNull(results.get(2).getLoanId());
+        assertEquals(0, BigDecimal.ZERO.compareTo(customerRepository.findById(customerId).get().getCreditLimit()));
+        assertEquals(2, loanRepository.count());
+    }
+
+    @Test
+    public void testBulkIdsDoNotOverlapWithSavedLoans() throws Exception {
+        Long customerId = createCustomer(new BigDecimal(1000000));
+        Set<Long> loanIds = new HashSet<>();
+        loanIds.add(saveLoan(customerId));
+        StringBuilder loans = new StringBuilder("[");
+        for (int i = 0; i < 120; i++) {
+            loans.append(i == 0 ? "" : ",").append(loan(customerId, 100, "0.2", 6).trim());
+        }
+        loans.append("]");
+
+        for (LoanCreationResultDTO result : createLoans(loans.toString(), 25)) {
+            assertTrue(loanIds.add(result.getLoanId()));
+        }
+        for (int i = 0; i < 60; i++) {
+            assertTrue(loanIds.add(saveLoan(customerId)));
+        }
+
+        assertEquals(181, loanRepository.count());
+        assertEquals(720, loanInstallmentRepository.count());
+    }
+
+    private List<LoanCreationResultDTO> createLoans(String loans, int chunkSize) throws Exception {
+        return createLoans(customerRepository, loans, chunkSize);
+    }
+
+    private List<LoanCreationResultDTO> createLoans(CustomerRepository customerRepository, String loans,
+                                                    int chunkSize) throws Exception {
+        BulkLoanService bulkLoanService = new BulkLoanService(customerRepository, customerCache, outboxService,
+            new AmortizationEngine(AmortizationType.FLAT),
+            new LoanMetrics(new SimpleMeterRegistry(), loanInstallmentRepository), jdbcTemplate, entityManager,
+            transactionManager, objectMapper, chunkSize, 2);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        bulkLoanService.createLoans(new ByteArrayInputStream(loans.getBytes(StandardCharsets.UTF_8)), output);
+        List<LoanCreationResultDTO> results = new ArrayList<>();
+        for (String line : output.toString(StandardCharsets.UTF_8).split("\n")) {
+            results.add(objectMapper.readValue(line, LoanCreationResultDTO.class));
+        }
+        return results;
+    }
+
+    private static String loan(Long customerId, int amount, String interestRate, int numberOfInstallments) {
+        return "{\"customerId\":" + customerId + ",\"amount\":" + amount + ",\"interestRate\":" + interestRate
+            + ",\"numberOfInstallments\":" + numberOfInstallments + "}\n";
+    }
+
+    private Long createCustomer(BigDecimal creditLimit) {
+        Customer customer = new Customer();
+        customer.setCreditLimit(creditLimit);
+        customer.setUsedCreditLimit(BigDecimal.ZERO);
+        customer.setName("Orhan");
+        customer.setSurName("Senturk");
+        return customerRepository.save(customer).getId();
+    }
+
+    private Long saveLoan(Long customerId) {
+        Loan loan = new Loan();
+        loan.setCustomerId(customerId);
+        loan.setNumberOfInstallment(6);
+        loan.setLoanAmount(new BigDecimal(600));
+        loan.setIsPaid(Boolean.FALSE);
+        loan.setCreateDate(new Date());
+        return loanRepository.save(loan).getId();
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.loans.service;
+
+import com.example.loans.dto.LoanPaymentResultDTO;
+import com.example.loans.repository.CustomerExposureRepository;
+import com.example.loans.repository.CustomerRepository;
+import com.example.loans.repository.LoanInstallmentRepository;
+import com.example.loans.repository.LoanRepository;
+import com.example.loans.repository.OutboxEventRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import(LoanFixtures.class)
+class BulkPaymentServiceTest {
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private LoanInstallmentRepository loanInstallmentRepository;
+
+    @Autowired
+    private LoanFixtures loanFixtures;
+
+    @Autowired
+    private CustomerExposureRepository customerExposureRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private LoanPaymentEngine loanPaymentEngine;
+
+    @BeforeEach
+    public void setUp(){
+        OutboxService outboxService = new OutboxService(outboxEventRepository, objectMapper);
+        loanPaymentEngine = new LoanPaymentEngine(loanRepository,
+            new CreditLimitService(customerRepository, new CustomerCache(customerRepository, 100, Duration.ofMinutes(5)),
+                outboxService),
+            new CustomerExposureService(customerExposureRepository, jdbcTemplate, transactionManager, 1, 1000),
+            outboxService, new PaymentAllocationEngine(new BigDecimal("0.001"), new BigDecimal("0.001")), jdbcTemplate);
+    }
+
+    @Test
+    public void testPayLoansFromNdjson() throws Exception {
+        Long loanId = createLoan();
+        String payments = "{\"loanId\":" + loanId + ",\"paymentAmount\":2500}\n"
+            + "{\"loanId\":-1,\"paymentAmount\":2500}\n"
+            + "{\"loanId\":" + loanId + ",\"paymentAmount\":3000}\n";
+
+        List<LoanPaymentResultDTO> results = payLoans(payments, 500);
+
+        assertEquals(3, results.size());
+        assertEquals(1, results.get(0).getNumberOfInstallmentsPaid());
+        assertEquals(0, results.get(1).getNumberOfInstallmentsPaid());
+        assertEquals(1, results.get(2).getNumberOfInstallmentsPaid());
+        assertThat(new BigDecimal(2500), Matchers.comparesEqualTo(results.get(2).getTotalAmountSpent()));
+        assertEquals(4, loanInstallmentRepository.findUnpaidInstallmentsByLoanId(loanId).size());
+    }
+
+    @Test
+    public void testPayLoansFromJsonArrayInChunks() throws Exception {
+        Long loanId = createLoan();
+        String payments = "[{\"loanId\":" + loanId + ",\"paymentAmount\":2500},"
+            + "{\"loanId\":" + loanId + ",\"paymentAmount\":2500},"
+            + "{\"loanId\":" + loanId + ",\"paymentAmount\":2500}]";
+
+        List<LoanPaymentResultDTO> results = payLoans(payments, 2);
+
+        assertEquals(3, results.size());
+        assertEquals(1, results.get(0).getNumberOfInstallmentsPaid());
+        assertEquals(1, results.get(1).getNumberOfInstallmentsPaid());
+        // only the installments of the next 2 months can be paid
+        assertEquals(0, results.get(2).getNumberOfInstallmentsPaid());
+    }
+
+    @Test
+    public void testChunkLocksLoansInGroups() throws Exception {
+        Long firstLoanId = createLoan();
+        Long secondLoanId = createLoan();
+        Long thirdLoanId = createLoan();
+        List<Integer> groupSizes = new ArrayList<>();
+        LoanPaymentLocks loanPaymentLocks = new LoanPaymentLocks(16) {
+
+            @Override
+            public <T> T withLoanLocks(Collection<Long> loanIds, Supplier<T> action) {
+                groupSizes.add(loanIds.size());
+                return super.withLoanLocks(loanIds, action);
+            }
+        };
+        String payments = "{\"loanId\":" + thirdLoanId + ",\"paymentAmount\":2500}\n"
+            + "{\"loanId\":" + firstLoanId + ",\"paymentAmount\":2500}\n"
+            + "{\"loanId\":" + secondLoanId + ",\"paymentAmount\":2500}\n"
+            + "{\"loanId\":" + firstLoanId + ",\"paymentAmount\":2500}\n";
+
+        List<LoanPaymentResultDTO> results = payLoans(payments, 500, 2, loanPaymentLocks);
+
+        assertEquals(List.of(2, 1), groupSizes);
+        for (LoanPaymentResultDTO result : results) {
+            assertEquals(1, result.getNumberOfInstallmentsPaid());
+        }
+        assertEquals(4, loanInstallmentRepository.findUnpaidInstallmentsByLoanId(firstLoanId).size());
+    }
+
+    private List<LoanPaymentResultDTO> payLoans(String payments, int chunkSize) throws Exception {
+        return payLoans(payments, chunkSize, 16, new LoanPaymentLocks(16));
+    }
+
+    private List<LoanPaymentResultDTO> payLoans(String payments, int chunkSize, int lockGroupSize,
+                                                LoanPaymentLocks loanPaymentLocks) throws Exception {
+        BulkPaymentService bulkPaymentService = new BulkPaymentService(loanPaymentEngine, loanPaymentLocks,
+            transactionManager, objectMapper, chunkSize, lockGroupSize);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        bulkPaymentService.payLoans(new ByteArrayInputStream(payments.getBytes(StandardCharsets.UTF_8)), output);
+
+        List<LoanPaymentResultDTO> results = new ArrayList<>();
+        for (String line : output.toString(StandardCharsets.UTF_8).split("\n")) {
+            results.add(objectMapper.readValue(line, LoanPaymentResultDTO.class));
+        }
+        return results;
+    }
+
+    private Long createLoan() {
+        return loanFixtures.createLoan(1L, new BigDecimal(2500),
+            LoanFixtures.monthly(LocalDate.now().with(TemporalAdjusters.firstDayOfNextMonth()), 6));
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.loans.service;
+
+import com.example.loans.entity.Customer;
+import com.example.loans.repository.CustomerRepository;
+import com.example.loans.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({CreditLimitService.class, CustomerCache.class, OutboxService.class, JacksonAutoConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CreditLimitServiceTest {
+
+    private static final int THREADS = 32;
+    private static final int RESERVATIONS_PER_THREAD = 100;
+
+    @Autowired
+    private CreditLimitService creditLimitService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private CustomerCache customerCache;
+
+    @AfterEach
+    public void tearDown(){
+        outboxEventRepository.deleteAll();
+        customerRepository.deleteAll();
+    }
+
+    @Test
+    public void testConcurrentReservationsNeverOverdraw() throws Exception {
+        Customer customer = new Customer();
+        customer.setCreditLimit(new BigDecimal(10000));
+        customer.setName("Orhan");
+        customer.setSurName("Senturk");
+        customer.setUsedCreditLimit(new BigDecimal(0));
+        Long customerId = customerRepository.save(customer).getId();
+
+        BigDecimal amount = new BigDecimal(13);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                int reserved = 0;
+                for (int j = 0; j < RESERVATIONS_PER_THREAD; j++) {
+                    if (creditLimitService.reserve(customerId, amount)) {
+                        reserved++;
+                    }
+                }
+                return reserved;
+            }));
+        }
+        start.countDown();
+
+        int reserved = 0;
+        for (Future<Integer> future : futures) {
+            reserved += future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        Customer result = customerRepository.findById(customerId).orElseThrow();
+        assertEquals(10000 / 13, reserved);
+        assertThat(result.getCreditLimit(), Matchers.greaterThanOrEqualTo(BigDecimal.ZERO));
+        assertThat(result.getCreditLimit(),
+            Matchers.comparesEqualTo(new BigDecimal(10000).subtract(amount.multiply(new BigDecimal(reserved)))));
+        assertThat(result.getUsedCreditLimit(), Matchers.comparesEqualTo(amount.multiply(new BigDecimal(reserved))));
+    }
+
+    @Test
+    public void testReleaseGivesBackCreditLimit(){
+        Customer customer = new Customer();
+        customer.setCreditLimit(new BigDecimal(1000));
+        customer.setName("Orhan");
+        customer.setSurName("Senturk");
+        customer.setUsedCreditLimit(new BigDecimal(0));
+        Long customerId = customerRepository.save(customer).getId();
+
+        assertTrue(creditLimitService.reserve(customerId, new BigDecimal(600)));
+        assertFalse(creditLimitService.reserve(customerId, new BigDecimal(600)));
+        creditLimitService.release(customerId, new BigDecimal(600));
+
+        Customer result = customerRepository.findById(customerId).orElseThrow();
+        assertThat(result.getCreditLimit(), Matchers.comparesEqualTo(new BigDecimal(1000)));
+        assertThat(result.getUsedCreditLimit(), Matchers.comparesEqualTo(BigDecimal.ZERO));
+    }
+
+    @Test
+    public void testCreditLimitChangesInvalidateCachedCustomer(){
+        Customer customer = new Customer();
+        customer.setCreditLimit(new BigDecimal(1000));
+        customer.setName("Orhan");
+        customer.setSurName("Senturk");
+        customer.setUsedCreditLimit(new BigDecimal(0));
+        Long customerId = customerRepository.save(customer).getId();
+
+        long misses = customerCache.stats().missCount();
+        assertThat(customerCache.findById(customerId).orElseThrow().getCreditLimit(),
+            Matchers.comparesEqualTo(new BigDecimal(1000)));
+        assertThat(customerCache.findById(customerId).orElseThrow().getCreditLimit(),
+            Matchers.comparesEqualTo(new BigDecimal(1000)));
+        assertEquals(misses + 1, customerCache.stats().missCount());
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        customerCache.bindTo(meterRegistry);
+        assertEquals(misses + 1, meterRegistry.get("cache.gets").tag("cache", "customers").tag("result", "miss")
+            .functionCounter().count());
+
+        assertTrue(creditLimitService.reserve(customerId, new BigDecimal(600)));
+        assertThat(customerCache.findById(customerId).orElseThrow().getCreditLimit(),
+            Matchers.comparesEqualTo(new BigDecimal(400)));
+
+        creditLimitService.release(customerId, new BigDecimal(600));
+        assertThat(customerCache.findById(customerId).orElseThrow().getCreditLimit(),
+            Matchers.comparesEqualTo(new BigDecimal(1000)));
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.loans.service;
+
+import com.example.loans.dto.CustomerExposureDTO;
+import com.example.loans.entity.CustomerExposure;
+import com.example.loans.enums.PaymentAllocation;
+import com.example.loans.repository.CustomerExposureRepository;
+import com.example.loans.repository.CustomerRepository;
+import com.example.loans.repository.LoanInstallmentRepository;
+import com.example.loans.repository.LoanRepository;
+import com.example.loans.repository.OutboxEventRepository;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({CustomerExposureService.class, LoanPaymentEngine.class, PaymentAllocationEngine.class,
+    CreditLimitService.class, CustomerCache.class, OutboxService.class, JacksonAutoConfiguration.class,
+    LoanFixtures.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CustomerExposureServiceTest {
+
+    private static final LocalDate NEXT_MONTH =
+        LocalDate.now().with(TemporalAdjusters.firstDayOfMonth()).plusMonths(1);
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private LoanInstallmentRepository loanInstallmentRepository;
+
+    @Autowired
+    private LoanFixtures loanFixtures;
+
+    @Autowired
+    private CustomerExposureRepository customerExposureRepository;
+
+    @Autowired
+    private CustomerExposureService customerExposureService;
+
+    @Autowired
+    private LoanPaymentEngine loanPaymentEngine;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    public void tearDown(){
+        outboxEventRepository.deleteAll();
+        customerExposureRepository.deleteAll();
+        loanInstallmentRepository.deleteAll();
+        loanRepository.deleteAll();
+        customerRepository.deleteAll();
+    }
+
+    @Test
+    public void testExposureFollowsLoansAndPayments(){
+        Long customerId = createCustomer();
+        Long paidLoanId = createLoan(customerId, new BigDecimal(1000), NEXT_MONTH, NEXT_MONTH.plusMonths(1));
+        createLoan(customerId, new BigDecimal(500), NEXT_MONTH.plusDays(10), NEXT_MONTH.plusMonths(1).plusDays(10));
+
+        CustomerExposureDTO exposure = customerExposureService.getExposure(customerId).getBody();
+        assertNotNull(exposure);
+        assertEquals(2, exposure.getOpenLoanCount());
+        assertThat(exposure.getOutstandingAmount(), Matchers.comparesEqualTo(new BigDecimal(3000)));
+        assertEquals(NEXT_MONTH, exposure.getNextDueDate());
+
+        assertTrue(loanPaymentEngine.pay(paidLoanId, new BigDecimal(2000)).isPaidCompletely());
+
+        exposure = customerExposureService.getExposure(customerId).getBody();
+        assertNotNull(exposure);
+        assertEquals(1, exposure.getOpenLoanCount());
+        assertThat(exposure.getOutstandingAmount(), Matchers.comparesEqualTo(new BigDecimal(1000)));
+        assertEquals(NEXT_MONTH.plusDays(10), exposure.getNextDueDate());
+        assertThat(exposure.getOverdueAmount(), Matchers.comparesEqualTo(BigDecimal.ZERO));
+
+        assertEquals(HttpStatus.NO_CONTENT, customerExposureService.getExposure(-1L).getStatusCode());
+    }
+
+    @Test
+    public void testRebuildMatchesIncrementalExposure(){
+        List<Long> customerIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Long customerId = createCustomer();
+            customerIds.add(customerId);
+            Long loanId = createLoan(customerId, new BigDecimal(100 * (i + 1)), NEXT_MONTH, NEXT_MONTH.plusMonths(3));
+            loanPaymentEngine.pay(loanId, new BigDecimal(100 * (i + 1)));
+        }
+        List<CustomerExposure> incremental = customerExposureRepository.findAllById(customerIds);
+        customerExposureRepository.deleteAll();
+
+        assertEquals(3, customerExposureService.rebuild());
+
+        List<CustomerExposure> rebuilt = customerExposureRepository.findAllById(customerIds);
+        assertEquals(incremental.size(), rebuilt.size());
+        for (int i = 0; i < incremental.size(); i++) {
+            assertEquals(incremental.get(i).getCustomerId(), rebuilt.get(i).getCustomerId());
+            assertEquals(incremental.get(i).getOpenLoanCount(), rebuilt.get(i).getOpenLoanCount());
+            assertThat(rebuilt.get(i).getOutstandingAmount(),
+                Matchers.comparesEqualTo(incremental.get(i).getOutstandingAmount()));
+            assertEquals(incremental.get(i).getNextDueDate(), rebuilt.get(i).getNextDueDate());
+            assertThat(rebuilt.get(i).getOverdueAmount(),
+                Matchers.comparesEqualTo(incremental.get(i).getOverdueAmount()));
+        }
+    }
+
+    @Test
+    public void testPaymentsLowerOverdueAmount(){
+        Long customerId = createCustomer();
+        LocalDate overdueDate = NEXT_MONTH.minusMonths(2);
+        Long loanId = createLoan(customerId, new BigDecimal(1000), overdueDate, NEXT_MONTH);
+        jdbcTemplate.update("UPDATE loan_installments SET is_overdue = TRUE, late_fee = 10"
+            + " WHERE loan_id = ? AND due_date < ?", loanId, NEXT_MONTH);
+        new TransactionTemplate(transactionManager).executeWithoutResult(
+            status -> customerExposureRepository.refreshOverdueAmounts(0, Long.MAX_VALUE));
+        assertOverdue(customerId, new BigDecimal(1010), overdueDate);
+
+        // a partial payment lowers the overdue amount, the rebuild leaves out the paid part too
+        assertEquals(0, loanPaymentEngine.pay(loanId, new BigDecimal(300), PaymentAllocation.PARTIAL)
+            .getNumberOfInstallmentsPaid());
+        assertOverdue(customerId, new BigDecimal(710), overdueDate);
+        customerExposureService.rebuild();
+        assertOverdue(customerId, new BigDecimal(710), overdueDate);
+
+        assertEquals(1, loanPaymentEngine.pay(loanId, new BigDecimal(710), PaymentAllocation.PARTIAL)
+            .getNumberOfInstallmentsPaid());
+        assertOverdue(customerId, BigDecimal.ZERO, NEXT_MONTH);
+    }
+
+    @Test
+    public void testNextDueDateIsOnlyWorkedOutForEarliestInstallment(){
+        Long customerId = createCustomer();
+        createLoan(customerId, new BigDecimal(1000), NEXT_MONTH, NEXT_MONTH.plusMonths(1));
+        Long laterLoanId = createLoan(customerId, new BigDecimal(500), NEXT_MONTH.plusDays(5));
+        // the next due date is left alone by a payment of a later installment, even if it is out of date
+        LocalDate outOfDate = NEXT_MONTH.minusDays(1);
+        jdbcTemplate.update("UPDATE customer_exposures SET next_due_date = ? WHERE customer_id = ?",
+            outOfDate, customerId);
+
+        assertTrue(loanPaymentEngine.pay(laterLoanId, new BigDecimal(500)).isPaidCompletely());
+
+        CustomerExposureDTO exposure = customerExposureService.getExposure(customerId).getBody();
+        assertNotNull(exposure);
+        assertEquals(outOfDate, exposure.getNextDueDate());
+        assertEquals(1, exposure.getOpenLoanCount());
+    }
+
+    private void assertOverdue(Long customerId, BigDecimal overdueAmount, LocalDate nextDueDate) {
+        CustomerExposureDTO exposure = customerExposureService.getExposure(customerId).getBody();
+        assertNotNull(exposure);
+        assertThat(exposure.getOverdueAmount(), Matchers.comparesEqualTo(overdueAmount));
+        assertEquals(nextDueDate, exposure.getNextDueDate());
+    }
+
+    private Long createCustomer() {
+        return loanFixtures.createCustomer(new BigDecimal(10000));
+    }
+
+    private Long createLoan(Long customerId, BigDecimal installmentAmount, LocalDate... dueDates) {
+        Long loanId = loanFixtures.createLoan(customerId, installmentAmount, dueDates);
+        customerExposureService.loanCreated(customerId, installmentAmount.multiply(new BigDecimal(dueDates.length)),
+            dueDates[0]);
+        return loanId;
+    }
+}
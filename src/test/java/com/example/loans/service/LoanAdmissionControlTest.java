@@ -0,0 +1,64 @@
+package com.example.loans.service;
+
+import com.example.loans.enums.AdmissionRejection;
+import com.example.loans.exception.AdmissionRejectedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoanAdmissionControlTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void testConcurrentRequestsAreShed() {
+        LoanAdmissionControl loanAdmissionControl = new LoanAdmissionControl(meterRegistry, 64, 2, 0, 1, 0, 1, 0, 1);
+
+        loanAdmissionControl.admitLoan("partner", 1L);
+        loanAdmissionControl.admitPayment("partner", 7L);
+        AdmissionRejectedException exception = assertThrows(AdmissionRejectedException.class,
+            () -> loanAdmissionControl.admitLoan("partner", 2L));
+        assertEquals(AdmissionRejection.CONCURRENCY, exception.getRejection());
+        assertEquals(2, meterRegistry.get("loan.admission.in.flight").gauge().value());
+
+        loanAdmissionControl.release();
+        loanAdmissionControl.admitLoan("partner", 2L);
+        assertEquals(1, meterRegistry.get("loan.admission.rejections").tag("reason", "concurrency").counter().count());
+    }
+
+    @Test
+    public void testCustomerRateIsLimitedAndCanBeChanged() {
+        LoanAdmissionControl loanAdmissionControl = new LoanAdmissionControl(meterRegistry, 64, 0, 0, 1, 0.001, 2, 0, 1);
+
+        loanAdmissionControl.admitLoan("partner", 1L);
+        loanAdmissionControl.admitLoan("partner", 1L);
+        AdmissionRejectedException exception = assertThrows(AdmissionRejectedException.class,
+            () -> loanAdmissionControl.admitLoan("partner", 1L));
+        assertEquals(AdmissionRejection.CUSTOMER_RATE, exception.getRejection());
+        // payments are limited per loan, not per customer
+        loanAdmissionControl.admitPayment("partner", 1L);
+
+        loanAdmissionControl.getBuckets(LoanAdmissionControl.CUSTOMER).setRate(0, 1);
+        loanAdmissionControl.admitLoan("partner", 1L);
+        assertEquals(4, meterRegistry.get("loan.admission.in.flight").gauge().value());
+    }
+
+    @Test
+    public void testBulkRequestsTakeAConcurrencySlotAndAPrincipalToken() {
+        LoanAdmissionControl loanAdmissionControl = new LoanAdmissionControl(meterRegistry, 64, 1, 0.001, 2, 0, 1, 0, 1);
+
+        loanAdmissionControl.admitBulk("partner");
+        AdmissionRejectedException exception = assertThrows(AdmissionRejectedException.class,
+            () -> loanAdmissionControl.admitBulk("other"));
+        assertEquals(AdmissionRejection.CONCURRENCY, exception.getRejection());
+
+        loanAdmissionControl.release();
+        loanAdmissionControl.admitBulk("partner");
+        loanAdmissionControl.release();
+        exception = assertThrows(AdmissionRejectedException.class, () -> loanAdmissionControl.admitBulk("partner"));
+        assertEquals(AdmissionRejection.PRINCIPAL_RATE, exception.getRejection());
+        assertEquals(0, meterRegistry.get("loan.admission.in.flight").gauge().value());
+    }
+}
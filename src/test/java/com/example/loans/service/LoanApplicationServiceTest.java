@@ -1,16 +1,29 @@
 package com.example.loans.service;
 
 import com.example.loans.dto.LoanCreationDTO;
+import com.example.loans.dto.LoanDTO;
 import com.example.loans.dto.LoanPaymentDTO;
 import com.example.loans.dto.LoanPaymentResultDTO;
 import com.example.loans.entity.Customer;
 import com.example.loans.entity.Loan;
 import com.example.loans.entity.LoanInstallment;
+import com.example.loans.enums.AmortizationType;
+import com.example.loans.enums.LoanRejection;
+import com.example.loans.enums.PaymentAllocation;
+import com.example.loans.exception.LoanRejectedException;
+import com.example.loans.repository.CustomerExposureRepository;
 import com.example.loans.repository.CustomerRepository;
 import com.example.loans.repository.LoanInstallmentRepository;
 import com.example.loans.repository.LoanRepository;
+import com.example.loans.repository.OutboxEventRepository;
 import com.example.loans.response.CreateLoanResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
 import org.hamcrest.Matchers;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -20,16 +33,19 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.event.annotation.BeforeTestClass;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 
-@DataJpaTest
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
 class LoanApplicationServiceTest {
 
     @InjectMocks
@@ -47,9 +63,39 @@ class LoanApplicationServiceTest {
     @Mock
     private Customer customer;
 
+    @Autowired
+    private CustomerExposureRepository customerExposureRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private LoanMetrics loanMetrics;
+
     @BeforeEach
     public void setUp(){
-        loanApplicationService = new LoanApplicationService(customerRepository, loanRepository, loanInstallmentRepository);
+        loanMetrics = new LoanMetrics(meterRegistry, loanInstallmentRepository);
+        CustomerCache customerCache = new CustomerCache(customerRepository, 100, Duration.ofMinutes(5));
+        OutboxService outboxService = new OutboxService(outboxEventRepository, new ObjectMapper());
+        CreditLimitService creditLimitService = new CreditLimitService(customerRepository, customerCache, outboxService);
+        CustomerExposureService customerExposureService = new CustomerExposureService(customerExposureRepository,
+            jdbcTemplate, transactionManager, 1, 1000);
+        loanApplicationService = new LoanApplicationService(customerCache, loanRepository, loanInstallmentRepository,
+            creditLimitService, new AmortizationEngine(AmortizationType.FLAT),
+            new LoanPaymentEngine(loanRepository, creditLimitService, customerExposureService, outboxService,
+                new PaymentAllocationEngine(new BigDecimal("0.001"), new BigDecimal("0.001")), jdbcTemplate),
+            loanMetrics, customerExposureService, new LoanPaymentLocks(16), outboxService);
+        Mockito.when(customerRepository.reserveCreditLimit(Mockito.anyLong(), Mockito.any())).thenReturn(1);
     }
 
     @Test
@@ -69,11 +115,11 @@ class LoanApplicationServiceTest {
         customer.setUsedCreditLimit(new BigDecimal(0));
         Mockito.when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
 
-        ResponseEntity<CreateLoanResponse> response = loanApplicationService.createLoan(loanCreationDTO);
+        LoanRejectedException exception = assertThrows(LoanRejectedException.class,
+            () -> loanApplicationService.createLoan(loanCreationDTO));
 
-        assertEquals(response.getStatusCode(), HttpStatus.INTERNAL_SERVER_ERROR);
-        assertNotNull(response.getBody());
-        assertTrue(response.getBody().getMessage().contains("No proper customer found"));
+        assertEquals(LoanRejection.CUSTOMER_NOT_FOUND, exception.getRejection());
+        assertTrue(exception.getMessage().contains("No proper customer found"));
     }
 
     @Test
@@ -93,11 +139,11 @@ class LoanApplicationServiceTest {
         customer.setUsedCreditLimit(new BigDecimal(0));
         Mockito.when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
 
-        ResponseEntity<CreateLoanResponse> response = loanApplicationService.createLoan(loanCreationDTO);
+        LoanRejectedException exception = assertThrows(LoanRejectedException.class,
+            () -> loanApplicationService.createLoan(loanCreationDTO));
 
-        assertEquals(response.getStatusCode(), HttpStatus.INTERNAL_SERVER_ERROR);
-        assertNotNull(response.getBody());
-        assertTrue(response.getBody().getMessage().contains("Customer credit limit is not enough"));
+        assertEquals(LoanRejection.CREDIT_LIMIT, exception.getRejection());
+        assertTrue(exception.getMessage().contains("Customer credit limit is not enough"));
     }
 
     @Test
@@ -117,11 +163,13 @@ class LoanApplicationServiceTest {
         customer.setUsedCreditLimit(new BigDecimal(0));
         Mockito.when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
 
-        ResponseEntity<CreateLoanResponse> response = loanApplicationService.createLoan(loanCreationDTO);
+        LoanRejectedException exception = assertThrows(LoanRejectedException.class,
+            () -> loanApplicationService.createLoan(loanCreationDTO));
 
-        assertEquals(response.getStatusCode(), HttpStatus.INTERNAL_SERVER_ERROR);
-        assertNotNull(response.getBody());
-        assertTrue(response.getBody().getMessage().contains("InstallmentType can only be"));
+        assertEquals(LoanRejection.INSTALLMENT_TYPE, exception.getRejection());
+        assertTrue(exception.getMessage().contains("InstallmentType can only be"));
+        assertEquals(1, meterRegistry.get("loan.rejections").tag("reason", "installment_type").counter().count());
+        assertEquals(0, meterRegistry.get("loan.rejections").tag("reason", "interest_rate").counter().count());
     }
 
     @Test
@@ -141,11 +189,37 @@ class LoanApplicationServiceTest {
         customer.setUsedCreditLimit(new BigDecimal(0));
         Mockito.when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
 
-        ResponseEntity<CreateLoanResponse> response = loanApplicationService.createLoan(loanCreationDTO);
+        LoanRejectedException exception = assertThrows(LoanRejectedException.class,
+            () -> loanApplicationService.createLoan(loanCreationDTO));
 
-        assertEquals(response.getStatusCode(), HttpStatus.INTERNAL_SERVER_ERROR);
-        assertNotNull(response.getBody());
-        assertTrue(response.getBody().getMessage().contains("Interest rate should be between 0.1 and 0.5"));
+        assertEquals(LoanRejection.INTEREST_RATE, exception.getRejection());
+        assertTrue(exception.getMessage().contains("Interest rate should be between 0.1 and 0.5"));
+        assertEquals(1, meterRegistry.get("loan.rejections").tag("reason", "interest_rate").counter().count());
+    }
+
+    @Test
+    public void testCreateLoanWithNegativeAmount(){
+        LoanCreationDTO loanCreationDTO = new LoanCreationDTO();
+        loanCreationDTO.setCustomerId(1L);
+        loanCreationDTO.setAmount(new BigDecimal(-10000));
+        loanCreationDTO.setInterestRate(new BigDecimal("0.5"));
+        loanCreationDTO.setNumberOfInstallments(6);
+
+        Long customerId = 1L;
+        Customer customer = new Customer();
+        customer.setId(1L);
+        customer.setCreditLimit(new BigDecimal(100000));
+        customer.setName("Orhan");
+        customer.setSurName("Senturk");
+        customer.setUsedCreditLimit(new BigDecimal(0));
+        Mockito.when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+
+        LoanRejectedException exception = assertThrows(LoanRejectedException.class,
+            () -> loanApplicationService.createLoan(loanCreationDTO));
+
+        // a negative amount would lower the used credit limit when it is reserved
+        assertEquals(LoanRejection.AMOUNT, exception.getRejection());
+        assertEquals(1, meterRegistry.get("loan.rejections").tag("reason", "amount").counter().count());
     }
 
     @Test
@@ -204,6 +278,68 @@ class LoanApplicationServiceTest {
         assertNotNull(loanInstallments);
     }
 
+    @Test
+    public void testCreateLoanInstallmentsWrittenInBatch(){
+        LoanCreationDTO loanCreationDTO = new LoanCreationDTO();
+        loanCreationDTO.setCustomerId(1L);
+        loanCreationDTO.setAmount(new BigDecimal(12000));
+        loanCreationDTO.setInterestRate(new BigDecimal("0.2"));
+        loanCreationDTO.setNumberOfInstallments(24);
+
+        Long customerId = 1L;
+        Customer customer = new Customer();
+        customer.setId(1L);
+        customer.setCreditLimit(new BigDecimal(100000));
+        customer.setName("Orhan");
+        customer.setSurName("Senturk");
+        customer.setUsedCreditLimit(new BigDecimal(0));
+        Mockito.when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        entityManager.flush();
+        statistics.clear();
+
+        ResponseEntity<CreateLoanResponse> response = loanApplicationService.createLoan(loanCreationDTO);
+        entityManager.flush();
+
+        assertEquals(response.getStatusCode(), HttpStatus.OK);
+        // the loan, 24 installments and the credit limit and loan created outbox events
+        assertEquals(27, statistics.getEntityInsertCount());
+        // one loan insert, one batched installment insert, one batched outbox insert
+        // and at most one sequence call per entity
+        assertTrue(statistics.getPrepareStatementCount() <= 6,
+            "createLoan prepared " + statistics.getPrepareStatementCount() + " statements");
+    }
+
+    @Test
+    public void testCreateLoanWithNonTerminatingInstallmentAmount(){
+        LoanCreationDTO loanCreationDTO = new LoanCreationDTO();
+        loanCreationDTO.setCustomerId(1L);
+        loanCreationDTO.setAmount(new BigDecimal("1000.00"));
+        loanCreationDTO.setInterestRate(new BigDecimal("0.1"));
+        loanCreationDTO.setNumberOfInstallments(9);
+
+        Long customerId = 1L;
+        Customer customer = new Customer();
+        customer.setId(1L);
+        customer.setCreditLimit(new BigDecimal(100000));
+        customer.setName("Orhan");
+        customer.setSurName("Senturk");
+        customer.setUsedCreditLimit(new BigDecimal(0));
+        Mockito.when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+
+        ResponseEntity<CreateLoanResponse> response = loanApplicationService.createLoan(loanCreationDTO);
+
+        assertEquals(response.getStatusCode(), HttpStatus.OK);
+        assertNotNull(response.getBody());
+        List<LoanInstallment> loanInstallments =
+            loanInstallmentRepository.findInstallmentsByLoanId(response.getBody().getLoan().getId());
+
+        assertEquals(9, loanInstallments.size());
+        BigDecimal total = loanInstallments.stream().map(LoanInstallment::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertThat(new BigDecimal("1100.00"), Matchers.comparesEqualTo(total));
+    }
+
     @Test
     public void testPayLoanWithCompleteSpent(){
         LoanCreationDTO loanCreationDTO = new LoanCreationDTO();
@@ -233,6 +369,29 @@ class LoanApplicationServiceTest {
         assertThat(new BigDecimal(5000),  Matchers.comparesEqualTo(paymentResult.getBody().getTotalAmountSpent()));
     }
 
+    @Test
+    public void testPayLoanWithoutLoanIdOrAmount(){
+        LoanPaymentDTO loanPaymentDTO = new LoanPaymentDTO();
+        loanPaymentDTO.setPaymentAmount(new BigDecimal(5000));
+        assertEquals(HttpStatus.BAD_REQUEST, loanApplicationService.payLoan(loanPaymentDTO).getStatusCode());
+
+        loanPaymentDTO.setLoanId(1L);
+        loanPaymentDTO.setPaymentAmount(null);
+        assertEquals(HttpStatus.BAD_REQUEST, loanApplicationService.payLoan(loanPaymentDTO).getStatusCode());
+    }
+
+    @Test
+    public void testPayLoanWithNonPositiveAmount(){
+        LoanPaymentDTO loanPaymentDTO = new LoanPaymentDTO();
+        loanPaymentDTO.setLoanId(1L);
+        loanPaymentDTO.setAllocation(PaymentAllocation.PARTIAL);
+        loanPaymentDTO.setPaymentAmount(BigDecimal.ZERO);
+        assertEquals(HttpStatus.BAD_REQUEST, loanApplicationService.payLoan(loanPaymentDTO).getStatusCode());
+
+        loanPaymentDTO.setPaymentAmount(new BigDecimal(-100));
+        assertEquals(HttpStatus.BAD_REQUEST, loanApplicationService.payLoan(loanPaymentDTO).getStatusCode());
+    }
+
     @Test
     public void testPayLoanWithRemainingAmount(){
         LoanCreationDTO loanCreationDTO = new LoanCreationDTO();
@@ -292,6 +451,107 @@ class LoanApplicationServiceTest {
         assertThat(new BigDecimal(5000),  Matchers.comparesEqualTo(paymentResult.getBody().getTotalAmountSpent()));
     }
 
+    @Test
+    public void testPayLoanPartiallyAndPayOff(){
+        LoanCreationDTO loanCreationDTO = new LoanCreationDTO();
+        loanCreationDTO.setCustomerId(1L);
+        loanCreationDTO.setAmount(new BigDecimal(10000));
+        loanCreationDTO.setInterestRate(new BigDecimal("0.5"));
+        loanCreationDTO.setNumberOfInstallments(6);
+
+        Long customerId = 1L;
+        Customer customer = new Customer();
+        customer.setId(1L);
+        customer.setCreditLimit(new BigDecimal(100000));
+        customer.setName("Orhan");
+        customer.setSurName("Senturk");
+        customer.setUsedCreditLimit(new BigDecimal(0));
+        Mockito.when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+
+        ResponseEntity<CreateLoanResponse> response = loanApplicationService.createLoan(loanCreationDTO);
+        Long loanId = response.getBody().getLoan().getId();
+
+        LoanPaymentDTO loanPaymentDTO = new LoanPaymentDTO();
+        loanPaymentDTO.setLoanId(loanId);
+        loanPaymentDTO.setPaymentAmount(new BigDecimal(3000));
+        loanPaymentDTO.setAllocation(PaymentAllocation.PARTIAL);
+        ResponseEntity<LoanPaymentResultDTO> paymentResult = loanApplicationService.payLoan(loanPaymentDTO);
+
+        assertNotNull(paymentResult.getBody());
+        assertEquals(1, paymentResult.getBody().getNumberOfInstallmentsPaid());
+        assertThat(new BigDecimal(3000), Matchers.comparesEqualTo(paymentResult.getBody().getTotalAmountSpent()));
+        List<BigDecimal> paidAmounts = jdbcTemplate.queryForList(
+            "SELECT paid_amount FROM loan_installments WHERE loan_id = ? ORDER BY due_date", BigDecimal.class, loanId);
+        assertThat(paidAmounts.get(0), Matchers.comparesEqualTo(new BigDecimal(2500)));
+        assertThat(paidAmounts.get(1), Matchers.comparesEqualTo(new BigDecimal(500)));
+        assertThat(paidAmounts.get(2), Matchers.comparesEqualTo(BigDecimal.ZERO));
+
+        // the remaining 12000 are all due later, so paying them off early is rewarded
+        loanPaymentDTO.setPaymentAmount(new BigDecimal(12000));
+        loanPaymentDTO.setAllocation(PaymentAllocation.PAYOFF);
+        paymentResult = loanApplicationService.payLoan(loanPaymentDTO);
+
+        assertNotNull(paymentResult.getBody());
+        assertEquals(5, paymentResult.getBody().getNumberOfInstallmentsPaid());
+        assertTrue(paymentResult.getBody().isPaidCompletely());
+        assertThat(paymentResult.getBody().getRewardAmount(), Matchers.greaterThan(BigDecimal.ZERO));
+        assertThat(paymentResult.getBody().getTotalAmountSpent().add(paymentResult.getBody().getRewardAmount()),
+            Matchers.comparesEqualTo(new BigDecimal(12000)));
+        assertEquals(0, jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM loan_installments WHERE loan_id = ? AND is_paid = FALSE", Integer.class, loanId));
+    }
+
+    @Test
+    public void testPayLoanReleasesCreditLimit(){
+        LoanCreationDTO loanCreationDTO = new LoanCreationDTO();
+        loanCreationDTO.setCustomerId(1L);
+        loanCreationDTO.setAmount(new BigDecimal(10000));
+        loanCreationDTO.setInterestRate(new BigDecimal("0.5"));
+        loanCreationDTO.setNumberOfInstallments(6);
+
+        Long customerId = 1L;
+        Customer customer = new Customer();
+        customer.setId(1L);
+        customer.setCreditLimit(new BigDecimal(100000));
+        customer.setName("Orhan");
+        customer.setSurName("Senturk");
+        customer.setUsedCreditLimit(new BigDecimal(0));
+        Mockito.when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+
+        ResponseEntity<CreateLoanResponse> response = loanApplicationService.createLoan(loanCreationDTO);
+
+        LoanPaymentDTO loanPaymentDTO = new LoanPaymentDTO();
+        loanPaymentDTO.setLoanId(response.getBody().getLoan().getId());
+        loanPaymentDTO.setPaymentAmount(new BigDecimal(2600));
+        ResponseEntity<LoanPaymentResultDTO> paymentResult = loanApplicationService.payLoan(loanPaymentDTO);
+
+        assertNotNull(paymentResult.getBody());
+        assertEquals(1, paymentResult.getBody().getNumberOfInstallmentsPaid());
+        assertFalse(paymentResult.getBody().isPaidCompletely());
+        Mockito.verify(customerRepository).releaseCreditLimit(Mockito.eq(1L),
+            Mockito.argThat(amount -> amount.compareTo(new BigDecimal(2500)) == 0));
+    }
+
+    @Test
+    public void testOutstandingAmountGauge(){
+        LoanCreationDTO loanCreationDTO = new LoanCreationDTO();
+        loanCreationDTO.setCustomerId(1L);
+        loanCreationDTO.setAmount(new BigDecimal(10000));
+        loanCreationDTO.setInterestRate(new BigDecimal("0.5"));
+        loanCreationDTO.setNumberOfInstallments(6);
+
+        Customer customer = new Customer();
+        customer.setId(1L);
+        customer.setCreditLimit(new BigDecimal(100000));
+        customer.setUsedCreditLimit(new BigDecimal(0));
+        Mockito.when(customerRepository.findById(1L)).thenReturn(Optional.of(customer));
+        loanApplicationService.createLoan(loanCreationDTO);
+
+        loanMetrics.refreshOutstandingAmount();
+
+        assertEquals(15000, meterRegistry.get("loan.outstanding.amount").gauge().value(), 0.001);
+    }
+
     @Test
     public void testListLoansByCustomerId(){
         LoanCreationDTO loanCreationDTO = new LoanCreationDTO();
@@ -315,6 +575,12 @@ class LoanApplicationServiceTest {
 
         assertNotNull(loans);
         assertEquals(1, loans.size());
+
+        ResponseEntity<List<LoanDTO>> response = loanApplicationService.getLoansByCustomerId(customerId);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertEquals(loans.get(0).getId(), response.getBody().get(0).getId());
+        assertEquals(0, loans.get(0).getLoanAmount().compareTo(response.getBody().get(0).getLoanAmount()));
     }
 
     @Test
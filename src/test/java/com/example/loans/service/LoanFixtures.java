@@ -0,0 +1,98 @@
+package com.example.loans.service;
+
+import com.example.loans.entity.Customer;
+import com.example.loans.entity.Loan;
+import com.example.loans.entity.LoanInstallment;
+import com.example.loans.repository.CustomerRepository;
+import com.example.loans.repository.LoanInstallmentRepository;
+import com.example.loans.repository.LoanRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Saves customers, loans and installments for the repository backed tests, import it with @Import
+ */
+class LoanFixtures {
+
+    private final CustomerRepository customerRepository;
+    private final LoanRepository loanRepository;
+    private final LoanInstallmentRepository loanInstallmentRepository;
+
+    @Autowired
+    LoanFixtures(CustomerRepository customerRepository, LoanRepository loanRepository,
+                 LoanInstallmentRepository loanInstallmentRepository) {
+        this.customerRepository = customerRepository;
+        this.loanRepository = loanRepository;
+        this.loanInstallmentRepository = loanInstallmentRepository;
+    }
+
+    /**
+     * @param usedCreditLimit the used credit limit, the credit limit is 100000
+     * @return the customer id
+     */
+    Long createCustomer(BigDecimal usedCreditLimit) {
+        Customer customer = new Customer();
+        customer.setCreditLimit(new BigDecimal(100000));
+        customer.setName("Orhan");
+        customer.setSurName("Senturk");
+        customer.setUsedCreditLimit(usedCreditLimit);
+        return customerRepository.save(customer).getId();
+    }
+
+    /**
+     * Save an unpaid loan with one unpaid installment per due date
+     *
+     * @return the loan id
+     */
+    Long createLoan(Long customerId, BigDecimal installmentAmount, LocalDate... dueDates) {
+        return createLoan(customerId, dueDates.length, false, installmentAmount, BigDecimal.ZERO, dueDates);
+    }
+
+    /**
+     * Save a loan with one installment per due date, the loan amount is the sum of the installments
+     *
+     * @param numberOfInstallments the number of installments of the loan, it can differ from the due dates
+     * @param paid true if the loan and its installments are paid
+     * @param paidAmount the paid amount of each installment
+     * @return the loan id
+     */
+    Long createLoan(Long customerId, int numberOfInstallments, boolean paid, BigDecimal installmentAmount,
+                    BigDecimal paidAmount, LocalDate... dueDates) {
+        Loan loan = new Loan();
+        loan.setCustomerId(customerId);
+        loan.setNumberOfInstallment(numberOfInstallments);
+        loan.setLoanAmount(installmentAmount.multiply(new BigDecimal(dueDates.length)));
+        loan.setIsPaid(paid);
+        loan.setCreateDate(new Date());
+        loan = loanRepository.save(loan);
+
+        List<LoanInstallment> loanInstallments = new ArrayList<>();
+        for (LocalDate dueDate : dueDates) {
+            LoanInstallment loanInstallment = new LoanInstallment();
+            loanInstallment.setIsPaid(paid);
+            loanInstallment.setLoanId(loan.getId());
+            loanInstallment.setAmount(installmentAmount);
+            loanInstallment.setPaidAmount(paidAmount);
+            loanInstallment.setDueDate(dueDate);
+            loanInstallments.add(loanInstallment);
+        }
+        loanInstallmentRepository.saveAll(loanInstallments);
+        return loan.getId();
+    }
+
+    /**
+     * @return count due dates one month apart, starting with the first one
+     */
+    static LocalDate[] monthly(LocalDate firstDueDate, int count) {
+        LocalDate[] dueDates = new LocalDate[count];
+        for (int i = 0; i < count; i++) {
+            dueDates[i] = firstDueDate.plusMonths(i);
+        }
+        return dueDates;
+    }
+}
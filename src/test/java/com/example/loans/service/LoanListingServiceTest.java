@@ -0,0 +1,114 @@
+package com.example.loans.service;
+
+import com.example.loans.dto.KeysetPageDTO;
+import com.example.loans.dto.LoanDTO;
+import com.example.loans.dto.LoanInstallmentDTO;
+import com.example.loans.repository.LoanInstallmentRepository;
+import com.example.loans.repository.LoanRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import(LoanFixtures.class)
+class LoanListingServiceTest {
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private LoanInstallmentRepository loanInstallmentRepository;
+
+    @Autowired
+    private LoanFixtures loanFixtures;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private LoanListingService loanListingService;
+
+    @BeforeEach
+    public void setUp(){
+        loanListingService = new LoanListingService(loanRepository, loanInstallmentRepository, transactionManager,
+            objectMapper, 2, 3);
+    }
+
+    @Test
+    public void testListLoansByCustomerIdPageByPage(){
+        for (int i = 0; i < 5; i++) {
+            createLoan(7L);
+        }
+        createLoan(8L);
+
+        List<Long> loanIds = new ArrayList<>();
+        Long afterId = null;
+        do {
+            ResponseEntity<KeysetPageDTO<LoanDTO>> page = loanListingService.getLoansByCustomerId(7L, afterId, 10);
+            assertEquals(HttpStatus.OK, page.getStatusCode());
+            assertNotNull(page.getBody());
+            assertTrue(page.getBody().getItems().size() <= 3);
+            page.getBody().getItems().forEach(loan -> loanIds.add(loan.getId()));
+            afterId = page.getBody().getNextAfterId();
+        } while (afterId != null);
+
+        assertEquals(5, loanIds.size());
+        assertEquals(loanIds.stream().sorted().distinct().toList(), loanIds);
+    }
+
+    @Test
+    public void testListInstallmentsByLoanIdWithDefaultPageSize(){
+        Long loanId = createLoan(7L);
+
+        ResponseEntity<KeysetPageDTO<LoanInstallmentDTO>> page =
+            loanListingService.getInstallmentsByLoanId(loanId, null, null);
+
+        assertNotNull(page.getBody());
+        assertEquals(2, page.getBody().getItems().size());
+        assertNotNull(page.getBody().getNextAfterId());
+        assertEquals(HttpStatus.NO_CONTENT, loanListingService.getInstallmentsByLoanId(-1L, null, null).getStatusCode());
+    }
+
+    @Test
+    public void testStreamInstallmentsByLoanId() throws Exception {
+        Long loanId = createLoan(7L);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        loanListingService.streamInstallmentsByLoanId(loanId, output);
+
+        JsonNode installments = objectMapper.readTree(output.toByteArray());
+        assertTrue(installments.isArray());
+        assertEquals(6, installments.size());
+        assertEquals(loanId, installments.get(0).get("loanId").asLong());
+    }
+
+    @Test
+    public void testStreamLoansByCustomerIdWithoutLoans() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        loanListingService.streamLoansByCustomerId(-1L, output);
+
+        assertEquals(0, objectMapper.readTree(output.toByteArray()).size());
+    }
+
+    private Long createLoan(Long customerId) {
+        return loanFixtures.createLoan(customerId, new BigDecimal(2500),
+            LoanFixtures.monthly(LocalDate.now().plusMonths(1).withDayOfMonth(1), 6));
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.loans.service;
+
+import com.example.loans.dto.LoanPaymentResultDTO;
+import com.example.loans.repository.CustomerRepository;
+import com.example.loans.repository.LoanInstallmentRepository;
+import com.example.loans.repository.LoanRepository;
+import com.example.loans.repository.OutboxEventRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({LoanPaymentLocks.class, LoanPaymentEngine.class, PaymentAllocationEngine.class,
+    CreditLimitService.class, CustomerCache.class, CustomerExposureService.class, OutboxService.class,
+    JacksonAutoConfiguration.class, LoanFixtures.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class LoanPaymentLocksTest {
+
+    private static final int THREADS = 4;
+
+    @Autowired
+    private LoanPaymentLocks loanPaymentLocks;
+
+    @Autowired
+    private LoanPaymentEngine loanPaymentEngine;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private LoanInstallmentRepository loanInstallmentRepository;
+
+    @Autowired
+    private LoanFixtures loanFixtures;
+
+    @AfterEach
+    public void tearDown(){
+        outboxEventRepository.deleteAll();
+        loanInstallmentRepository.deleteAll();
+        loanRepository.deleteAll();
+        customerRepository.deleteAll();
+    }
+
+    @Test
+    public void testConcurrentPaymentsOfSameLoanAreSerialized() throws Exception {
+        Long loanId = createLoan(THREADS);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<LoanPaymentResultDTO>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return loanPaymentLocks.withLoanLock(loanId, () -> loanPaymentEngine.pay(loanId, new BigDecimal(1000)));
+            }));
+        }
+        start.countDown();
+        int paidCompletely = 0;
+        for (Future<LoanPaymentResultDTO> future : futures) {
+            // every payment sees the installments paid by the one before it, so none of them fails
+            LoanPaymentResultDTO result = future.get();
+            assertEquals(1, result.getNumberOfInstallmentsPaid());
+            if (result.isPaidCompletely()) {
+                paidCompletely++;
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(1, paidCompletely);
+        assertTrue(loanInstallmentRepository.findUnpaidInstallmentsByLoanId(loanId).isEmpty());
+    }
+
+    @Test
+    public void testOverlappingLoanSetsDoNotDeadlock() throws Exception {
+        List<Long> ascending = new ArrayList<>();
+        for (long loanId = 1; loanId <= 2000; loanId++) {
+            ascending.add(loanId);
+        }
+        List<Long> descending = new ArrayList<>(ascending);
+        Collections.reverse(descending);
+
+        AtomicInteger runs = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        for (List<Long> loanIds : List.of(ascending, descending)) {
+            executor.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    loanPaymentLocks.withLoanLocks(loanIds, runs::incrementAndGet);
+                }
+            });
+        }
+        executor.shutdown();
+
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(400, runs.get());
+    }
+
+    private Long createLoan(int numberOfInstallments) {
+        LocalDate dueDate = LocalDate.now().with(TemporalAdjusters.firstDayOfNextMonth());
+        return loanFixtures.createLoan(loanFixtures.createCustomer(new BigDecimal(1000 * numberOfInstallments)),
+            new BigDecimal(1000), Collections.nCopies(numberOfInstallments, dueDate).toArray(LocalDate[]::new));
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.loans.service;
+
+import com.example.loans.dto.LoanQuoteDTO;
+import com.example.loans.enums.AmortizationType;
+import com.example.loans.enums.LoanRejection;
+import com.example.loans.exception.LoanRejectedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoanQuoteServiceTest {
+
+    private final LoanQuoteService loanQuoteService =
+        new LoanQuoteService(new AmortizationEngine(AmortizationType.FLAT), 100);
+
+    @Test
+    public void testQuoteHasInstallmentsOfCreateLoan(){
+        ResponseEntity<LoanQuoteDTO> response = loanQuoteService.quote(new BigDecimal(10000), new BigDecimal("0.5"), 6,
+            YearMonth.of(2025, 11));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        LoanQuoteDTO quote = response.getBody();
+        assertNotNull(quote);
+        assertThat(quote.getLoanAmount(), Matchers.comparesEqualTo(new BigDecimal(15000)));
+        assertEquals(6, quote.getInstallments().size());
+        assertEquals(LocalDate.of(2025, 12, 1), quote.getInstallments().get(0).getDueDate());
+        assertEquals(LocalDate.of(2026, 5, 1), quote.getInstallments().get(5).getDueDate());
+        assertTrue(quote.getInstallments().stream()
+            .allMatch(installment -> installment.getAmount().compareTo(new BigDecimal(2500)) == 0));
+    }
+
+    @Test
+    public void testQuotesAreMemoizedByTermsAndStartMonth(){
+        YearMonth startMonth = YearMonth.of(2025, 1);
+        LoanQuoteDTO quote = loanQuoteService.quote(new BigDecimal(1000), new BigDecimal("0.1"), 12, startMonth)
+            .getBody();
+
+        assertSame(quote, loanQuoteService.quote(new BigDecimal("1000.00"), new BigDecimal("0.10"), 12, startMonth)
+            .getBody());
+        assertNotSame(quote, loanQuoteService.quote(new BigDecimal(1000), new BigDecimal("0.1"), 12,
+            startMonth.plusMonths(1)).getBody());
+        assertEquals(1, loanQuoteService.stats().hitCount());
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        loanQuoteService.bindTo(meterRegistry);
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "quotes").tag("result", "hit")
+            .functionCounter().count());
+    }
+
+    @Test
+    public void testQuoteRejectsTermsLikeCreateLoan(){
+        LoanRejectedException e = assertThrows(LoanRejectedException.class,
+            () -> loanQuoteService.quote(new BigDecimal(1000), new BigDecimal("0.1"), 7));
+        assertEquals(LoanRejection.INSTALLMENT_TYPE, e.getRejection());
+
+        e = assertThrows(LoanRejectedException.class,
+            () -> loanQuoteService.quote(new BigDecimal(1000), new BigDecimal("0.6"), 12));
+        assertEquals(LoanRejection.INTEREST_RATE, e.getRejection());
+
+        e = assertThrows(LoanRejectedException.class, () -> loanQuoteService.quote(null, new BigDecimal("0.1"), 12));
+        assertEquals(LoanRejection.REQUEST_NULL, e.getRejection());
+    }
+
+    @Test
+    public void testQuoteRejectsAmountsThatAreNotPositive(){
+        LoanRejectedException e = assertThrows(LoanRejectedException.class,
+            () -> loanQuoteService.quote(BigDecimal.ZERO, new BigDecimal("0.1"), 12));
+        assertEquals(LoanRejection.AMOUNT, e.getRejection());
+
+        e = assertThrows(LoanRejectedException.class,
+            () -> loanQuoteService.quote(new BigDecimal(-1000), new BigDecimal("0.1"), 12));
+        assertEquals(LoanRejection.AMOUNT, e.getRejection());
+    }
+
+    @Test
+    public void testQuoteRejectsAmountsBeyondTheCentRange(){
+        LoanRejectedException e = assertThrows(LoanRejectedException.class,
+            () -> loanQuoteService.quote(new BigDecimal("1e30"), new BigDecimal("0.1"), 12));
+        assertEquals(LoanRejection.AMOUNT, e.getRejection());
+
+        // the largest amount still fits in the cents of every schedule
+        for (AmortizationType type : AmortizationType.values()) {
+            LoanQuoteService quoteService = new LoanQuoteService(new AmortizationEngine(type), 100);
+            assertNotNull(quoteService.quote(new BigDecimal(1_000_000_000), new BigDecimal("0.5"), 24).getBody());
+        }
+    }
+}
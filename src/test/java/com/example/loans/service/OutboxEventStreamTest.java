@@ -0,0 +1,89 @@
+package com.example.loans.service;
+
+import com.example.loans.entity.OutboxEvent;
+import com.example.loans.enums.OutboxEventType;
+import com.example.loans.repository.OutboxEventRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboxEventStreamTest {
+
+    private final CountDownLatch stalled = new CountDownLatch(1);
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    private boolean stalling;
+
+    private final OutboxEventStream outboxEventStream = new OutboxEventStream(
+        Mockito.mock(OutboxEventRepository.class), Duration.ofMinutes(1), 10, 2) {
+
+        @Override
+        SseEmitter newEmitter(long timeoutMillis) {
+            return stalling ? new StalledEmitter() : new RecordingEmitter();
+        }
+    };
+
+    @AfterEach
+    public void tearDown(){
+        stalled.countDown();
+        outboxEventStream.close();
+    }
+
+    @Test
+    public void testStalledConsumerDoesNotHoldUpPublishing() throws InterruptedException {
+        stalling = true;
+        outboxEventStream.subscribe(null, null);
+        stalling = false;
+        outboxEventStream.subscribe(null, null);
+        assertEquals(2, outboxEventStream.subscriberCount());
+
+        // the stalled consumer blocks on the events it took, at most the two its queue holds,
+        // and is dropped when the queue overflows again
+        for (long position = 1; position <= 5; position++) {
+            outboxEventStream.publish(List.of(event(position)));
+            assertEquals(String.valueOf(position), received.poll(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, outboxEventStream.subscriberCount());
+        outboxEventStream.publish(List.of(event(6)));
+        assertEquals("6", received.poll(5, TimeUnit.SECONDS));
+    }
+
+    private static OutboxEvent event(long position) {
+        return new OutboxEvent(position, OutboxEventType.INSTALLMENT_PAID, position, 1L, "{}", LocalDateTime.now(),
+            position);
+    }
+
+    private class RecordingEmitter extends SseEmitter {
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            // the id line of the event
+            received.add(builder.build().iterator().next().getData().toString().split("\n")[0].substring(3));
+        }
+    }
+
+    private class StalledEmitter extends SseEmitter {
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            try {
+                stalled.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.loans.service;
+
+import com.example.loans.entity.OutboxEvent;
+import com.example.loans.enums.OutboxEventType;
+import com.example.loans.outbox.OutboxSink;
+import com.example.loans.repository.OutboxEventRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = {"loan.outbox.batch-size=2", "loan.outbox.relay-interval=1h"})
+@Import({OutboxService.class, OutboxRelay.class, OutboxEventStream.class, JacksonAutoConfiguration.class,
+    OutboxRelayTest.RecordingSinkConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OutboxRelayTest {
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private RecordingSink recordingSink;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    public void tearDown(){
+        outboxEventRepository.deleteAll();
+        recordingSink.events.clear();
+        recordingSink.failures = 0;
+    }
+
+    @Test
+    public void testRelayPublishesEventsOnceInOrder(){
+        long lastPosition = outboxEventRepository.findLastPublishedPosition();
+        List<Long> eventIds = append(5);
+
+        assertEquals(5, outboxRelay.relay());
+        assertEquals(0, outboxRelay.relay());
+
+        assertEquals(eventIds, recordingSink.events.stream().map(OutboxEvent::getId).toList());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(lastPosition + i + 1, recordingSink.events.get(i).getPublishedPosition());
+        }
+        List<OutboxEvent> replayed = outboxEventRepository.findPublishedEventsAfter(lastPosition + 3, Limit.of(10));
+        assertEquals(eventIds.subList(3, 5), replayed.stream().map(OutboxEvent::getId).toList());
+    }
+
+    @Test
+    public void testFailedBatchIsPublishedAgain(){
+        append(1);
+        recordingSink.failures = 1;
+
+        assertThrows(UncheckedIOException.class, () -> outboxRelay.relay());
+        assertEquals(1, outboxEventRepository.findUnpublishedEvents(Limit.of(10)).size());
+
+        assertEquals(1, outboxRelay.relay());
+        assertTrue(outboxEventRepository.findUnpublishedEvents(Limit.of(10)).isEmpty());
+    }
+
+    @Test
+    public void testPurgeKeepsLastPublishedPosition(){
+        append(3);
+        outboxRelay.relay();
+        long lastPosition = outboxEventRepository.findLastPublishedPosition();
+        List<OutboxEvent> events = outboxEventRepository.findAll();
+        events.forEach(event -> event.setCreatedAt(LocalDateTime.now().minusDays(30)));
+        outboxEventRepository.saveAll(events);
+
+        assertEquals(2, outboxRelay.purgePublishedEvents());
+        assertEquals(lastPosition, outboxEventRepository.findLastPublishedPosition());
+    }
+
+    private List<Long> append(int count) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        for (int i = 0; i < count; i++) {
+            long loanId = i + 1;
+            transactionTemplate.executeWithoutResult(status -> outboxService.append(OutboxEventType.INSTALLMENT_PAID,
+                loanId, 1L, Map.of("loanId", loanId)));
+        }
+        return outboxEventRepository.findUnpublishedEvents(Limit.of(count)).stream().map(OutboxEvent::getId).toList();
+    }
+
+    static class RecordingSink implements OutboxSink {
+
+        private final List<OutboxEvent> events = new ArrayList<>();
+        private int failures;
+
+        @Override
+        public void publish(List<OutboxEvent> batch) throws IOException {
+            if (failures > 0) {
+                failures--;
+                throw new IOException("Sink is down");
+            }
+            events.addAll(batch);
+        }
+    }
+
+    @TestConfiguration
+    static class RecordingSinkConfig {
+
+        @Bean
+        public RecordingSink recordingSink() {
+            return new RecordingSink();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.loans.service;
+
+import com.example.loans.entity.JobCheckpoint;
+import com.example.loans.entity.LoanInstallment;
+import com.example.loans.repository.CustomerExposureRepository;
+import com.example.loans.repository.JobCheckpointRepository;
+import com.example.loans.repository.LoanInstallmentRepository;
+import com.example.loans.repository.LoanRepository;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import(LoanFixtures.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OverdueInstallmentScannerTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2025, 3, 15);
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private LoanInstallmentRepository loanInstallmentRepository;
+
+    @Autowired
+    private LoanFixtures loanFixtures;
+
+    @Autowired
+    private JobCheckpointRepository jobCheckpointRepository;
+
+    @Autowired
+    private CustomerExposureRepository customerExposureRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    public void tearDown(){
+        jobCheckpointRepository.deleteAll();
+        loanInstallmentRepository.deleteAll();
+        loanRepository.deleteAll();
+    }
+
+    @Test
+    public void testScanFlagsOverdueInstallmentsWithLateFee(){
+        Long loanId = createLoan(TODAY.minusDays(40), TODAY.minusDays(10), TODAY, TODAY.plusDays(20));
+
+        assertEquals(2, scanner(4, 1).scan(TODAY));
+
+        List<LoanInstallment> installments = loanInstallmentRepository.findInstallmentsByLoanId(loanId);
+        assertTrue(installments.get(0).getIsOverdue());
+        // 1000 * 0.001 * 40 days
+        assertThat(installments.get(0).getLateFee(), Matchers.comparesEqualTo(new BigDecimal(40)));
+        assertTrue(installments.get(1).getIsOverdue());
+        assertThat(installments.get(1).getLateFee(), Matchers.comparesEqualTo(new BigDecimal(10)));
+        assertFalse(installments.get(2).getIsOverdue());
+        assertFalse(installments.get(3).getIsOverdue());
+        assertThat(installments.get(3).getLateFee(), Matchers.comparesEqualTo(BigDecimal.ZERO));
+
+        // the run of the day is complete, the next day starts a new run
+        assertEquals(0, scanner(4, 1).scan(TODAY));
+        assertEquals(3, scanner(4, 1).scan(TODAY.plusDays(1)));
+    }
+
+    @Test
+    public void testScanContinuesFromCheckpoint(){
+        List<Long> loanIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            loanIds.add(createLoan(TODAY.minusDays(5)));
+        }
+        // a run of the same day already committed the first two loans
+        jobCheckpointRepository.save(new JobCheckpoint(OverdueInstallmentScanner.JOB_NAME, 0, TODAY,
+            loanIds.get(0), loanIds.get(2), loanIds.get(1), false));
+
+        assertEquals(1, scanner(2, 1).scan(TODAY));
+
+        assertFalse(loanInstallmentRepository.findInstallmentsByLoanId(loanIds.get(0)).get(0).getIsOverdue());
+        assertTrue(loanInstallmentRepository.findInstallmentsByLoanId(loanIds.get(2)).get(0).getIsOverdue());
+        assertTrue(jobCheckpointRepository.findCheckpointsByJobName(OverdueInstallmentScanner.JOB_NAME).get(0).getCompleted());
+    }
+
+    private OverdueInstallmentScanner scanner(int parallelism, int chunkLoans) {
+        return new OverdueInstallmentScanner(jdbcTemplate, jobCheckpointRepository, customerExposureRepository,
+            transactionManager,
+            parallelism, chunkLoans, new BigDecimal("0.001"));
+    }
+
+    private Long createLoan(LocalDate... dueDates) {
+        return loanFixtures.createLoan(1L, new BigDecimal(1000), dueDates);
+    }
+}
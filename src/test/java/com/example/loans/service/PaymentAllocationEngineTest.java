@@ -0,0 +1,134 @@
+package com.example.loans.service;
+
+import com.example.loans.enums.PaymentAllocation;
+import com.example.loans.service.PaymentAllocationEngine.Allocation;
+import com.example.loans.service.PaymentAllocationEngine.Schedule;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentAllocationEngineTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2025, 3, 15);
+    private static final LocalDate WINDOW_END = LocalDate.of(2025, 6, 1);
+
+    private final PaymentAllocationEngine paymentAllocationEngine =
+        new PaymentAllocationEngine(new BigDecimal("0.001"), new BigDecimal("0.001"));
+
+    @Test
+    public void testInstallmentsPaysWholeInstallmentsOnly(){
+        Allocation allocation = allocate(PaymentAllocation.INSTALLMENTS, 25000, schedule());
+
+        assertEquals(2, allocation.getSettledCount());
+        assertEquals(20000, allocation.getSpentCents());
+        assertEquals(0, allocation.getPenaltyCents());
+        assertFalse(allocation.isChanged(2));
+    }
+
+    @Test
+    public void testPartialPaysLateFeeAndLeavesLastInstallmentPartiallyPaid(){
+        Allocation allocation = allocate(PaymentAllocation.PARTIAL, 25000, schedule());
+
+        assertEquals(2, allocation.getSettledCount());
+        assertEquals(25000, allocation.getSpentCents());
+        assertEquals(140, allocation.getPenaltyCents());
+        assertEquals(10140, allocation.paidCents(0));
+        assertTrue(allocation.isChanged(2));
+        assertFalse(allocation.isSettled(2));
+        assertEquals(4860, allocation.paidCents(2));
+        assertFalse(allocation.isChanged(3));
+        assertFalse(allocation.isPaidOff());
+    }
+
+    @Test
+    public void testPartialCarriesOverpaymentForward(){
+        Allocation allocation = allocate(PaymentAllocation.PARTIAL, 45000, schedule());
+
+        assertTrue(allocation.isPaidOff());
+        assertEquals(40140, allocation.getSpentCents());
+        assertEquals(10000, allocation.getCarriedForwardCents());
+        assertEquals(40000, allocation.getSettledAmountCents());
+    }
+
+    @Test
+    public void testPartialCompletesPartiallyPaidInstallment(){
+        Allocation allocation = allocate(PaymentAllocation.PARTIAL, 5000, schedule().withPaid(1, 5000));
+
+        assertEquals(0, allocation.getSettledCount());
+        assertEquals(5000, allocation.getSpentCents());
+
+        allocation = allocate(PaymentAllocation.PARTIAL, 15140, schedule().withPaid(1, 5000));
+
+        assertEquals(2, allocation.getSettledCount());
+        assertEquals(10000, allocation.paidCents(1));
+    }
+
+    @Test
+    public void testPayoffRewardsEarlyAndChargesLateInstallments(){
+        Allocation allocation = allocate(PaymentAllocation.PAYOFF, 50000, schedule());
+
+        assertTrue(allocation.isPaidOff());
+        // 101.40 + (100 - 1.70) + (100 - 4.70) + (100 - 10.80)
+        assertEquals(38420, allocation.getSpentCents());
+        assertEquals(1720, allocation.getRewardCents());
+        assertEquals(140, allocation.getPenaltyCents());
+        assertEquals(8920, allocation.getCarriedForwardCents());
+        assertEquals(40000, allocation.getSettledAmountCents());
+    }
+
+    @Test
+    public void testPayoffBelowPayoffAmountIsAllocatedPartially(){
+        Allocation allocation = allocate(PaymentAllocation.PAYOFF, 30000, schedule());
+
+        assertFalse(allocation.isPaidOff());
+        assertEquals(2, allocation.getSettledCount());
+        assertEquals(0, allocation.getRewardCents());
+        assertEquals(9860, allocation.paidCents(2));
+    }
+
+    @Test
+    public void testNonPositivePaymentAllocatesNothing(){
+        for (PaymentAllocation paymentAllocation : PaymentAllocation.values()) {
+            for (long paymentCents : new long[] {0, -10000}) {
+                Allocation allocation = allocate(paymentAllocation, paymentCents, schedule().withPaid(0, 5000));
+
+                assertEquals(0, allocation.getSpentCents());
+                assertEquals(0, allocation.getSettledCount());
+                assertFalse(allocation.isChanged(0));
+                assertEquals(5000, allocation.paidCents(0));
+            }
+        }
+    }
+
+    private Allocation allocate(PaymentAllocation allocation, long paymentCents, TestSchedule schedule) {
+        return paymentAllocationEngine.allocate(allocation, schedule.build(), paymentCents, TODAY, WINDOW_END);
+    }
+
+    // four installments of 100.00, the first one overdue with a late fee of 1.40, the last one after the window
+    private static TestSchedule schedule() {
+        return new TestSchedule();
+    }
+
+    private static final class TestSchedule {
+
+        private final long[] paidCents = new long[4];
+
+        private TestSchedule withPaid(int i, long cents) {
+            paidCents[i] = cents;
+            return this;
+        }
+
+        private Schedule build() {
+            // smaller than the schedule, so it has to grow
+            Schedule schedule = new Schedule(2);
+            schedule.add(1, 10000, paidCents[0], 140, LocalDate.of(2025, 3, 1));
+            schedule.add(2, 10000, paidCents[1], 0, LocalDate.of(2025, 4, 1));
+            schedule.add(3, 10000, paidCents[2], 0, LocalDate.of(2025, 5, 1));
+            schedule.add(4, 10000, paidCents[3], 0, LocalDate.of(2025, 7, 1));
+            return schedule;
+        }
+    }
+}
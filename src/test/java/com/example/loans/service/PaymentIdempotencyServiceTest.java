@@ -0,0 +1,238 @@
+package com.example.loans.service;
+
+import com.example.loans.dto.LoanPaymentDTO;
+import com.example.loans.dto.LoanPaymentResultDTO;
+import com.example.loans.entity.PaymentIdempotencyKey;
+import com.example.loans.enums.PaymentAllocation;
+import com.example.loans.repository.CustomerRepository;
+import com.example.loans.repository.LoanInstallmentRepository;
+import com.example.loans.repository.LoanRepository;
+import com.example.loans.repository.OutboxEventRepository;
+import com.example.loans.repository.PaymentIdempotencyKeyRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({PaymentIdempotencyService.class, LoanPaymentEngine.class, PaymentAllocationEngine.class,
+    CreditLimitService.class, CustomerCache.class, CustomerExposureService.class, LoanPaymentLocks.class,
+    OutboxService.class, JacksonAutoConfiguration.class, LoanFixtures.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PaymentIdempotencyServiceTest {
+
+    private static final int THREADS = 8;
+
+    @Autowired
+    private PaymentIdempotencyService paymentIdempotencyService;
+
+    @Autowired
+    private PaymentIdempotencyKeyRepository paymentIdempotencyKeyRepository;
+
+    @Autowired
+    private LoanPaymentEngine loanPaymentEngine;
+
+    @Autowired
+    private LoanPaymentLocks loanPaymentLocks;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private LoanInstallmentRepository loanInstallmentRepository;
+
+    @Autowired
+    private LoanFixtures loanFixtures;
+
+    @AfterEach
+    public void tearDown(){
+        outboxEventRepository.deleteAll();
+        paymentIdempotencyKeyRepository.deleteAll();
+        loanInstallmentRepository.deleteAll();
+        loanRepository.deleteAll();
+        customerRepository.deleteAll();
+    }
+
+    @Test
+    public void testRetryReturnsFirstResultAndPaysOnce(){
+        Long loanId = createLoan();
+
+        ResponseEntity<LoanPaymentResultDTO> first = paymentIdempotencyService.payLoan("retry-1", payment(loanId, 1000));
+        ResponseEntity<LoanPaymentResultDTO> retry = paymentIdempotencyService.payLoan("retry-1", payment(loanId, 1000));
+
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        assertNotNull(retry.getBody());
+        assertEquals(1, retry.getBody().getNumberOfInstallmentsPaid());
+        assertEquals(3, loanInstallmentRepository.findUnpaidInstallmentsByLoanId(loanId).size());
+
+        assertEquals(HttpStatus.OK, paymentIdempotencyService.payLoan("retry-2", payment(loanId, 1000)).getStatusCode());
+        assertEquals(2, loanInstallmentRepository.findUnpaidInstallmentsByLoanId(loanId).size());
+    }
+
+    @Test
+    public void testConcurrentDuplicatesPayOnce() throws Exception {
+        Long loanId = createLoan();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<ResponseEntity<LoanPaymentResultDTO>>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return paymentIdempotencyService.payLoan("concurrent-1", payment(loanId, 1000));
+            }));
+        }
+        start.countDown();
+        for (Future<ResponseEntity<LoanPaymentResultDTO>> future : futures) {
+            ResponseEntity<LoanPaymentResultDTO> response = future.get();
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+            assertNotNull(response.getBody());
+            assertEquals(1, response.getBody().getNumberOfInstallmentsPaid());
+        }
+        executor.shutdown();
+
+        assertEquals(3, loanInstallmentRepository.findUnpaidInstallmentsByLoanId(loanId).size());
+    }
+
+    @Test
+    public void testSavedKeyIsReplayedAfterRestartAndPurgedAfterTtl(){
+        Long loanId = createLoan();
+        paymentIdempotencyService.payLoan("restart-1", payment(loanId, 1000));
+
+        // a new instance has an empty cache and finds the key in the database
+        PaymentIdempotencyService restarted = new PaymentIdempotencyService(paymentIdempotencyKeyRepository,
+            loanPaymentEngine, loanPaymentLocks, transactionManager, 100, Duration.ofHours(1), 16);
+        ResponseEntity<LoanPaymentResultDTO> retry = restarted.payLoan("restart-1", payment(loanId, 1000));
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        assertEquals(3, loanInstallmentRepository.findUnpaidInstallmentsByLoanId(loanId).size());
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, restarted.payLoan("restart-1", payment(loanId, 2000)).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, restarted.payLoan(" ", payment(loanId, 1000)).getStatusCode());
+        LoanPaymentDTO withoutAmount = payment(loanId, 1000);
+        withoutAmount.setPaymentAmount(null);
+        assertEquals(HttpStatus.BAD_REQUEST, restarted.payLoan("restart-1", withoutAmount).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, restarted.payLoan("restart-2", payment(null, 1000)).getStatusCode());
+
+        PaymentIdempotencyKey saved = paymentIdempotencyKeyRepository.findById("restart-1").orElseThrow();
+        saved.setCreatedAt(LocalDateTime.now().minusHours(2));
+        paymentIdempotencyKeyRepository.save(saved);
+        assertEquals(1, restarted.purgeExpiredKeys());
+        assertFalse(paymentIdempotencyKeyRepository.existsById("restart-1"));
+    }
+
+    @Test
+    public void testKeySavedByAnotherInstanceAfterTheLookupRollsThePaymentBack(){
+        Long loanId = createLoan();
+
+        // another instance saves the key between the lookup and the insert of this one
+        TransactionTemplate otherInstance = new TransactionTemplate(transactionManager);
+        otherInstance.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        // the payment runs in the transaction of the service, so the spy does not need the transactional proxy
+        LoanPaymentEngine racingEngine = Mockito.spy(AopTestUtils.<LoanPaymentEngine>getUltimateTargetObject(loanPaymentEngine));
+        LoanPaymentResultDTO otherResult = new LoanPaymentResultDTO();
+        otherResult.setNumberOfInstallmentsPaid(1);
+        otherResult.setTotalAmountSpent(new BigDecimal(1000));
+        Mockito.doAnswer(invocation -> {
+            otherInstance.executeWithoutResult(status -> paymentIdempotencyKeyRepository.save(
+                PaymentIdempotencyService.toPayment("race-1", payment(loanId, 1000), otherResult)));
+            return invocation.callRealMethod();
+        }).when(racingEngine).pay(Mockito.anyLong(), Mockito.any(), Mockito.any());
+        PaymentIdempotencyService racing = new PaymentIdempotencyService(paymentIdempotencyKeyRepository,
+            racingEngine, loanPaymentLocks, transactionManager, 100, Duration.ofHours(1), 16);
+
+        ResponseEntity<LoanPaymentResultDTO> response = racing.payLoan("race-1", payment(loanId, 1000));
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertEquals(1, response.getBody().getNumberOfInstallmentsPaid());
+        // only the other instance paid
+        assertEquals(4, loanInstallmentRepository.findUnpaidInstallmentsByLoanId(loanId).size());
+        assertEquals(1, paymentIdempotencyKeyRepository.count());
+    }
+
+    @Test
+    public void testReplayKeepsTheAllocationAndItsAmounts(){
+        Long loanId = createLoan();
+        LoanPaymentDTO payoff = payment(loanId, 4000);
+        payoff.setAllocation(PaymentAllocation.PAYOFF);
+        ResponseEntity<LoanPaymentResultDTO> first = paymentIdempotencyService.payLoan("payoff-1", payoff);
+        assertNotNull(first.getBody());
+        assertTrue(first.getBody().isPaidCompletely());
+        assertEquals(1, first.getBody().getRewardAmount().signum());
+
+        PaymentIdempotencyService restarted = new PaymentIdempotencyService(paymentIdempotencyKeyRepository,
+            loanPaymentEngine, loanPaymentLocks, transactionManager, 100, Duration.ofHours(1), 16);
+        ResponseEntity<LoanPaymentResultDTO> retry = restarted.payLoan("payoff-1", payoff);
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        assertNotNull(retry.getBody());
+        assertEquals(0, first.getBody().getRewardAmount().compareTo(retry.getBody().getRewardAmount()));
+        assertEquals(0, first.getBody().getPenaltyAmount().compareTo(retry.getBody().getPenaltyAmount()));
+        assertEquals(0, first.getBody().getCarriedForwardAmount().compareTo(retry.getBody().getCarriedForwardAmount()));
+
+        // the same key and amount with another allocation is another payment
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, restarted.payLoan("payoff-1", payment(loanId, 4000)).getStatusCode());
+    }
+
+    @Test
+    public void testExpiredKeyIsDeletedAndPaysAgain(){
+        Long loanId = createLoan();
+        paymentIdempotencyService.payLoan("expired-1", payment(loanId, 1000));
+        PaymentIdempotencyKey saved = paymentIdempotencyKeyRepository.findById("expired-1").orElseThrow();
+        saved.setCreatedAt(LocalDateTime.now().minusHours(2));
+        paymentIdempotencyKeyRepository.save(saved);
+
+        PaymentIdempotencyService restarted = new PaymentIdempotencyService(paymentIdempotencyKeyRepository,
+            loanPaymentEngine, loanPaymentLocks, transactionManager, 100, Duration.ofHours(1), 16);
+        ResponseEntity<LoanPaymentResultDTO> response = restarted.payLoan("expired-1", payment(loanId, 1000));
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(2, loanInstallmentRepository.findUnpaidInstallmentsByLoanId(loanId).size());
+        assertTrue(paymentIdempotencyKeyRepository.findById("expired-1").orElseThrow().getCreatedAt()
+            .isAfter(LocalDateTime.now().minusHours(1)));
+    }
+
+    private static LoanPaymentDTO payment(Long loanId, int amount) {
+        LoanPaymentDTO loanPaymentDTO = new LoanPaymentDTO();
+        loanPaymentDTO.setLoanId(loanId);
+        loanPaymentDTO.setPaymentAmount(new BigDecimal(amount));
+        return loanPaymentDTO;
+    }
+
+    private Long createLoan() {
+        return loanFixtures.createLoan(loanFixtures.createCustomer(new BigDecimal(4000)), new BigDecimal(1000),
+            LoanFixtures.monthly(LocalDate.now().with(TemporalAdjusters.firstDayOfNextMonth()), 4));
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.loans.service;
+
+import com.example.loans.dto.PortfolioSnapshotDTO;
+import com.example.loans.repository.LoanInstallmentRepository;
+import com.example.loans.repository.LoanRepository;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import(LoanFixtures.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PortfolioAnalyticsServiceTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2025, 3, 15);
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private LoanInstallmentRepository loanInstallmentRepository;
+
+    @Autowired
+    private LoanFixtures loanFixtures;
+
+    @AfterEach
+    public void tearDown(){
+        loanInstallmentRepository.deleteAll();
+        loanRepository.deleteAll();
+    }
+
+    @Test
+    public void testAggregatesByInstallmentTypeAndDueMonth(){
+        createLoan(6, false, new BigDecimal("100.50"), BigDecimal.ZERO, TODAY.minusMonths(1), TODAY.plusMonths(1));
+        createLoan(6, true, new BigDecimal(200), new BigDecimal(200), TODAY.minusMonths(2), TODAY.minusMonths(1));
+        createLoan(2, false, new BigDecimal(300), new BigDecimal(100), TODAY.plusMonths(1));
+
+        PortfolioSnapshotDTO snapshot = service(1000).aggregate(TODAY);
+
+        assertEquals(3, snapshot.getLoanCount());
+        assertEquals(1, snapshot.getPaidLoanCount());
+        assertEquals(5, snapshot.getInstallmentCount());
+        assertEquals(2, snapshot.getPaidInstallmentCount());
+        assertEquals(0.4, snapshot.getPaidRatio(), 1e-9);
+        assertThat(snapshot.getPaidAmount(), Matchers.comparesEqualTo(new BigDecimal(500)));
+        // the partially paid installment is outstanding by its unpaid part
+        assertThat(snapshot.getOutstandingAmount(), Matchers.comparesEqualTo(new BigDecimal("401.00")));
+        assertThat(snapshot.getOverdueAmount(), Matchers.comparesEqualTo(new BigDecimal("100.50")));
+
+        assertEquals(2, snapshot.getByNumberOfInstallments().size());
+        PortfolioSnapshotDTO.InstallmentTypeDTO six = snapshot.getByNumberOfInstallments().get(0);
+        assertEquals(6, six.getNumberOfInstallments());
+        assertEquals(2, six.getLoanCount());
+        assertEquals(4, six.getInstallmentCount());
+        assertThat(six.getOutstandingAmount(), Matchers.comparesEqualTo(new BigDecimal("201.00")));
+        PortfolioSnapshotDTO.InstallmentTypeDTO unsupported = snapshot.getByNumberOfInstallments().get(1);
+        assertEquals(0, unsupported.getNumberOfInstallments());
+        assertThat(unsupported.getOutstandingAmount(), Matchers.comparesEqualTo(new BigDecimal(200)));
+
+        assertEquals(2, snapshot.getDueDateHistogram().size());
+        assertEquals(YearMonth.from(TODAY.minusMonths(1)).toString(), snapshot.getDueDateHistogram().get(0).getMonth());
+        assertEquals(1, snapshot.getDueDateHistogram().get(0).getInstallmentCount());
+        assertEquals(YearMonth.from(TODAY.plusMonths(1)).toString(), snapshot.getDueDateHistogram().get(1).getMonth());
+        assertEquals(2, snapshot.getDueDateHistogram().get(1).getInstallmentCount());
+        assertThat(snapshot.getDueDateHistogram().get(1).getAmount(), Matchers.comparesEqualTo(new BigDecimal("300.50")));
+    }
+
+    @Test
+    public void testPartitionsMergeToTheSameSnapshot(){
+        for (int i = 0; i < 10; i++) {
+            createLoan(12, i % 3 == 0, new BigDecimal(10 + i), i % 3 == 0 ? new BigDecimal(10 + i) : BigDecimal.ZERO,
+                TODAY.minusMonths(i), TODAY.plusMonths(i));
+        }
+
+        PortfolioSnapshotDTO whole = service(1000).aggregate(TODAY);
+        PortfolioSnapshotDTO partitioned = service(1).aggregate(TODAY);
+
+        assertEquals(whole.getLoanCount(), partitioned.getLoanCount());
+        assertEquals(whole.getInstallmentCount(), partitioned.getInstallmentCount());
+        assertEquals(whole.getPaidInstallmentCount(), partitioned.getPaidInstallmentCount());
+        assertThat(partitioned.getOutstandingAmount(), Matchers.comparesEqualTo(whole.getOutstandingAmount()));
+        assertThat(partitioned.getOverdueAmount(), Matchers.comparesEqualTo(whole.getOverdueAmount()));
+        assertEquals(whole.getDueDateHistogram().size(), partitioned.getDueDateHistogram().size());
+    }
+
+    @Test
+    public void testSnapshotIsCachedUntilRefreshed(){
+        PortfolioAnalyticsService service = new PortfolioAnalyticsService(dataSource, 2, 1000, 100, Duration.ofHours(1));
+        PortfolioSnapshotDTO empty = service.snapshot(false);
+        assertEquals(0, empty.getLoanCount());
+
+        createLoan(9, false, new BigDecimal(100), BigDecimal.ZERO, TODAY);
+
+        assertSame(empty, service.snapshot(false));
+        assertEquals(1, service.snapshot(true).getLoanCount());
+    }
+
+    @Test
+    public void testConcurrentRefreshesShareOneAggregation() throws Exception {
+        CountDownLatch aggregating = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger aggregations = new AtomicInteger();
+        PortfolioAnalyticsService service = new PortfolioAnalyticsService(dataSource, 2, 1000, 100, Duration.ZERO) {
+
+            @Override
+            PortfolioSnapshotDTO aggregate(LocalDate today) {
+                aggregations.incrementAndGet();
+                aggregating.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.aggregate(today);
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<PortfolioSnapshotDTO> first = executor.submit(() -> service.snapshot(true));
+        assertTrue(aggregating.await(5, TimeUnit.SECONDS));
+        Future<PortfolioSnapshotDTO> second = executor.submit(() -> service.snapshot(true));
+        // the second refresh waits for the running aggregation, it does not block in aggregate
+        assertThrows(TimeoutException.class, () -> second.get(200, TimeUnit.MILLISECONDS));
+        release.countDown();
+
+        assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, aggregations.get());
+        executor.shutdown();
+    }
+
+    private PortfolioAnalyticsService service(long partitionRows) {
+        return new PortfolioAnalyticsService(dataSource, 2, partitionRows, 100, Duration.ZERO);
+    }
+
+    private void createLoan(int numberOfInstallments, boolean paid, BigDecimal installmentAmount,
+                            BigDecimal paidAmount, LocalDate... dueDates) {
+        loanFixtures.createLoan(1L, numberOfInstallments, paid, installmentAmount, paidAmount, dueDates);
+    }
+}
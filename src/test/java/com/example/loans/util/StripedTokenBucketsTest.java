@@ -0,0 +1,46 @@
+package com.example.loans.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StripedTokenBucketsTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void testBurstThenRate() {
+        StripedTokenBuckets buckets = new StripedTokenBuckets(16, 2, 3);
+        long now = 42 * SECOND;
+
+        assertTrue(buckets.tryAcquireAt(1, now));
+        assertTrue(buckets.tryAcquireAt(1, now));
+        assertTrue(buckets.tryAcquireAt(1, now));
+        assertFalse(buckets.tryAcquireAt(1, now));
+        // other buckets are not affected
+        assertTrue(buckets.tryAcquireAt(2, now));
+
+        // one token is added every half second
+        assertFalse(buckets.tryAcquireAt(1, now + SECOND / 4));
+        assertTrue(buckets.tryAcquireAt(1, now + SECOND / 2));
+        assertFalse(buckets.tryAcquireAt(1, now + SECOND / 2));
+    }
+
+    @Test
+    public void testRateCanBeChangedOrDisabled() {
+        StripedTokenBuckets buckets = new StripedTokenBuckets(16, 1, 1);
+        long now = -5 * SECOND;
+        assertTrue(buckets.tryAcquireAt(1, now));
+        assertFalse(buckets.tryAcquireAt(1, now));
+
+        buckets.setRate(0, 1);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(buckets.tryAcquireAt(1, now));
+        }
+        assertEquals(0, buckets.getTokensPerSecond());
+
+        buckets.setRate(10, 5);
+        assertEquals(10, buckets.getTokensPerSecond(), 0.001);
+        assertEquals(5, buckets.getBurst());
+    }
+}